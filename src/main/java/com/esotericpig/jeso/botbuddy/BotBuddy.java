@@ -7,7 +7,6 @@
 
 package com.esotericpig.jeso.botbuddy;
 
-import com.esotericpig.jeso.Chars;
 import com.esotericpig.jeso.Duplicable;
 import com.esotericpig.jeso.OSFamily;
 import com.esotericpig.jeso.Sys;
@@ -25,12 +24,14 @@ import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.ClipboardOwner;
 import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.util.Deque;
 import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * <pre>
@@ -64,9 +65,27 @@ import java.util.ListIterator;
  *     System.out.println("User is active! Stopping all automatic operations.");
  *   }
  *
+ * By default, Safe Mode gets the mouse coords (a native call) after every operation.
+ * With a monitor rate, a background thread samples the mouse instead, so that each operation
+ * only checks a flag, and a delay ends as soon as the user moves the mouse:
+ *   BotBuddy buddy = BotBuddy.builder().monitorRate(BotBuddy.DEFAULT_MONITOR_RATE).build();
+ *
+ * Instead of throwing, Pause Mode releases everything pressed and waits until the user
+ * hasn't moved the mouse for {@link #getPauseDelay()} (e.g., a colleague nudged it),
+ * and then moves the mouse back, presses everything again, and continues:
+ *   buddy.setPauseMode(true).setPauseDelay(5000).beginSafeMode();
+ *
+ * A batch sends the events back to back, and only waits for idle and delays at each sync
+ * and at the end, such as for filling in a form:
+ *   buddy.batch((b) -> b.paste(999,493,"Fish").sync().enter(1427,500,"Sakana"));
+ *
  * If you click into a virtual machine, you can change the OS for Shortcuts:
  *   buddy.setOSFamily(OSFamily.MACOS);
  *
+ * For typing, the keyboard layout is US by default. Other layouts type more chars directly,
+ * instead of pasting them (or mistyping them, such as '"' on a UK keyboard):
+ *   buddy.setKeyLayout(KeyCodes.UK_LAYOUT);
+ *
  * See {@link com.esotericpig.jeso.botbuddy.BotBuddyCode} for a simple scripting "language" for this class.
  * See {@link com.esotericpig.jeso.botbuddy.BotBuddyCodeApp} for a simple app that can take in a file that uses BotBuddyCode.
  * </pre>
@@ -104,12 +123,60 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
    */
   public static final int DEFAULT_LONG_DELAY = 1100;
 
+  /**
+   * A good rate (in milliseconds) for sampling the mouse in a background thread for Safe Mode, if used.
+   * The monitor is off (0) by default.
+   */
+  public static final int DEFAULT_MONITOR_RATE = 50;
+
+  /**
+   * A good size (in chars) for pasting a large text in chunks, if used.
+   * Chunked pasting is off (0) by default.
+   */
+  public static final int DEFAULT_PASTE_CHUNK_SIZE = 16_384;
+
+  /**
+   * For chunked pasting, the smallest that a chunk is shrunk to when the target stalls.
+   */
+  public static final int MIN_PASTE_CHUNK_SIZE = 256;
+
+  /**
+   * For chunked pasting, how often to check if the target has consumed a chunk.
+   */
+  public static final int PASTE_CHECK_DELAY = 10;
+
+  /**
+   * For Pause Mode, how long the user must not move the mouse for before continuing.
+   */
+  public static final int DEFAULT_PAUSE_DELAY = 3000;
+
+  /**
+   * For Pause Mode, how often to check if the user has moved the mouse.
+   */
+  public static final int PAUSE_CHECK_DELAY = 100;
+
   /**
    * For auto delay, or for a manual delay between fast and long if auto delay is set differently.
    */
   public static final int DEFAULT_SHORT_DELAY = 110;
   public static final int DEFAULT_AUTO_DELAY = DEFAULT_SHORT_DELAY;
 
+  /**
+   * For {@link #getTypeCosts()}, the estimated cost (in microseconds) of sending a key event.
+   */
+  public static final long KEY_EVENT_COST = 200L;
+
+  /**
+   * For {@link #getTypeCosts()}, the estimated cost (in microseconds) of setting the clipboard
+   * and the app reading it, besides the syncs.
+   */
+  public static final long PASTE_COST = 15_000L;
+
+  /**
+   * For {@link #getTypeCosts()}, the estimated cost (in microseconds) of waiting for idle.
+   */
+  public static final long WAIT_FOR_IDLE_COST = 2_000L;
+
   public static Builder builder() throws HeadlessException {
     return new Builder();
   }
@@ -140,39 +207,80 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return getCoords().y;
   }
 
+  protected int autoDelay; // Robot's, unless Precise Mode
+  protected int batchDelay = 0;
+  protected int batchDepth = 0;
   protected Robot bot;
   protected Clipboard clip;
   protected int defaultButton;
   protected int fastDelay;
   protected boolean isAutoDelay;
+  protected boolean isBatchWaitForIdle = false;
+  protected boolean isEnterTextMode;
+  protected boolean isFastTypeMode;
+  protected boolean isPauseMode;
   protected boolean isReleaseMode;
   protected boolean isSafeMode = false;
+  protected KeyLayout keyLayout;
   protected int leftButton;
   protected int longDelay;
   protected int middleButton;
+  protected Monitor monitor = null;
+  protected int monitorRate;
   protected OSFamily osFamily;
-  protected LinkedList<Integer> pressedButtons = new LinkedList<>();
-  protected LinkedList<Integer> pressedKeys = new LinkedList<>();
+  protected Pacer pacer = null; // Precise Mode
+  protected int pasteChunkSize;
+  protected int pauseDelay;
+  protected PressedCodes pressedButtons = new PressedCodes();
+  protected PressedCodes pressedKeys = new PressedCodes();
   protected int rightButton;
-  protected Point safeCoords = null;
   protected int shortDelay;
   protected Deque<Stash> stashes = new LinkedList<>();
   protected Toolkit tool;
 
+  /**
+   * <pre>
+   * Where the mouse should be (in Safe Mode). It's replaced, instead of changed, as the monitor reads it.
+   * </pre>
+   */
+  protected volatile Point safeCoords = null;
+
+  /**
+   * <pre>
+   * For the monitor: signaled when the user is active; {@link #moveCount} is odd while moving the mouse
+   *   (by our operations), so that the monitor ignores a sample taken meanwhile.
+   * </pre>
+   */
+  protected final Object activityLock = new Object();
+  protected volatile boolean isUserActive = false;
+  protected volatile int moveCount = 0;
+
   protected BotBuddy(BotBuddy buddy) {
     // Do NOT copy over #pressedButtons and #pressedKeys, as it could cause a double release
 
+    autoDelay = buddy.autoDelay;
+    batchDelay = buddy.batchDelay;
+    batchDepth = buddy.batchDepth;
     bot = buddy.bot;
     clip = buddy.clip;
     defaultButton = buddy.defaultButton;
     fastDelay = buddy.fastDelay;
     isAutoDelay = buddy.isAutoDelay;
+    isBatchWaitForIdle = buddy.isBatchWaitForIdle;
+    isEnterTextMode = buddy.isEnterTextMode;
+    isFastTypeMode = buddy.isFastTypeMode;
+    isPauseMode = buddy.isPauseMode;
     isReleaseMode = buddy.isReleaseMode;
     isSafeMode = buddy.isSafeMode;
+    keyLayout = buddy.keyLayout;
     leftButton = buddy.leftButton;
     longDelay = buddy.longDelay;
     middleButton = buddy.middleButton;
+    monitorRate = buddy.monitorRate;
     osFamily = buddy.osFamily;
+    pacer = (buddy.pacer != null) ? new Pacer() : null;
+    pasteChunkSize = buddy.pasteChunkSize;
+    pauseDelay = buddy.pauseDelay;
     rightButton = buddy.rightButton;
     safeCoords = (buddy.safeCoords != null) ? (new Point(buddy.safeCoords)) : null;
     shortDelay = buddy.shortDelay;
@@ -181,6 +289,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     for(Stash stash: buddy.stashes) {
       stashes.addLast(stash.dup());
     }
+
+    if(isSafeMode) {
+      startMonitor();
+    }
   }
 
   protected BotBuddy(Builder builder) throws AWTException,HeadlessException {
@@ -202,11 +314,19 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     // Set other vars (options)
     setAutoWaitForIdle(builder.isAutoWaitForIdle);
     setDefaultButton(builder.defaultButton);
+    setEnterTextMode(builder.isEnterTextMode);
+    setFastTypeMode(builder.isFastTypeMode);
     setFastDelay(builder.fastDelay);
+    setKeyLayout(builder.keyLayout);
     setLeftButton(builder.leftButton);
     setLongDelay(builder.longDelay);
     setMiddleButton(builder.middleButton);
+    setMonitorRate(builder.monitorRate);
     setOSFamily(builder.osFamily);
+    setPasteChunkSize(builder.pasteChunkSize);
+    setPauseDelay(builder.pauseDelay);
+    setPauseMode(builder.isPauseMode);
+    setPreciseMode(builder.isPreciseMode);
     setReleaseMode(builder.isReleaseMode);
     setRightButton(builder.rightButton);
     setShortDelay(builder.shortDelay);
@@ -225,15 +345,63 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
    */
   @Override
   public void close() {
+    stopMonitor();
     releasePressed();
   }
 
+  /**
+   * <pre>
+   * Executes {@code actions} in a batch (see {@link #beginBatch()}), ending the batch afterward.
+   *
+   * If {@code actions} throws, the batch is still ended, but not synced.
+   *   buddy.batch((b) -> b.paste(999,493,"Fish").enter(1427,500,"Sakana"));
+   * </pre>
+   */
+  public BotBuddy batch(Consumer<BotBuddy> actions) {
+    boolean isSync = false;
+
+    beginBatch();
+
+    try {
+      actions.accept(this);
+      isSync = true;
+    }
+    finally {
+      endBatch(isSync);
+    }
+
+    return this;
+  }
+
   public BotBuddy beep() {
     tool.beep();
 
     return checkIfSafe();
   }
 
+  /**
+   * <pre>
+   * Begins a batch, which sends the events of the operations back to back, by turning off
+   *   the auto delay and the auto wait for idle of {@link java.awt.Robot}.
+   * Instead, they're done once at each {@link #sync()} and at {@link #endBatch()}.
+   *
+   * Batches can be nested, in which case only the outermost batch ends it.
+   * Safe Mode still checks after each operation.
+   * Copying to the clipboard (e.g., {@link #paste(String)}) syncs first, so a previous paste gets its text.
+   * </pre>
+   */
+  public BotBuddy beginBatch() {
+    if(batchDepth++ == 0) {
+      batchDelay = isAutoDelay ? getAutoDelay() : 0;
+      isBatchWaitForIdle = isAutoWaitForIdle();
+
+      setAutoDelay(0);
+      setAutoWaitForIdle(false);
+    }
+
+    return this;
+  }
+
   public BotBuddy beginFastMode() {
     // Do NOT check if "getAutoDelay() == fastDelay" and bail because it will mess up #endFastMode()
     // - If #endFastMode() also checks it, then it will always be true (after this call)
@@ -243,8 +411,11 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
 
   public BotBuddy beginSafeMode() {
     isSafeMode = true;
+    isUserActive = false;
     safeCoords = getCoords();
 
+    startMonitor();
+
     return this;
   }
 
@@ -257,23 +428,49 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
       return this;
     }
 
+    // The monitor samples the mouse instead
+    if(monitor != null) {
+      if(coords != null) {
+        // Prefer move(int,int), as the monitor could sample before this is set
+        safeCoords = new Point(coords);
+      }
+      if(isUserActive) {
+        handleUserIsActive();
+      }
+
+      return this;
+    }
+
     // In multi-screen environments, x and y can be negative, so test null instead of (-1,-1)
     if(safeCoords == null) {
       safeCoords = getCoords();
     }
     else {
       if(coords != null) {
-        safeCoords.setLocation(coords);
+        safeCoords = new Point(coords);
       }
 
       if(!getCoords().equals(safeCoords)) {
-        throw new UserIsActiveException();
+        handleUserIsActive();
       }
     }
 
     return this;
   }
 
+  /**
+   * @throws UserIsActiveException if not Pause Mode
+   */
+  protected void handleUserIsActive() {
+    if(!isPauseMode) {
+      isUserActive = false; // Handled, in case Safe Mode is used again
+
+      throw new UserIsActiveException();
+    }
+
+    pauseUntilUserIsIdle();
+  }
+
   public BotBuddy clearPressed() {
     return clearPressedButtons().clearPressedKeys();
   }
@@ -295,8 +492,8 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy click(int button) {
-    bot.mousePress(button);
-    bot.mouseRelease(button);
+    sendMousePress(button);
+    sendMouseRelease(button);
 
     return checkIfSafe();
   }
@@ -322,39 +519,48 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy copy(String text,ClipboardOwner owner) {
-    clip.setContents(new StringSelection(text),owner);
+    return copy(new StringSelection(text),owner);
+  }
+
+  protected BotBuddy copy(Transferable contents,ClipboardOwner owner) {
+    // In a batch, a previous paste might not have been handled yet, so don't replace its text
+    if(batchDepth > 0) {
+      sync();
+    }
+
+    clip.setContents(contents,owner);
 
     return delayAuto();
   }
 
   public BotBuddy delay(int delay) {
-    bot.delay(delay);
+    sleep(delay);
 
     return checkIfSafe();
   }
 
   public BotBuddy delayAuto() {
     if(isAutoDelay) {
-      bot.delay(bot.getAutoDelay());
+      sleep(autoDelay);
     }
 
     return checkIfSafe();
   }
 
   public BotBuddy delayFast() {
-    bot.delay(fastDelay);
+    sleep(fastDelay);
 
     return checkIfSafe();
   }
 
   public BotBuddy delayLong() {
-    bot.delay(longDelay);
+    sleep(longDelay);
 
     return checkIfSafe();
   }
 
   public BotBuddy delayShort() {
-    bot.delay(shortDelay);
+    sleep(shortDelay);
 
     return checkIfSafe();
   }
@@ -396,6 +602,41 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
            .releaseButton(toX,toY,button);
   }
 
+  /**
+   * <pre>
+   * Syncs (see {@link #sync()}) and ends the batch, restoring the auto delay and the auto wait for idle.
+   * If not in a batch, this does nothing.
+   * </pre>
+   */
+  public BotBuddy endBatch() {
+    return endBatch(true);
+  }
+
+  protected BotBuddy endBatch(boolean isSync) {
+    if(batchDepth == 0) {
+      return this;
+    }
+    if(batchDepth > 1) {
+      --batchDepth; // Only the outermost batch syncs
+
+      return this;
+    }
+
+    try {
+      if(isSync) {
+        sync();
+      }
+    }
+    finally {
+      batchDepth = 0;
+
+      setAutoDelay(batchDelay);
+      setAutoWaitForIdle(isBatchWaitForIdle);
+    }
+
+    return this;
+  }
+
   public BotBuddy endFastMode() {
     final int fastDelay = getAutoDelay(); // See #beginFastMode()
 
@@ -411,6 +652,8 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy endSafeMode() {
+    stopMonitor();
+
     isSafeMode = false;
     safeCoords = null;
 
@@ -418,8 +661,8 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy enter() {
-    bot.keyPress(KeyEvent.VK_ENTER);
-    bot.keyRelease(KeyEvent.VK_ENTER);
+    sendKeyPress(KeyEvent.VK_ENTER);
+    sendKeyRelease(KeyEvent.VK_ENTER);
 
     return checkIfSafe();
   }
@@ -436,6 +679,22 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return paste(x,y,text).enter();
   }
 
+  /**
+   * <pre>
+   * Types or pastes each run of chars, whichever is estimated to be cheaper (see {@link #getTypeCosts()}),
+   *   such as typing a short word, but pasting a long sentence (with a few syncs, instead of one per char).
+   *
+   * Unlike {@link #enter(String)}, this doesn't press the Enter key.
+   * </pre>
+   */
+  public BotBuddy enterText(String text) {
+    return type(new TypePlan(text,true,keyLayout,getTypeCosts()));
+  }
+
+  public BotBuddy enterText(int x,int y,String text) {
+    return click(x,y).enterText(text);
+  }
+
   public BotBuddy leftClick() {
     return click(leftButton);
   }
@@ -453,17 +712,48 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy move(int x,int y) {
-    bot.mouseMove(x,y);
+    if(monitor == null) {
+      sendMouseMove(x,y);
+
+      return checkIfSafe(new Point(x,y));
+    }
+
+    moveMonitored(x,y);
+
+    return checkIfSafe();
+  }
+
+  /**
+   * <pre>
+   * Moves the mouse and sets the safe coords, so that the monitor doesn't think it was the user.
+   * </pre>
+   */
+  protected void moveMonitored(int x,int y) {
+    ++moveCount; // Odd while moving; only this (operations) thread writes it
 
-    return checkIfSafe(new Point(x,y));
+    try {
+      sendMouseMove(x,y);
+
+      if(safeCoords != null) {
+        safeCoords = new Point(x,y);
+      }
+    }
+    finally {
+      ++moveCount;
+    }
   }
 
   public BotBuddy paste() {
     return shortcut(Shortcuts.PASTE);
   }
 
+  /**
+   * <pre>
+   * If Enter Text Mode is on, uses {@link #enterText(String)} instead.
+   * </pre>
+   */
   public BotBuddy paste(String text) {
-    return copy(text).paste();
+    return isEnterTextMode ? enterText(text) : pasteText(text);
   }
 
   public BotBuddy paste(int x,int y) {
@@ -474,11 +764,101 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return click(x,y).paste(text);
   }
 
+  /**
+   * <pre>
+   * Pastes in chunks if longer than the paste chunk size (if on), else all at once.
+   * </pre>
+   */
+  protected BotBuddy pasteText(String text) {
+    if(pasteChunkSize > 0 && text.length() > pasteChunkSize) {
+      return pasteChunks(text,pasteChunkSize,null);
+    }
+
+    return copy(text).paste();
+  }
+
+  /**
+   * <pre>
+   * Uses the paste chunk size, else {@link #DEFAULT_PASTE_CHUNK_SIZE} if off.
+   * </pre>
+   *
+   * @see #pasteChunks(String,int,Point)
+   */
+  public BotBuddy pasteChunks(String text) {
+    return pasteChunks(text,(pasteChunkSize > 0) ? pasteChunkSize : DEFAULT_PASTE_CHUNK_SIZE,null);
+  }
+
+  public BotBuddy pasteChunks(int x,int y,String text) {
+    return click(x,y).pasteChunks(text);
+  }
+
+  /**
+   * <pre>
+   * Pastes a large text (e.g., a heredoc of megabytes) in chunks, waiting for the target to consume each one
+   *   before copying the next one, so that the target doesn't stall or drop any.
+   *
+   * A chunk is consumed when the target has requested it from the clipboard
+   *   (on platforms that request it when pasted, such as X11), and (if {@code watch} isn't null)
+   *   when the pixel at {@code watch} has changed and then stayed the same for the fast delay
+   *   (e.g., a scrollbar or a line count that changes as the text goes in).
+   * If neither can be watched, each chunk waits for idle and the short delay.
+   *
+   * The pacing adapts to the target: a chunk consumed within the short delay doubles the next one
+   *   (up to {@code chunkSize}), while a chunk not consumed within the long delay halves it.
+   * A chunk that the target hasn't requested is never copied over; it keeps waiting (see {@link ChunkPaster}).
+   * </pre>
+   *
+   * @param chunkSize the max number of chars in a chunk (it breaks at a line break near the end, if any)
+   * @param watch     the coords of a pixel to watch, else null
+   * @throws IllegalStateException if the target stalls on a chunk for {@link ChunkPaster#MAX_STALL_COUNT}
+   *                               long delays
+   */
+  public BotBuddy pasteChunks(String text,int chunkSize,Point watch) {
+    new BuddyChunkPaster().pasteChunks(text,chunkSize,watch);
+
+    return this;
+  }
+
+  /**
+   * <pre>
+   * For Pause Mode, releases everything pressed (see Release Mode) and waits until the user
+   *   hasn't moved the mouse for {@link #getPauseDelay()}.
+   * Then, moves the mouse back to the safe coords and presses everything again, in the same order.
+   * </pre>
+   *
+   * @throws UserIsActiveException if interrupted while waiting
+   * @see UserPauser
+   */
+  protected void pauseUntilUserIsIdle() {
+    new BuddyUserPauser().pause(pressedButtons,pressedKeys);
+  }
+
+  /**
+   * <pre>
+   * Starts (or restarts) the monitor if the monitor rate is not 0.
+   * </pre>
+   */
+  protected void startMonitor() {
+    stopMonitor();
+
+    if(monitorRate > 0) {
+      monitor = new Monitor(monitorRate);
+      monitor.start();
+    }
+  }
+
+  protected void stopMonitor() {
+    if(monitor != null) {
+      monitor.shutdown();
+      monitor = null;
+    }
+  }
+
   public BotBuddy pressButton(int button) {
-    bot.mousePress(button);
+    sendMousePress(button);
 
     if(isReleaseMode) {
-      pressedButtons.addFirst(button);
+      pressedButtons.push(button);
     }
 
     return checkIfSafe();
@@ -497,10 +877,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy pressKey(int keyCode) {
-    bot.keyPress(keyCode);
+    sendKeyPress(keyCode);
 
     if(isReleaseMode) {
-      pressedKeys.addFirst(keyCode);
+      pressedKeys.push(keyCode);
     }
 
     return checkIfSafe();
@@ -537,10 +917,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy releaseButton(int button) {
-    bot.mouseRelease(button);
+    sendMouseRelease(button);
 
     if(isReleaseMode) {
-      pressedButtons.removeFirstOccurrence(button);
+      pressedButtons.remove(button);
     }
 
     return checkIfSafe();
@@ -551,8 +931,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy releaseButtons() {
-    for(ListIterator<Integer> it = pressedButtons.listIterator(); it.hasNext(); it.remove()) {
-      bot.mouseRelease(it.next());
+    // Newest first (LIFO)
+    while(!pressedButtons.isEmpty()) {
+      sendMouseRelease(pressedButtons.peek());
+      pressedButtons.pop(); // After, in case of an exception
     }
 
     return this;
@@ -567,10 +949,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy releaseKey(int keyCode) {
-    bot.keyRelease(keyCode);
+    sendKeyRelease(keyCode);
 
     if(isReleaseMode) {
-      pressedKeys.removeFirstOccurrence(keyCode);
+      pressedKeys.remove(keyCode);
     }
 
     return checkIfSafe();
@@ -581,8 +963,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy releaseKeys() {
-    for(ListIterator<Integer> it = pressedKeys.listIterator(); it.hasNext(); it.remove()) {
-      bot.keyRelease(it.next());
+    // Newest first (LIFO)
+    while(!pressedKeys.isEmpty()) {
+      sendKeyRelease(pressedKeys.peek());
+      pressedKeys.pop(); // After, in case of an exception
     }
 
     return this;
@@ -633,44 +1017,215 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return shortcut.press(this);
   }
 
+  /**
+   * <pre>
+   * In Precise Mode, paces the auto delay after an event, instead of Robot.
+   * </pre>
+   */
+  protected void afterEvent() {
+    if(pacer != null && autoDelay > 0) {
+      pacer.pace(TimeUnit.MILLISECONDS.toNanos(autoDelay));
+    }
+  }
+
+  /**
+   * <pre>
+   * Delays for the auto delay of a batch, once at each sync.
+   * In Precise Mode, it's paced from the previous deadline (see {@link Pacer#pace(long)}), like the auto delay
+   *   after each event, so that a sync per char (e.g., {@link #type(TypePlan)}) doesn't drift.
+   * </pre>
+   */
+  protected void delayBatch() {
+    if(pacer != null) {
+      pacer.pace(TimeUnit.MILLISECONDS.toNanos(batchDelay));
+    }
+    else {
+      sleep(batchDelay);
+    }
+  }
+
+  protected void sendKeyPress(int keyCode) {
+    bot.keyPress(keyCode);
+    afterEvent();
+  }
+
+  protected void sendKeyRelease(int keyCode) {
+    bot.keyRelease(keyCode);
+    afterEvent();
+  }
+
+  protected void sendMouseMove(int x,int y) {
+    bot.mouseMove(x,y);
+    afterEvent();
+  }
+
+  protected void sendMousePress(int button) {
+    bot.mousePress(button);
+    afterEvent();
+  }
+
+  protected void sendMouseRelease(int button) {
+    bot.mouseRelease(button);
+    afterEvent();
+  }
+
+  protected void sendMouseWheel(int amount) {
+    bot.mouseWheel(amount);
+    afterEvent();
+  }
+
+  /**
+   * <pre>
+   * Delays for {@code delay} milliseconds.
+   *
+   * If the monitor is on, then this ends early if the user is active, which throws {@link UserIsActiveException}.
+   * In Pause Mode, it pauses until the user is idle and then delays for what's left of the time (if any).
+   * In Precise Mode (without the monitor), it waits until a deadline from now (see {@link Pacer#delay(long)}),
+   *   not from the deadline of the previous event, so a gap before it doesn't shorten it.
+   * </pre>
+   */
+  protected void sleep(int delay) {
+    if(monitor == null) {
+      if(pacer != null) {
+        if(delay < 0) {
+          throw new IllegalArgumentException("Delay cannot be negative: " + delay);
+        }
+
+        pacer.delay(TimeUnit.MILLISECONDS.toNanos(delay));
+      }
+      else {
+        bot.delay(delay);
+      }
+
+      return;
+    }
+    if(delay < 0) {
+      throw new IllegalArgumentException("Delay cannot be negative: " + delay);
+    }
+
+    final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+
+    while(true) {
+      synchronized(activityLock) {
+        long remaining;
+
+        while(!isUserActive && (remaining = end - System.nanoTime()) > 0L) {
+          try {
+            TimeUnit.NANOSECONDS.timedWait(activityLock,remaining);
+          }
+          catch(InterruptedException ex) {
+            Thread.currentThread().interrupt(); // Same as Robot.delay(int)
+
+            return;
+          }
+        }
+      }
+
+      if(!isUserActive) {
+        break;
+      }
+
+      checkIfSafe(); // Throws, or pauses and then continues waiting
+    }
+  }
+
   public BotBuddy stash() {
     stashes.push(new Stash());
 
     return this;
   }
 
+  /**
+   * <pre>
+   * In a batch, waits for idle and delays once for all of the operations so far,
+   *   as the auto wait for idle and the auto delay would have after each event (if on).
+   * If not in a batch, this does nothing, as each event has already been synced.
+   * </pre>
+   */
+  public BotBuddy sync() {
+    if(batchDepth > 0) {
+      if(isBatchWaitForIdle) {
+        bot.waitForIdle();
+      }
+      if(batchDelay > 0) {
+        delayBatch();
+      }
+    }
+
+    return checkIfSafe();
+  }
+
   public BotBuddy type(int keyCode) {
-    bot.keyPress(keyCode);
-    bot.keyRelease(keyCode);
+    sendKeyPress(keyCode);
+    sendKeyRelease(keyCode);
 
     return checkIfSafe();
   }
 
   /**
+   * <pre>
+   * If Enter Text Mode is on, uses {@link #enterText(String)} instead.
+   * </pre>
+   *
    * @since 0.3.5
    */
   public BotBuddy type(String text) {
-    return type(text,true);
+    return isEnterTextMode ? enterText(text) : type(text,true);
   }
 
   /**
    * @since 0.3.5
    */
   protected BotBuddy type(String text,boolean ensure) {
-    for(int i = 0; i < text.length(); ) {
-      int keyChar = text.codePointAt(i);
-      int[] keyCodes = KeyCodes.getCharCodes(keyChar,!ensure);
+    return type(new TypePlan(text,ensure,keyLayout)); // If ensured, pastes the chars that don't have key codes
+  }
+
+  /**
+   * <pre>
+   * Types the planned text, with the auto delay &amp; the auto wait for idle after each key event.
+   *
+   * In Fast Type Mode, types it in a batch (see {@link #beginBatch()}) instead, syncing once after each char
+   *   (e.g., "HI" is 2 syncs, instead of 8 auto delays). If already in a batch, doesn't sync at all.
+   * </pre>
+   *
+   * @see #setFastTypeMode(boolean)
+   */
+  public BotBuddy type(TypePlan plan) {
+    final boolean isPaced = isFastTypeMode && (batchDepth == 0);
+    final int stepCount = plan.getStepCount();
+    int e = 0;
+
+    if(isFastTypeMode) {
+      beginBatch();
+    }
+
+    try {
+      for(int step = 0; step < stepCount; ++step) {
+        for(final int end = plan.getStepEnd(step); e < end; ++e) {
+          final int event = plan.getEvent(e);
+
+          if(TypePlan.isPress(event)) {
+            pressKey(event);
+          }
+          else {
+            releaseKey(TypePlan.toKeyCode(event));
+          }
+        }
+
+        final String paste = plan.getPaste(step);
 
-      if(keyCodes == null) {
-        if(ensure) {
-          paste(Chars.toString(keyChar)); // Ensure success
+        if(paste != null) {
+          pasteText(paste); // Not #paste(String), which might use this (Enter Text Mode)
+        }
+        if(isPaced) {
+          sync();
         }
       }
-      else {
-        rollKeys(keyCodes); // Roll the keys like #paste() does: '$' => Shift + 4
+    }
+    finally {
+      if(isFastTypeMode) {
+        endBatch(false); // Already synced
       }
-
-      i += Character.charCount(keyChar);
     }
 
     return this;
@@ -730,27 +1285,44 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public BotBuddy wheel(int amount) {
-    bot.mouseWheel(amount);
+    sendMouseWheel(amount);
 
     return checkIfSafe();
   }
 
   public BotBuddy setAutoDelay(int autoDelay) {
+    bot.setAutoDelay(autoDelay); // Checks the range
+
+    this.autoDelay = autoDelay;
     this.isAutoDelay = autoDelay > 0;
 
-    bot.setAutoDelay(autoDelay);
+    updateBotAutoDelay();
 
     return this;
   }
 
   public BotBuddy setAutoDelay(boolean isAutoDelay) {
+    final int autoDelay = isAutoDelay ? shortDelay : 0;
+
+    bot.setAutoDelay(autoDelay); // Checks the range
+
+    this.autoDelay = autoDelay;
     this.isAutoDelay = isAutoDelay && shortDelay > 0;
 
-    bot.setAutoDelay(isAutoDelay ? shortDelay : 0);
+    updateBotAutoDelay();
 
     return this;
   }
 
+  /**
+   * <pre>
+   * In Precise Mode, Robot's auto delay is off, as the pacer does it after each event instead.
+   * </pre>
+   */
+  protected void updateBotAutoDelay() {
+    bot.setAutoDelay((pacer != null) ? 0 : autoDelay);
+  }
+
   public BotBuddy setAutoWaitForIdle(boolean isAutoWaitForIdle) {
     bot.setAutoWaitForIdle(isAutoWaitForIdle);
 
@@ -763,7 +1335,14 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     }
 
     this.bot = bot;
-    this.isAutoDelay = bot.getAutoDelay() > 0;
+
+    // In Precise Mode, Robot's auto delay is off, so keep ours
+    if(pacer == null) {
+      this.autoDelay = bot.getAutoDelay();
+      this.isAutoDelay = autoDelay > 0;
+    }
+
+    updateBotAutoDelay();
 
     return this;
   }
@@ -784,6 +1363,33 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return this;
   }
 
+  /**
+   * <pre>
+   * If true, then {@link #type(String)} and {@link #paste(String)} use {@link #enterText(String)},
+   *   so that each run of chars takes the cheapest path (e.g., for the instructions of BotBuddyCode).
+   * </pre>
+   */
+  public BotBuddy setEnterTextMode(boolean isEnterTextMode) {
+    this.isEnterTextMode = isEnterTextMode;
+
+    return this;
+  }
+
+  /**
+   * <pre>
+   * If true, then {@link #type(TypePlan)} (and so {@link #type(String)}) sends the key events of each char
+   *   back to back, and only syncs (auto delay &amp; wait for idle) once after each char.
+   * This types about twice as fast, but an app that drops fast key events might miss some.
+   *
+   * It's off by default, so that each key event has the auto delay.
+   * </pre>
+   */
+  public BotBuddy setFastTypeMode(boolean isFastTypeMode) {
+    this.isFastTypeMode = isFastTypeMode;
+
+    return this;
+  }
+
   public BotBuddy setFastDelay(int fastDelay) {
     this.fastDelay = fastDelay;
 
@@ -808,12 +1414,112 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return this;
   }
 
+  /**
+   * <pre>
+   * How often (in milliseconds) to sample the mouse in a background thread for Safe Mode,
+   *   instead of getting the mouse coords after every operation, or 0 for off.
+   *
+   * If Safe Mode is on, the monitor is restarted with the new rate.
+   * </pre>
+   *
+   * @see #DEFAULT_MONITOR_RATE
+   */
+  public BotBuddy setMonitorRate(int monitorRate) {
+    if(monitorRate < 0) {
+      throw new IllegalArgumentException("Monitor rate cannot be negative");
+    }
+
+    this.monitorRate = monitorRate;
+
+    if(isSafeMode) {
+      startMonitor();
+    }
+
+    return this;
+  }
+
+  /**
+   * <pre>
+   * Sets the layout of the keyboard, for which keys to press to type each char (see {@link KeyCodes#getLayout(String)}).
+   * The chars that aren't in the layout are pasted instead.
+   * </pre>
+   */
+  public BotBuddy setKeyLayout(KeyLayout keyLayout) {
+    if(keyLayout == null) {
+      throw new IllegalArgumentException("Key layout cannot be null");
+    }
+
+    this.keyLayout = keyLayout;
+
+    return this;
+  }
+
   public BotBuddy setOSFamily(OSFamily osFamily) {
     this.osFamily = osFamily;
 
     return this;
   }
 
+  /**
+   * <pre>
+   * If more than 0, then {@link #paste(String)} pastes a text longer than this in chunks of this many chars.
+   * Off (0) by default.
+   * </pre>
+   *
+   * @see #pasteChunks(String,int,Point)
+   * @see #DEFAULT_PASTE_CHUNK_SIZE
+   */
+  public BotBuddy setPasteChunkSize(int pasteChunkSize) {
+    if(pasteChunkSize < 0) {
+      throw new IllegalArgumentException("Paste chunk size cannot be negative");
+    }
+
+    this.pasteChunkSize = pasteChunkSize;
+
+    return this;
+  }
+
+  public BotBuddy setPauseDelay(int pauseDelay) {
+    if(pauseDelay < 0) {
+      throw new IllegalArgumentException("Pause delay cannot be negative");
+    }
+
+    this.pauseDelay = pauseDelay;
+
+    return this;
+  }
+
+  /**
+   * <pre>
+   * If true, then Safe Mode pauses until the user is idle, instead of throwing {@link UserIsActiveException}.
+   * </pre>
+   *
+   * @see #pauseUntilUserIsIdle()
+   */
+  public BotBuddy setPauseMode(boolean isPauseMode) {
+    this.isPauseMode = isPauseMode;
+
+    return this;
+  }
+
+  /**
+   * <pre>
+   * If true, then the auto delay and the delays are paced with {@link System#nanoTime()} deadlines
+   *   (see {@link Pacer}), instead of {@link Robot#delay(int)}, for a steady rate of events
+   *   (e.g., an auto delay of 5 ms for typing fast).
+   * It spins for up to a few milliseconds before each deadline, so it uses more CPU.
+   * </pre>
+   */
+  public BotBuddy setPreciseMode(boolean isPreciseMode) {
+    if(isPreciseMode != (pacer != null)) {
+      pacer = isPreciseMode ? new Pacer() : null;
+
+      updateBotAutoDelay();
+    }
+
+    return this;
+  }
+
   public BotBuddy setReleaseMode(boolean isReleaseMode) {
     this.isReleaseMode = isReleaseMode;
 
@@ -843,7 +1549,7 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
   }
 
   public int getAutoDelay() {
-    return bot.getAutoDelay();
+    return autoDelay;
   }
 
   public boolean isAutoDelay() {
@@ -854,6 +1560,10 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return bot.isAutoWaitForIdle();
   }
 
+  public boolean isBatching() {
+    return batchDepth > 0;
+  }
+
   public Robot getBot() {
     return bot;
   }
@@ -866,10 +1576,22 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return defaultButton;
   }
 
+  public boolean isEnterTextMode() {
+    return isEnterTextMode;
+  }
+
+  public boolean isFastTypeMode() {
+    return isFastTypeMode;
+  }
+
   public int getFastDelay() {
     return fastDelay;
   }
 
+  public KeyLayout getKeyLayout() {
+    return keyLayout;
+  }
+
   public int getLeftButton() {
     return leftButton;
   }
@@ -882,10 +1604,34 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return middleButton;
   }
 
+  public int getMonitorRate() {
+    return monitorRate;
+  }
+
+  public boolean isMonitoring() {
+    return monitor != null;
+  }
+
   public OSFamily getOSFamily() {
     return osFamily;
   }
 
+  public int getPasteChunkSize() {
+    return pasteChunkSize;
+  }
+
+  public int getPauseDelay() {
+    return pauseDelay;
+  }
+
+  public boolean isPauseMode() {
+    return isPauseMode;
+  }
+
+  public boolean isPreciseMode() {
+    return pacer != null;
+  }
+
   public Color getPixel(Point coords) {
     return getPixel(coords.x,coords.y);
   }
@@ -926,6 +1672,36 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     return tool;
   }
 
+  /**
+   * <pre>
+   * Estimates the costs (in microseconds) of typing vs pasting with the current delays, for {@link #enterText(String)}.
+   *
+   * - Not in a batch, {@link #type(TypePlan)} syncs (auto delay & wait for idle) after each key event,
+   *     the same as the shortcut of a paste, so a long run is cheaper to paste.
+   * - In Fast Type Mode (not in a batch), it syncs after each char,
+   *     while a paste syncs when copying and after the shortcut, so a long run is still cheaper to paste.
+   * - In a batch, the chars aren't synced, but copying still is, so typing is almost always cheaper.
+   * </pre>
+   */
+  public TypePlan.Costs getTypeCosts() {
+    final boolean isPaced = (batchDepth == 0);
+    final int delay = isPaced ? (isAutoDelay ? getAutoDelay() : 0) : batchDelay;
+    final boolean isWaitForIdle = isPaced ? isAutoWaitForIdle() : isBatchWaitForIdle;
+    final long syncCost = TimeUnit.MILLISECONDS.toMicros(delay) + (isWaitForIdle ? WAIT_FOR_IDLE_COST : 0L);
+
+    if(isPaced && !isFastTypeMode) {
+      final long eventCost = KEY_EVENT_COST + syncCost;
+
+      // Shortcut (e.g., Ctrl+V is 4 events)
+      return new TypePlan.Costs(0L,eventCost,PASTE_COST + (4 * eventCost));
+    }
+
+    final long stepCost = isPaced ? syncCost : 0L;
+
+    // Copy (sync) + shortcut (e.g., Ctrl+V is 4 events) + step (sync)
+    return new TypePlan.Costs(stepCost,KEY_EVENT_COST,PASTE_COST + syncCost + (4 * KEY_EVENT_COST) + stepCost);
+  }
+
   /**
    * <pre>
    * <b>BotBuddy.Builder</b> constructs a {@link BotBuddy} using the Builder Design Pattern.
@@ -944,11 +1720,19 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     protected int fastDelay = DEFAULT_FAST_DELAY;
     protected boolean isAutoDelay = true;
     protected boolean isAutoWaitForIdle = true;
+    protected boolean isEnterTextMode = false;
+    protected boolean isFastTypeMode = false;
+    protected boolean isPauseMode = false;
+    protected boolean isPreciseMode = false;
     protected boolean isReleaseMode = true;
+    protected KeyLayout keyLayout = KeyCodes.US_LAYOUT;
     protected int leftButton;
     protected int longDelay = DEFAULT_LONG_DELAY;
     protected int middleButton;
+    protected int monitorRate = 0;
     protected OSFamily osFamily = Sys.OS_FAMILY;
+    protected int pasteChunkSize = 0;
+    protected int pauseDelay = DEFAULT_PAUSE_DELAY;
     protected int rightButton;
     protected int shortDelay = DEFAULT_SHORT_DELAY;
     protected Toolkit tool = null;
@@ -1043,6 +1827,18 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
       return this;
     }
 
+    public Builder enterTextMode(boolean isEnterTextMode) {
+      this.isEnterTextMode = isEnterTextMode;
+
+      return this;
+    }
+
+    public Builder fastTypeMode(boolean isFastTypeMode) {
+      this.isFastTypeMode = isFastTypeMode;
+
+      return this;
+    }
+
     public Builder fastDelay(int fastDelay) {
       this.fastDelay = fastDelay;
 
@@ -1061,18 +1857,54 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
       return this;
     }
 
+    public Builder keyLayout(KeyLayout keyLayout) {
+      this.keyLayout = keyLayout;
+
+      return this;
+    }
+
     public Builder middleButton(int middleButton) {
       this.middleButton = middleButton;
 
       return this;
     }
 
+    public Builder monitorRate(int monitorRate) {
+      this.monitorRate = monitorRate;
+
+      return this;
+    }
+
     public Builder osFamily(OSFamily osFamily) {
       this.osFamily = osFamily;
 
       return this;
     }
 
+    public Builder pasteChunkSize(int pasteChunkSize) {
+      this.pasteChunkSize = pasteChunkSize;
+
+      return this;
+    }
+
+    public Builder pauseDelay(int pauseDelay) {
+      this.pauseDelay = pauseDelay;
+
+      return this;
+    }
+
+    public Builder pauseMode(boolean isPauseMode) {
+      this.isPauseMode = isPauseMode;
+
+      return this;
+    }
+
+    public Builder preciseMode(boolean isPreciseMode) {
+      this.isPreciseMode = isPreciseMode;
+
+      return this;
+    }
+
     public Builder releaseMode(boolean isReleaseMode) {
       this.isReleaseMode = isReleaseMode;
 
@@ -1132,6 +1964,152 @@ public class BotBuddy implements AutoCloseable,Duplicable<BotBuddy> {
     }
   }
 
+  /**
+   * <pre>
+   * <b>Monitor</b> samples the mouse in a background (daemon) thread for Safe Mode.
+   *
+   * If the mouse is not at the safe coords, it sets {@link BotBuddy#isUserActive} and wakes up a delay.
+   * A sample taken while our operations move the mouse is ignored (see {@link BotBuddy#moveCount}).
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  protected class Monitor extends Thread {
+    protected final int rate;
+    protected volatile boolean isRunning = true;
+
+    public Monitor(int rate) {
+      super("BotBuddy-Monitor");
+
+      this.rate = rate;
+
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while(isRunning) {
+        final int count = moveCount;
+        final Point expectedCoords = safeCoords;
+
+        if((count & 1) == 0 && expectedCoords != null && !isUserActive) {
+          final Point coords = getCoords();
+
+          // Not moved by our operations meanwhile
+          if(count == moveCount && !coords.equals(expectedCoords)) {
+            synchronized(activityLock) {
+              isUserActive = true;
+              activityLock.notifyAll();
+            }
+          }
+        }
+
+        try {
+          Thread.sleep(rate);
+        }
+        catch(InterruptedException ex) {
+          break;
+        }
+      }
+    }
+
+    public void shutdown() {
+      isRunning = false;
+      interrupt();
+    }
+  }
+
+  /**
+   * <pre>
+   * Pastes the chunks of {@link #pasteChunks(String,int,Point)} with this buddy's events &amp; delays.
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  protected class BuddyChunkPaster extends ChunkPaster {
+    public BuddyChunkPaster() {
+      super(BotBuddy.this.fastDelay,BotBuddy.this.shortDelay,BotBuddy.this.longDelay);
+    }
+
+    @Override
+    protected void copy(ChunkSelection chunk) {
+      BotBuddy.this.copy(chunk,chunk);
+    }
+
+    @Override
+    protected void delay(int delay) {
+      BotBuddy.this.delay(delay);
+    }
+
+    @Override
+    protected Color getPixel(Point coords) {
+      return BotBuddy.this.getPixel(coords);
+    }
+
+    @Override
+    protected void paste() {
+      BotBuddy.this.paste();
+    }
+
+    @Override
+    protected void waitForIdle() {
+      BotBuddy.this.waitForIdle();
+    }
+  }
+
+  /**
+   * <pre>
+   * Pauses for {@link #pauseUntilUserIsIdle()} with this buddy's events.
+   * Presses directly (not with {@link #pressButton(int)}, etc.), so that not checked again (recursively).
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  protected class BuddyUserPauser extends UserPauser {
+    public BuddyUserPauser() {
+      super(BotBuddy.this.pauseDelay);
+    }
+
+    @Override
+    protected Point getCoords() {
+      return BotBuddy.this.getCoords();
+    }
+
+    @Override
+    protected void pressButton(int button) {
+      sendMousePress(button);
+    }
+
+    @Override
+    protected void pressKey(int keyCode) {
+      sendKeyPress(keyCode);
+    }
+
+    @Override
+    protected void releaseButton(int button) {
+      sendMouseRelease(button);
+    }
+
+    @Override
+    protected void releaseKey(int keyCode) {
+      sendKeyRelease(keyCode);
+    }
+
+    @Override
+    protected void restoreCoords() {
+      final Point coords = safeCoords;
+
+      if(monitor != null) {
+        moveMonitored(coords.x,coords.y);
+      }
+      else {
+        sendMouseMove(coords.x,coords.y);
+      }
+
+      isUserActive = false; // Handled
+    }
+  }
+
   /**
    * @author Jonathan Bradley Whited
    */
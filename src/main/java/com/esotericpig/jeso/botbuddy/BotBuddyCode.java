@@ -10,32 +10,54 @@ package com.esotericpig.jeso.botbuddy;
 import com.esotericpig.jeso.Bools;
 import com.esotericpig.jeso.OSFamily;
 import com.esotericpig.jeso.Strs;
+import com.esotericpig.jeso.UtilClassException;
 import com.esotericpig.jeso.code.LineOfCode;
 import com.esotericpig.jeso.code.ParseCodeException;
+import com.esotericpig.jeso.io.CSVReader;
+import com.esotericpig.jeso.io.MappedLineReader;
 import com.esotericpig.jeso.io.StringListReader;
 import java.awt.AWTException;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -44,11 +66,15 @@ import javax.imageio.ImageIO;
 /**
  * <pre>
  * <b>BotBuddyCode</b> is a simple scripting "language" for {@link com.esotericpig.jeso.botbuddy.BotBuddy}.
- *   It is <b>not</b> Turing complete.
  *
  * The idea was to make a very simple parser, without including the overhead of Groovy/JRuby into Jeso.
  *
- * It can handle Ruby-like string literals and heredoc, and simple methods (no params).
+ * It can handle Ruby-like string literals and heredoc, simple methods (with params),
+ *   simple control flow (repeat, while, if/else, break), batches, and int/string variables.
+ *
+ * Parsing is thread-safe at {@link #compile()} and {@link #interpret(boolean)} only, which lock once
+ *   for the whole parse. The scanning methods (e.g., {@link #nextLineChar()}) do not lock, so don't call them
+ *   from another thread while parsing.
  *
  * It can accept the following input:
  * - {@link java.io.BufferedReader}
@@ -73,6 +99,13 @@ import javax.imageio.ImageIO;
  *     bbc.interpret();
  *   }}
  *
+ * Example usage of compiling once and executing many times:{@code
+ *   // Doesn't need a BotBuddy (or a Robot) to compile
+ *   BotBuddyCode.Program program = BotBuddyCode.builder(Paths.get("file.txt")).compile();
+ *
+ *   program.execute(buddy);
+ *   program.execute(buddy);}
+ *
  * Example of functionality:{@code
  *   # This is a comment
  *
@@ -102,7 +135,6 @@ import javax.imageio.ImageIO;
  *   puts %^Hello \^ World^
  *
  *   # Define your own (user) method
- *   # - Cannot take in args
  *   def my_method
  *     get_coords
  *     get_pixel 1839 894
@@ -111,7 +143,59 @@ import javax.imageio.ImageIO;
  *   end
  *
  *   # Can call multiple methods in one line
- *   call my_method myMethod}
+ *   call my_method myMethod
+ *
+ *   # User methods can take in params, used like variables
+ *   # - Small methods are inlined when compiled
+ *   def click_at x y
+ *     move $x $y
+ *     click
+ *   end
+ *
+ *   # Each call takes as many args as its method has params
+ *   call click_at 1851 1021 my_method
+ *
+ *   # Control flow
+ *   # - Conditions: pixel <x> <y> <color>, true, false; prefix with "not" to negate
+ *   # - A color is hex (0xFFFFFF or quoted "#FFFFFF", as '#' begins a comment) or an int
+ *   repeat 3
+ *     click 1851 1021
+ *
+ *     if pixel 1839 894 0xFFFFFF
+ *       puts "White"
+ *     else
+ *       puts "Not white"
+ *     end
+ *   end
+ *
+ *   while not pixel 1839 894 0x00FF00
+ *     delay_long
+ *
+ *     if pixel 10 10 0xFF0000
+ *       break
+ *     end
+ *   end
+ *
+ *   # Variables (ints or strings)
+ *   # - Only an unquoted $name is a variable, so '$5.00' is left as is
+ *   # - Arithmetic: add, sub, mul, div, mod
+ *   # - Conditions: eq, ne, lt, le, gt, ge
+ *   set x 1187
+ *   set i 0
+ *
+ *   while lt $i 3
+ *     paste $x 492 "Sakana"
+ *     add x 20
+ *     add i 1
+ *   end
+ *
+ *   # Send the events back to back, waiting for idle and delaying only at each sync & the end
+ *   batch
+ *     paste 1187 492 "Niku"
+ *     enter 1450 511 "Meat"
+ *     sync
+ *     click 1851 1021
+ *   end}
  *
  * Real world example:{@code
  *   puts "Get ready..."
@@ -141,13 +225,51 @@ import javax.imageio.ImageIO;
 public class BotBuddyCode implements Closeable {
   public static final int DEFAULT_COMMENT_CHAR = '#';
   public static final int DEFAULT_ESCAPE_CHAR = '\\';
+  public static final String INSTRUCTION_ADD_ID = "add";
+  public static final String INSTRUCTION_BATCH_ID = "batch";
+  public static final String INSTRUCTION_BREAK_ID = "break";
   public static final String INSTRUCTION_CALL_ID = "call";
+  public static final String INSTRUCTION_DIV_ID = "div";
+  public static final String INSTRUCTION_ELSE_ID = "else";
+  public static final String INSTRUCTION_END_ID = "end";
+  public static final String INSTRUCTION_IF_ID = "if";
+  public static final String INSTRUCTION_MOD_ID = "mod";
+  public static final String INSTRUCTION_MUL_ID = "mul";
+  public static final String INSTRUCTION_REPEAT_ID = "repeat";
+  public static final String INSTRUCTION_SET_ID = "set";
+  public static final String INSTRUCTION_SUB_ID = "sub";
+  public static final String INSTRUCTION_WHILE_ID = "while";
+  public static final int VARIABLE_CHAR = '$';
   public static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+",Pattern.UNICODE_CHARACTER_CLASS);
 
   public static Builder builder() {
     return new Builder();
   }
 
+  /**
+   * @return true if {@code id} opens a block that is closed by {@code end} (e.g., {@code repeat})
+   */
+  public static boolean isBlockID(String id) {
+    return id.equals(INSTRUCTION_REPEAT_ID) || id.equals(INSTRUCTION_WHILE_ID) || id.equals(INSTRUCTION_IF_ID)
+        || id.equals(INSTRUCTION_BATCH_ID);
+  }
+
+  /**
+   * @return true if {@code id} is a keyword of control flow (e.g., {@code repeat}, {@code else}, {@code end})
+   */
+  public static boolean isControlID(String id) {
+    return isBlockID(id) || id.equals(INSTRUCTION_BREAK_ID) || id.equals(INSTRUCTION_ELSE_ID)
+        || id.equals(INSTRUCTION_END_ID);
+  }
+
+  /**
+   * @return true if {@code id} is a keyword that assigns a variable (e.g., {@code set}, {@code add})
+   */
+  public static boolean isVariableID(String id) {
+    return id.equals(INSTRUCTION_SET_ID) || id.equals(INSTRUCTION_ADD_ID) || id.equals(INSTRUCTION_SUB_ID)
+        || id.equals(INSTRUCTION_MUL_ID) || id.equals(INSTRUCTION_DIV_ID) || id.equals(INSTRUCTION_MOD_ID);
+  }
+
   public static Builder builder(BufferedReader input) {
     return new Builder(input);
   }
@@ -170,35 +292,59 @@ public class BotBuddyCode implements Closeable {
 
   protected BotBuddy buddy;
   protected StringBuilder buffer = new StringBuilder();
+  protected Path cacheDir = null;
+  protected Charset charset = null;
   protected int commentChar;
+  protected ConstantPool constants = new ConstantPool();
   protected int escapeChar;
   protected Executors executors;
+  protected List<String> fields = Collections.emptyList();
   protected boolean hadCode = false;
   protected boolean hadInput = false;
   protected boolean hadInstruction = false;
   protected BufferedReader input = null;
   protected String instructionName = null;
-  protected String line = null;
+  protected boolean isLightErrors;
+  protected CharSequence line = null;
   protected int lineChar = 0;
   protected int lineIndex = 0;
   protected int lineNumber = 0;
   protected ReadWriteLock lock = new ReentrantReadWriteLock();
+  protected MappedLineReader mappedInput = null;
   protected StringBuilder output = new StringBuilder();
+  protected Appendable outputTo = null;
+  protected Path path = null;
+  protected SymbolTable symbols = new SymbolTable();
   protected Map<String,UserMethod> userMethods = new HashMap<>();
 
   protected BotBuddyCode(Builder builder) throws AWTException,IOException {
-    if(builder.buddy == null) {
-      builder.buddy(BotBuddy.builder().build());
-    }
+    this(builder,(builder.buddy != null) ? builder.buddy : builder.buddy(BotBuddy.builder().build()).buddy);
+  }
+
+  /**
+   * <pre>
+   * {@code buddy} can be null if only compiling (see {@link Builder#compile()}),
+   *   so that a {@link java.awt.Robot} is not needed.
+   * </pre>
+   */
+  protected BotBuddyCode(Builder builder,BotBuddy buddy) throws IOException {
     if(builder.executors == null) {
       builder.executors(DefaultExecutors.defaultExecutors);
     }
-    if(builder.input == null) {
+
+    final boolean isFromPath = (builder.input == null);
+
+    if(isFromPath) {
       if(builder.path == null) {
         throw new IllegalArgumentException("Input or Path must be set");
       }
 
-      if(builder.charset == null) {
+      if(builder.isMapped) {
+        // Don't set it in the Builder, as it's not a BufferedReader
+        mappedInput = new MappedLineReader(builder.path
+            ,(builder.charset != null) ? builder.charset : StandardCharsets.UTF_8);
+      }
+      else if(builder.charset == null) {
         builder.input(Files.newBufferedReader(builder.path));
       }
       else {
@@ -206,11 +352,20 @@ public class BotBuddyCode implements Closeable {
       }
     }
 
-    setBuddy(builder.buddy);
+    setBuddy(buddy);
     setCommentChar(builder.commentChar);
     setEscapeChar(builder.escapeChar);
     setExecutors(builder.executors);
+    setLightErrors(builder.isLightErrors);
+    fields = builder.fields;
     input = builder.input;
+
+    // Only a file can be cached, as piped input, etc. can't be hashed without reading it
+    if(isFromPath) {
+      cacheDir = builder.cacheDir;
+      charset = (builder.charset != null) ? builder.charset : StandardCharsets.UTF_8;
+      path = builder.path;
+    }
   }
 
   @Override
@@ -222,16 +377,24 @@ public class BotBuddyCode implements Closeable {
       // - Do NOT call clear(), etc., as Builder may be used again to build a new one
       buddy = null;
       buffer = null;
+      constants = null;
       executors = null;
+      fields = null;
       instructionName = null;
       line = null;
       output = null;
+      outputTo = null;
+      symbols = null;
       userMethods = null;
 
       if(input != null) {
         input.close();
         input = null;
       }
+      if(mappedInput != null) {
+        mappedInput.close();
+        mappedInput = null;
+      }
     }
     finally {
       lock.writeLock().unlock();
@@ -243,21 +406,30 @@ public class BotBuddyCode implements Closeable {
 
     try {
       if(instruction.args.length < 1) {
-        throw instruction.buildParseCodeException("Method has no name");
+        throw buildParseCodeException(instruction.loc,"Method has no name",instruction.name);
       }
 
       Arg methodNameArg = instruction.args[0];
       String methodName = methodNameArg.value;
+      UserMethod userMethod = new UserMethod(instruction.loc,methodName);
 
-      if(instruction.args.length > 1) {
-        throw ParseCodeException.build(instruction.args[1].loc,"Methods cannot currently define params"
-            ,methodName);
-      }
+      // Params: "def my_method x y" or "def my_method $x $y"
+      for(int i = 1; i < instruction.args.length; ++i) {
+        Arg paramArg = instruction.args[i];
+        String param = paramArg.getVariableName();
 
-      UserMethod userMethod = new UserMethod(instruction.loc,methodName);
+        if(paramArg.isQuoted || WHITESPACE_PATTERN.matcher(param).find()) {
+          throw buildParseCodeException(paramArg.loc,"Invalid param name '" + param + "'",methodName);
+        }
+        if(userMethod.params.contains(param)) {
+          throw buildParseCodeException(paramArg.loc,"Param '" + param + "' is already defined",methodName);
+        }
+
+        userMethod.params.add(param);
+      }
 
       if(userMethods.containsKey(userMethod.id)) {
-        throw ParseCodeException.build(methodNameArg.loc,"Method name is already defined as '" + userMethod.id
+        throw buildParseCodeException(methodNameArg.loc,"Method name is already defined as '" + userMethod.id
             + "'",methodName);
       }
 
@@ -271,7 +443,19 @@ public class BotBuddyCode implements Closeable {
   }
 
   public ParseCodeException buildParseCodeException(String message) {
-    return ParseCodeException.build(lineNumber,lineIndex,message,instructionName);
+    return buildParseCodeException(new LineOfCode(lineNumber,lineIndex),message,instructionName);
+  }
+
+  /**
+   * <pre>
+   * Builds a light exception if {@link #isLightErrors()}.
+   * </pre>
+   *
+   * @see ParseCodeException#buildLight(LineOfCode,String,String)
+   */
+  public ParseCodeException buildParseCodeException(LineOfCode loc,String message,String name) {
+    return isLightErrors ? ParseCodeException.buildLight(loc,message,name)
+        : ParseCodeException.build(loc,message,name);
   }
 
   public ParseCodeException buildParseCodeException(String message,Throwable cause) {
@@ -286,7 +470,7 @@ public class BotBuddyCode implements Closeable {
 
       for(Arg arg: instruction.args) {
         String methodName = arg.value;
-        String methodID = Instruction.toID(methodName);
+        String methodID = symbols.toID(methodName);
         UserMethod userMethod = userMethods.get(methodID);
 
         if(userMethod == null) {
@@ -328,6 +512,47 @@ public class BotBuddyCode implements Closeable {
     }
   }
 
+  /**
+   * <pre>
+   * Parses all of the input and compiles it into a {@link Program},
+   *   which can then be executed any number of times.
+   *
+   * This can only be called once per instance, as the input is consumed.
+   *
+   * The program is also linked, so an instruction that does not exist or a call to
+   *   a user method that does not exist is reported here, instead of in the middle of executing.
+   * </pre>
+   *
+   * @return the compiled program
+   * @throws IOException        if the input fails to be read
+   * @throws ParseCodeException if the code fails to be parsed or linked
+   * @see Builder#compile()
+   */
+  public Program compile() throws IOException,ParseCodeException {
+    lock.writeLock().lock();
+
+    try {
+      if(cacheDir == null || path == null) {
+        return new Program(parse(false),userMethods,executors,fields,symbols,constants,isLightErrors);
+      }
+
+      ProgramCache cache = new ProgramCache(cacheDir);
+      String key = cache.buildKey(path,charset,commentChar,escapeChar,executors,fields);
+      Program program = cache.load(key,executors,fields,isLightErrors);
+
+      if(program == null) {
+        program = new Program(parse(false),userMethods,executors,fields,symbols,constants,isLightErrors);
+
+        cache.store(key,program);
+      }
+
+      return program;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
   public void interpret() throws IOException,ParseCodeException {
     interpret(true);
   }
@@ -336,159 +561,255 @@ public class BotBuddyCode implements Closeable {
     lock.writeLock().lock();
 
     try {
-      hadCode = false;
-      hadInput = false;
-      hadInstruction = false;
-      instructionName = null;
-      line = null;
-      lineNumber = 0;
-      output.setLength(0);
+      if(execute) {
+        compile().execute(buddy);
+      }
+      else {
+        parse(true);
+      }
 
-      UserMethod userMethod = null;
+      return output.toString();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
 
-      while(nextLine() != null) {
-        hadInput = true;
+  public String interpretDryRun() throws IOException,ParseCodeException {
+    return interpret(false);
+  }
 
-        if(!seekToNonWhitespace()) {
-          continue; // Ignore empty line or comment (handled in seek)
-        }
+  /**
+   * <pre>
+   * Same as {@link #interpretDryRun()}, but writes the output of each instruction to {@code out}
+   *   as soon as it's parsed, instead of holding all of the output in memory and returning it.
+   *
+   * The top-level instructions are also not kept, so memory doesn't grow with the size of the output,
+   *   and the first lines appear immediately (e.g., for piping a huge script into grep).
+   *
+   * If {@code out} is {@link Flushable}, it's flushed at the end (but not closed).
+   * </pre>
+   *
+   * @param out where to write the output to
+   */
+  public void interpretDryRun(Appendable out) throws IOException,ParseCodeException {
+    lock.writeLock().lock();
 
-        hadCode = true;
+    try {
+      outputTo = out;
 
-        // Instruction name
-        LineOfCode loc = new LineOfCode(lineNumber,lineIndex);
+      parse(true);
 
-        instructionName = readToWhitespace().toString();
+      if(out instanceof Flushable) {
+        ((Flushable)out).flush();
+      }
+    }
+    finally {
+      outputTo = null;
 
-        Instruction instruction = new Instruction(loc,instructionName);
+      if(output != null) {
+        output.setLength(0);
+      }
 
-        // Special keywords
-        if(instruction.id.equals("end")) {
-          if(userMethod == null) {
-            throw instruction.buildParseCodeException(
-                "Invalid instruction; a method can only have one 'end'");
-          }
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * <pre>
+   * The caller must hold the write lock.
+   *
+   * This is the parsing session: it and the scanning methods that it calls
+   *   ({@link #nextLine()}, {@link #nextLineChar()}, {@link #hasLineChar()}, {@link #seekToNonWhitespace()},
+   *   {@link #readToWhitespace()}, {@link #readQuote(int)}, {@link #readHeredoc()}, etc.)
+   *   do not lock on their own, as the write lock confines the whole session to one thread.
+   * </pre>
+   *
+   * @param isDryRun true to output the interpretation of each instruction while parsing
+   * @return the top-level instructions; the user methods are stored in {@link #userMethods}
+   */
+  protected List<Instruction> parse(boolean isDryRun) throws IOException,ParseCodeException {
+    hadCode = false;
+    hadInput = false;
+    hadInstruction = false;
+    instructionName = null;
+    line = null;
+    lineNumber = 0;
+    output.setLength(0);
+
+    List<Instruction> mainCode = new ArrayList<>();
+    LinkedList<Instruction> openBlocks = new LinkedList<>(); // Control flow (e.g., repeat), closed by 'end'
+    UserMethod userMethod = null;
+
+    while(nextLine() != null) {
+      hadInput = true;
+
+      if(!seekToNonWhitespace()) {
+        continue; // Ignore empty line or comment (handled in seek)
+      }
 
-          userMethod = null;
+      hadCode = true;
 
-          continue;
+      // Instruction name
+      LineOfCode loc = new LineOfCode(lineNumber,lineIndex);
+
+      instructionName = readToWhitespace().toString();
+
+      Instruction instruction = new Instruction(loc,instructionName,symbols.toID(instructionName));
+
+      // Special keywords
+      if(instruction.id.equals(INSTRUCTION_END_ID) && openBlocks.isEmpty()) {
+        if(userMethod == null) {
+          throw buildParseCodeException(instruction.loc
+              ,"Invalid instruction; a method can only have one 'end'",instruction.name);
         }
 
-        // Instruction args
-        List<Arg> args = new ArrayList<>();
+        userMethod = null;
 
-        while(hasLineChar()) {
-          final int prevLineIndex = lineIndex;
-          final int prevLineNumber = lineNumber;
+        continue;
+      }
 
-          if(!seekToNonWhitespace()) {
-            break; // No more args (or comment)
-          }
+      // Instruction args
+      List<Arg> args = new ArrayList<>();
 
-          loc = new LineOfCode(lineNumber,lineIndex);
+      while(hasLineChar()) {
+        final int prevLineIndex = lineIndex;
+        final int prevLineNumber = lineNumber;
 
-          if(lineChar == '"' || lineChar == '\'') {
-            readQuote(lineChar);
-          }
-          else if(lineChar == '%') {
-            readSpecialQuote();
-          }
-          else if(lineChar == '<') {
-            readHeredoc();
-          }
-          else {
-            readToWhitespace();
-          }
+        if(!seekToNonWhitespace()) {
+          break; // No more args (or comment)
+        }
 
-          // Was there a read/seek above? Or are we caught in an infinite loop parsing the same char?
-          if(lineIndex == prevLineIndex && lineNumber == prevLineNumber) {
-            throw buildParseCodeException("Internal code is broken causing an infinite loop");
-          }
+        loc = new LineOfCode(lineNumber,lineIndex);
 
-          args.add(new Arg(loc,buffer.toString()));
+        boolean isQuoted = true;
 
-          // nextLine() might have been called (e.g., heredoc)
-          if(line == null) {
-            break;
-          }
+        if(lineChar == '"' || lineChar == '\'') {
+          readQuote(lineChar);
+        }
+        else if(lineChar == '%') {
+          readSpecialQuote();
+        }
+        else if(lineChar == '<') {
+          readHeredoc();
+        }
+        else {
+          readToWhitespace();
+          isQuoted = false;
         }
 
-        instruction.setArgs(args);
+        // Was there a read/seek above? Or are we caught in an infinite loop parsing the same char?
+        if(lineIndex == prevLineIndex && lineNumber == prevLineNumber) {
+          throw buildParseCodeException("Internal code is broken causing an infinite loop");
+        }
 
-        // Special keywords
-        if(instruction.id.equals("def")) {
-          if(userMethod != null) {
-            throw instruction.buildParseCodeException("Methods cannot be defined within methods");
-          }
+        args.add(new Arg(loc,constants.intern(buffer.toString()),isQuoted));
+
+        // nextLine() might have been called (e.g., heredoc)
+        if(line == null) {
+          break;
+        }
+      }
 
-          userMethod = addUserMethod(instruction);
+      instruction.setArgs(args);
 
-          if(!execute) {
-            output(userMethod);
-          }
+      // Special keywords
+      if(instruction.id.equals("def")) {
+        if(userMethod != null) {
+          throw buildParseCodeException(instruction.loc,"Methods cannot be defined within methods"
+              ,instruction.name);
+        }
+        if(!openBlocks.isEmpty()) {
+          throw buildParseCodeException(instruction.loc,"Methods cannot be defined within blocks"
+              ,instruction.name);
+        }
 
-          continue;
+        userMethod = addUserMethod(instruction);
+
+        if(isDryRun) {
+          output(userMethod);
+          flushOutput();
         }
 
-        // Execute/Output instruction
-        if(userMethod == null) {
-          hadInstruction = true;
+        continue;
+      }
 
-          if(execute) {
-            execute(instruction);
-          }
-          else {
-            output(instruction);
-          }
+      // Control flow is stored like other instructions; the Program links each block to its 'end'
+      if(isBlockID(instruction.id)) {
+        openBlocks.push(instruction);
+      }
+      else if(instruction.id.equals(INSTRUCTION_END_ID)) {
+        openBlocks.pop();
+      }
+
+      // Store/Output instruction
+      if(userMethod == null) {
+        hadInstruction = true;
+
+        // Don't keep the instructions if only streaming the output
+        if(outputTo == null) {
+          mainCode.add(instruction);
         }
-        else {
-          userMethod.instructions.add(instruction);
 
-          if(!execute) {
-            outputWithIndent(instruction);
-          }
+        if(isDryRun) {
+          output(instruction);
+          flushOutput();
         }
       }
+      else {
+        userMethod.instructions.add(instruction);
 
-      return output.toString();
+        if(isDryRun) {
+          outputWithIndent(instruction);
+          flushOutput();
+        }
+      }
     }
-    finally {
-      lock.writeLock().unlock();
+
+    if(!openBlocks.isEmpty()) {
+      Instruction block = openBlocks.peek();
+
+      throw buildParseCodeException(block.loc,"Block has no 'end'",block.name);
     }
-  }
 
-  public String interpretDryRun() throws IOException,ParseCodeException {
-    return interpret(false);
+    return mainCode;
   }
 
-  public String nextLine() throws IOException {
-    lock.writeLock().lock();
-
-    try {
-      if((line = input.readLine()) != null) {
-        lineChar = 0;
-        lineIndex = 0;
-        ++lineNumber;
-      }
+  /**
+   * <pre>
+   * If memory-mapped (see {@link Builder#mapped(boolean)}), the line is a view of the decoded buffer
+   *   and is only valid until the next call.
+   * </pre>
+   */
+  public CharSequence nextLine() throws IOException {
+    line = (mappedInput != null) ? mappedInput.readLine() : input.readLine();
 
-      return line;
-    }
-    finally {
-      lock.writeLock().unlock();
+    if(line != null) {
+      lineChar = 0;
+      lineIndex = 0;
+      ++lineNumber;
     }
+
+    return line;
   }
 
   public int nextLineChar() {
-    lock.writeLock().lock();
+    lineChar = Character.codePointAt(line,lineIndex);
+    lineIndex += Character.charCount(lineChar);
 
-    try {
-      lineChar = line.codePointAt(lineIndex);
-      lineIndex += Character.charCount(lineChar);
+    return lineChar;
+  }
 
-      return lineChar;
-    }
-    finally {
-      lock.writeLock().unlock();
+  /**
+   * <pre>
+   * If streaming the output (see {@link #interpretDryRun(Appendable)}),
+   *   writes the output that has been buffered so far and then clears it.
+   * </pre>
+   */
+  protected void flushOutput() throws IOException {
+    if(outputTo != null && output.length() > 0) {
+      outputTo.append(output);
+      output.setLength(0);
     }
   }
 
@@ -500,64 +821,66 @@ public class BotBuddyCode implements Closeable {
     // WARNING: If you change this, update "/src/test/resources/BotBuddyCodeTestOutput.txt",
     //            else, the JUnit test will fail. For this reason, don't use #toString() methods.
 
-    lock.writeLock().lock();
+    // Special keywords
+    boolean isCallInst = instruction.id.equals(INSTRUCTION_CALL_ID);
+    boolean isControlInst = isControlID(instruction.id) || isVariableID(instruction.id);
+    boolean isUserMethod = (instruction instanceof UserMethod);
 
-    try {
-      // Special keywords
-      boolean isCallInst = instruction.id.equals(INSTRUCTION_CALL_ID);
-      boolean isUserMethod = (instruction instanceof UserMethod);
+    boolean hasPrefix = !prefix.isEmpty();
+    String newlinePrefix = hasPrefix ? ("\n" + prefix) : null;
 
-      boolean hasPrefix = !prefix.isEmpty();
-      String newlinePrefix = hasPrefix ? ("\n" + prefix) : null;
+    output.append(prefix);
+    output.append('[');
+    output.append(instruction.id).append(':').append(instruction.name);
+    output.append("]:(");
+    output.append(instruction.loc.getNumber()).append(':').append(instruction.loc.getColumn());
+    output.append("):");
 
-      output.append(prefix);
-      output.append('[');
-      output.append(instruction.id).append(':').append(instruction.name);
-      output.append("]:(");
-      output.append(instruction.loc.getNumber()).append(':').append(instruction.loc.getColumn());
-      output.append("):");
+    if(isCallInst || isControlInst) {
+      output.append("exists");
+    }
+    else if(isUserMethod) {
+      output.append("user");
+    }
+    else {
+      output.append(executors.contains(instruction) ? "exists" : "none");
+    }
 
-      if(isCallInst) {
-        output.append("exists");
-      }
-      else if(isUserMethod) {
-        output.append("user");
-      }
-      else {
-        output.append(executors.contains(instruction) ? "exists" : "none");
-      }
+    output.append('\n');
 
-      output.append('\n');
+    int paramCount = 0; // Of the current method of a call
+
+    for(int i = 0; i < instruction.args.length; ++i) {
+      Arg arg = instruction.args[i];
 
-      for(int i = 0; i < instruction.args.length; ++i) {
-        Arg arg = instruction.args[i];
+      output.append(prefix);
+      output.append("- [");
+      output.append(i);
+      output.append("]:(");
+      output.append(arg.loc.getNumber()).append(':').append(arg.loc.getColumn());
+      output.append("): ");
 
-        output.append(prefix);
-        output.append("- [");
-        output.append(i);
-        output.append("]:(");
-        output.append(arg.loc.getNumber()).append(':').append(arg.loc.getColumn());
-        output.append("): ");
+      if(isCallInst && paramCount <= 0) {
+        String methodID = symbols.toID(arg.value);
+        UserMethod userMethod = userMethods.get(methodID);
 
-        if(isCallInst) {
-          String methodID = Instruction.toID(arg.value);
+        output.append('[');
+        output.append(methodID).append(':').append(arg.value);
+        output.append("]:");
+        output.append((userMethod != null) ? "exists" : "none");
 
-          output.append('[');
-          output.append(methodID).append(':').append(arg.value);
-          output.append("]:");
-          output.append(userMethods.containsKey(methodID) ? "exists" : "none");
-        }
-        else {
-          output.append('\'');
-          output.append(hasPrefix ? arg.value.replace("\n",newlinePrefix) : arg.value);
-          output.append('\'');
-        }
+        // The next args are for its params (e.g., "call my_method 1 2 my_other_method")
+        paramCount = (userMethod != null) ? userMethod.params.size() : 0;
+      }
+      else {
+        --paramCount;
 
-        output.append('\n');
+        output.append('\'');
+        output.append(hasPrefix ? arg.value.replace("\n",newlinePrefix) : arg.value);
+        output.append('\'');
       }
-    }
-    finally {
-      lock.writeLock().unlock();
+
+      output.append('\n');
     }
   }
 
@@ -566,335 +889,293 @@ public class BotBuddyCode implements Closeable {
   }
 
   public StringBuilder readHeredoc() throws IOException,ParseCodeException {
-    lock.writeLock().lock();
+    // '<...' instead of '<<...'
+    if(!hasLineChar() || nextLineChar() != '<') {
+      throw buildParseCodeException("Invalid heredoc '<' instead of '<<' or unquoted string");
+    }
+    // '<<' with EOL
+    if(!hasLineChar()) {
+      throw buildParseCodeException("Invalid heredoc without a tag or unquoted string");
+    }
 
-    try {
-      // '<...' instead of '<<...'
-      if(!hasLineChar() || nextLineChar() != '<') {
-        throw buildParseCodeException("Invalid heredoc '<' instead of '<<' or unquoted string");
+    boolean isIndent = (nextLineChar() == '-');
+
+    if(isIndent) {
+      if(hasLineChar()) {
+        nextLineChar(); // Skip '-'
       }
-      // '<<' with EOL
-      if(!hasLineChar()) {
+      else {
+        // '<<-' with EOL
         throw buildParseCodeException("Invalid heredoc without a tag or unquoted string");
       }
+    }
 
-      boolean isIndent = (nextLineChar() == '-');
-
-      if(isIndent) {
-        if(hasLineChar()) {
-          nextLineChar(); // Skip '-'
-        }
-        else {
-          // '<<-' with EOL
-          throw buildParseCodeException("Invalid heredoc without a tag or unquoted string");
-        }
-      }
-
-      LineOfCode prevLoc = new LineOfCode(lineNumber,lineIndex);
-      final String endTag = Strs.rtrim(readToEndOfLine()).toString();
+    LineOfCode prevLoc = new LineOfCode(lineNumber,lineIndex);
+    final String endTag = Strs.rtrim(readToEndOfLine()).toString();
 
-      // End tag cannot have whitespaces (except for trailing whitespaces until EOL/comment)
-      // - To help prevent the user from fat-fingering "<<-EOS" as "<< -EOS"
-      // - Because a whitespace denotes a new arg "EOS 10 20" ("E O S 10 20" would be impossible)
-      if(!endTag.equals(WHITESPACE_PATTERN.matcher(endTag).replaceAll(""))) {
-        throw ParseCodeException.build(prevLoc
-            ,"Invalid heredoc with whitespaces before or in the tag, or unquoted string",instructionName);
-      }
+    // End tag cannot have whitespaces (except for trailing whitespaces until EOL/comment)
+    // - To help prevent the user from fat-fingering "<<-EOS" as "<< -EOS"
+    // - Because a whitespace denotes a new arg "EOS 10 20" ("E O S 10 20" would be impossible)
+    if(!endTag.equals(WHITESPACE_PATTERN.matcher(endTag).replaceAll(""))) {
+      throw buildParseCodeException(prevLoc
+          ,"Invalid heredoc with whitespaces before or in the tag, or unquoted string",instructionName);
+    }
 
-      // Read the heredoc lines and (possible) indent (<<-)
-      final int endTagChar0 = endTag.codePointAt(0);
-      final int endTagChar0Count = Character.charCount(endTagChar0);
-      List<String> heredocLines = new LinkedList<>();
-      int minIndent = Integer.MAX_VALUE;
+    // Read the heredoc lines and (possible) indent (<<-)
+    final int endTagChar0 = endTag.codePointAt(0);
+    final int endTagChar0Count = Character.charCount(endTagChar0);
+    List<String> heredocLines = new LinkedList<>();
+    int minIndent = Integer.MAX_VALUE;
 
-      while(nextLine() != null) {
-        int indent = 0;
+    while(nextLine() != null) {
+      int indent = 0;
 
-        buffer.setLength(0);
+      buffer.setLength(0);
 
-        // Read to non-whitespace for (possible) indent (<<-)
-        // - Do NOT do "indent += Character.charCount(lineChar)"; indent code after loop uses charCount()
-        for(; hasLineChar(); ++indent) {
-          buffer.appendCodePoint(nextLineChar());
+      // Read to non-whitespace for (possible) indent (<<-)
+      // - Do NOT do "indent += Character.charCount(lineChar)"; indent code after loop uses charCount()
+      for(; hasLineChar(); ++indent) {
+        buffer.appendCodePoint(nextLineChar());
 
-          if(!Character.isWhitespace(lineChar)) {
-            break;
-          }
+        if(!Character.isWhitespace(lineChar)) {
+          break;
         }
+      }
 
-        // Is end tag?
-        if(lineChar == endTagChar0) {
-          boolean isEndTag = false;
+      // Is end tag?
+      if(lineChar == endTagChar0) {
+        boolean isEndTag = false;
 
-          // End tag might be a single char (e.g., "E") with EOL, so don't test "hasLineChar()"
-          for(int i = endTagChar0Count;;) {
-            // Last char of end tag?
-            if(i >= endTag.length()) {
-              if(hasLineChar()) {
-                nextLineChar();
+        // End tag might be a single char (e.g., "E") with EOL, so don't test "hasLineChar()"
+        for(int i = endTagChar0Count;;) {
+          // Last char of end tag?
+          if(i >= endTag.length()) {
+            if(hasLineChar()) {
+              nextLineChar();
 
-                // Is end tag: "EOS 10 20" or "EOS#comment"
-                if(Character.isWhitespace(lineChar) || isCommentChar()) {
-                  isEndTag = true;
-                }
-                // Not end tag: "EOS?"
-                else {
-                  buffer.appendCodePoint(lineChar);
-                }
+              // Is end tag: "EOS 10 20" or "EOS#comment"
+              if(Character.isWhitespace(lineChar) || isCommentChar()) {
+                isEndTag = true;
               }
-              // Is end tag: "EOS" with EOL
+              // Not end tag: "EOS?"
               else {
-                isEndTag = true;
+                buffer.appendCodePoint(lineChar);
               }
-
-              break;
             }
-            if(isEndOfLine()) {
-              break;
+            // Is end tag: "EOS" with EOL
+            else {
+              isEndTag = true;
             }
 
-            int endTagChar = endTag.codePointAt(i);
-
-            buffer.appendCodePoint(nextLineChar());
+            break;
+          }
+          if(isEndOfLine()) {
+            break;
+          }
 
-            // Not end tag: "Everybody!"
-            if(lineChar != endTagChar) {
-              break;
-            }
+          int endTagChar = endTag.codePointAt(i);
 
-            i += Character.charCount(endTagChar);
-          }
+          buffer.appendCodePoint(nextLineChar());
 
-          if(isEndTag) {
+          // Not end tag: "Everybody!"
+          if(lineChar != endTagChar) {
             break;
           }
-        }
 
-        // Read rest of chars to line end
-        while(hasLineChar()) {
-          buffer.appendCodePoint(nextLineChar());
+          i += Character.charCount(endTagChar);
         }
 
-        heredocLines.add(buffer.toString());
-
-        // Update min indent
-        if(isIndent && indent < minIndent) {
-          minIndent = indent;
+        if(isEndTag) {
+          break;
         }
       }
 
-      // Convert heredoc lines to one string
-      isIndent = (isIndent && minIndent > 0 && minIndent != Integer.MAX_VALUE);
-      buffer.setLength(0);
+      // Read rest of chars to line end
+      while(hasLineChar()) {
+        buffer.appendCodePoint(nextLineChar());
+      }
 
-      if(!heredocLines.isEmpty()) {
-        for(Iterator<String> it = heredocLines.iterator();;) {
-          String hdLine = it.next();
+      heredocLines.add(buffer.toString());
 
-          if(isIndent) {
-            int i = 0;
+      // Update min indent
+      if(isIndent && indent < minIndent) {
+        minIndent = indent;
+      }
+    }
 
-            // This is probably unnecessary, but just in case Unicode whitespace can be a surrogate pair
-            for(int indentIndex = 0; indentIndex < minIndent && i < hdLine.length(); ++indentIndex) {
-              int hdChar = hdLine.codePointAt(i);
+    // Convert heredoc lines to one string
+    isIndent = (isIndent && minIndent > 0 && minIndent != Integer.MAX_VALUE);
+    buffer.setLength(0);
 
-              i += Character.charCount(hdChar);
-            }
+    if(!heredocLines.isEmpty()) {
+      for(Iterator<String> it = heredocLines.iterator();;) {
+        String hdLine = it.next();
 
-            while(i < hdLine.length()) {
-              int hdChar = hdLine.codePointAt(i);
+        if(isIndent) {
+          int i = 0;
 
-              buffer.appendCodePoint(hdChar);
-              i += Character.charCount(hdChar);
-            }
-          }
-          else {
-            buffer.append(hdLine);
+          // This is probably unnecessary, but just in case Unicode whitespace can be a surrogate pair
+          for(int indentIndex = 0; indentIndex < minIndent && i < hdLine.length(); ++indentIndex) {
+            int hdChar = hdLine.codePointAt(i);
+
+            i += Character.charCount(hdChar);
           }
 
-          // Don't add last newline (chomp)
-          if(!it.hasNext()) {
-            break;
+          while(i < hdLine.length()) {
+            int hdChar = hdLine.codePointAt(i);
+
+            buffer.appendCodePoint(hdChar);
+            i += Character.charCount(hdChar);
           }
+        }
+        else {
+          buffer.append(hdLine);
+        }
 
-          buffer.append('\n');
+        // Don't add last newline (chomp)
+        if(!it.hasNext()) {
+          break;
         }
-      }
 
-      return buffer;
-    }
-    finally {
-      lock.writeLock().unlock();
+        buffer.append('\n');
+      }
     }
+
+    return buffer;
   }
 
   public StringBuilder readQuote(int endQuote) throws IOException {
-    lock.writeLock().lock();
-
-    try {
-      boolean hasEndQuote = false;
+    boolean hasEndQuote = false;
 
-      buffer.setLength(0);
+    buffer.setLength(0);
 
-      while(true) {
-        while(hasLineChar()) {
-          nextLineChar();
+    while(true) {
+      while(hasLineChar()) {
+        nextLineChar();
 
-          if(lineChar == endQuote) {
-            hasEndQuote = true;
+        if(lineChar == endQuote) {
+          hasEndQuote = true;
 
-            break;
-          }
+          break;
+        }
 
-          // Escaped char?
-          if(lineChar == escapeChar) {
-            if(hasLineChar()) {
-              nextLineChar();
+        // Escaped char?
+        if(lineChar == escapeChar) {
+          if(hasLineChar()) {
+            nextLineChar();
 
-              // Escaped end quote (e.g., \") or escaped escape (e.g., \\)
-              if(lineChar == endQuote || lineChar == escapeChar) {
-                buffer.appendCodePoint(lineChar);
-              }
-              else {
-                // To make it easier for non-programmers, don't output lineChar only.
-                //   For example, "\a" will output that exactly (with the backslash).
-                buffer.appendCodePoint(escapeChar).appendCodePoint(lineChar);
-              }
+            // Escaped end quote (e.g., \") or escaped escape (e.g., \\)
+            if(lineChar == endQuote || lineChar == escapeChar) {
+              buffer.appendCodePoint(lineChar);
             }
-            // EOL
             else {
-              // To make it easier for non-programmers, just output as is with no error.
-              //   For example, "\" with EOL will output that exactly (a backslash).
-              buffer.appendCodePoint(lineChar);
+              // To make it easier for non-programmers, don't output lineChar only.
+              //   For example, "\a" will output that exactly (with the backslash).
+              buffer.appendCodePoint(escapeChar).appendCodePoint(lineChar);
             }
           }
+          // EOL
           else {
+            // To make it easier for non-programmers, just output as is with no error.
+            //   For example, "\" with EOL will output that exactly (a backslash).
             buffer.appendCodePoint(lineChar);
           }
         }
-
-        if(hasEndQuote || nextLine() == null) {
-          break;
+        else {
+          buffer.appendCodePoint(lineChar);
         }
+      }
 
-        buffer.append('\n');
+      if(hasEndQuote || nextLine() == null) {
+        break;
       }
 
-      return buffer;
-    }
-    finally {
-      lock.writeLock().unlock();
+      buffer.append('\n');
     }
+
+    return buffer;
   }
 
   public StringBuilder readSpecialQuote() throws IOException,ParseCodeException {
-    lock.writeLock().lock();
-
-    try {
-      // '%' with EOL or '% ...'
-      if(!hasLineChar() || Character.isWhitespace(nextLineChar())) {
-        throw buildParseCodeException(
-            "Invalid special quote '%' without a tag, with spaces, or unquoted string");
-      }
-
-      switch(lineChar) {
-        case '(': return readQuote(')');
-        case '<': return readQuote('>');
-        case '[': return readQuote(']');
-        case '{': return readQuote('}');
-      }
-
-      return readQuote(lineChar);
+    // '%' with EOL or '% ...'
+    if(!hasLineChar() || Character.isWhitespace(nextLineChar())) {
+      throw buildParseCodeException(
+          "Invalid special quote '%' without a tag, with spaces, or unquoted string");
     }
-    finally {
-      lock.writeLock().unlock();
+
+    switch(lineChar) {
+      case '(': return readQuote(')');
+      case '<': return readQuote('>');
+      case '[': return readQuote(']');
+      case '{': return readQuote('}');
     }
+
+    return readQuote(lineChar);
   }
 
   public StringBuilder readToEndOfLine() {
-    lock.writeLock().lock();
+    buffer.setLength(0);
 
-    try {
-      buffer.setLength(0);
-
-      if(lineIndex > 0) {
-        if(isCommentChar()) {
-          return buffer;
-        }
-
-        buffer.appendCodePoint(lineChar);
+    if(lineIndex > 0) {
+      if(isCommentChar()) {
+        return buffer;
       }
 
-      while(hasLineChar()) {
-        nextLineChar();
+      buffer.appendCodePoint(lineChar);
+    }
 
-        if(isCommentChar()) {
-          break;
-        }
+    while(hasLineChar()) {
+      nextLineChar();
 
-        buffer.appendCodePoint(lineChar);
+      if(isCommentChar()) {
+        break;
       }
 
-      return buffer;
-    }
-    finally {
-      lock.writeLock().unlock();
+      buffer.appendCodePoint(lineChar);
     }
+
+    return buffer;
   }
 
   public StringBuilder readToWhitespace() {
-    lock.writeLock().lock();
-
-    try {
-      buffer.setLength(0);
+    buffer.setLength(0);
 
-      if(lineIndex > 0) {
-        if(isCommentChar()) {
-          return buffer;
-        }
-
-        buffer.appendCodePoint(lineChar);
+    if(lineIndex > 0) {
+      if(isCommentChar()) {
+        return buffer;
       }
 
-      while(hasLineChar()) {
-        nextLineChar();
+      buffer.appendCodePoint(lineChar);
+    }
 
-        if(Character.isWhitespace(lineChar) || isCommentChar()) {
-          break;
-        }
+    while(hasLineChar()) {
+      nextLineChar();
 
-        buffer.appendCodePoint(lineChar);
+      if(Character.isWhitespace(lineChar) || isCommentChar()) {
+        break;
       }
 
-      return buffer;
-    }
-    finally {
-      lock.writeLock().unlock();
+      buffer.appendCodePoint(lineChar);
     }
+
+    return buffer;
   }
 
   /**
    * @return true if found a non-whitespace char, else false
    */
   public boolean seekToNonWhitespace() {
-    lock.writeLock().lock();
-
-    try {
-      while(hasLineChar()) {
-        if(!Character.isWhitespace(nextLineChar())) {
-          if(isCommentChar()) {
-            return false;
-          }
-
-          return true;
+    while(hasLineChar()) {
+      if(!Character.isWhitespace(nextLineChar())) {
+        if(isCommentChar()) {
+          return false;
         }
-      }
 
-      return false;
-    }
-    finally {
-      lock.writeLock().unlock();
+        return true;
+      }
     }
+
+    return false;
   }
 
   public void setBuddy(BotBuddy buddy) {
@@ -930,6 +1211,17 @@ public class BotBuddyCode implements Closeable {
     }
   }
 
+  public void setLightErrors(boolean isLightErrors) {
+    lock.writeLock().lock();
+
+    try {
+      this.isLightErrors = isLightErrors;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
   public void setExecutors(Executors executors) {
     lock.writeLock().lock();
 
@@ -975,34 +1267,34 @@ public class BotBuddyCode implements Closeable {
   }
 
   public boolean isCommentChar() {
-    lock.writeLock().lock();
-
-    try {
-      // Ignore comment
-      if(lineChar == commentChar) {
-        lineIndex = line.length(); // Go to end
-
-        return true;
-      }
+    // Ignore comment
+    if(lineChar == commentChar) {
+      lineIndex = line.length(); // Go to end
 
-      return false;
-    }
-    finally {
-      lock.writeLock().unlock();
+      return true;
     }
+
+    return false;
   }
 
-  public boolean isEndOfLine() {
+  /**
+   * @see Builder#lightErrors(boolean)
+   */
+  public boolean isLightErrors() {
     lock.readLock().lock();
 
     try {
-      return lineIndex >= line.length();
+      return isLightErrors;
     }
     finally {
       lock.readLock().unlock();
     }
   }
 
+  public boolean isEndOfLine() {
+    return lineIndex >= line.length();
+  }
+
   public int getEscapeChar() {
     lock.readLock().lock();
 
@@ -1048,21 +1340,14 @@ public class BotBuddyCode implements Closeable {
   }
 
   public boolean hasLineChar() {
-    lock.readLock().lock();
-
-    try {
-      return lineIndex < line.length();
-    }
-    finally {
-      lock.readLock().unlock();
-    }
+    return lineIndex < line.length();
   }
 
   public boolean isReady() throws IOException {
     lock.readLock().lock();
 
     try {
-      return input.ready();
+      return (mappedInput != null) ? mappedInput.isReady() : input.ready();
     }
     finally {
       lock.readLock().unlock();
@@ -1073,14 +1358,55 @@ public class BotBuddyCode implements Closeable {
    * @author Jonathan Bradley Whited
    */
   public static class Arg {
+    /**
+     * <pre>
+     * True if a quoted string, special quote, or heredoc.
+     * Only an unquoted arg can be a variable (e.g., $x), so that a quoted "$5.00" is left as is.
+     * </pre>
+     */
+    public final boolean isQuoted;
+
     public LineOfCode loc;
-    public String value;
+    public final String value;
+
+    /**
+     * <pre>
+     * {@link #value} converted on construction, so that it's not parsed again on every execution.
+     * {@link #value} is final, so that these can't become stale.
+     * Parsing stops at the first char that isn't a digit, so it's cheap even for a large text (e.g., a heredoc).
+     *
+     * {@link #intValue} is only valid if {@link #isInt} is true.
+     * </pre>
+     */
+    public final int intValue;
+    public final boolean isInt;
+
+    /**
+     * <pre>
+     * {@link #getBool()}, parsed on first use, as it copies the value (e.g., a large heredoc or CSV cell).
+     * 0 if not parsed yet, else 1 for false or 2 for true.
+     * It's always the same once parsed, so a race between threads parsing it is harmless.
+     * </pre>
+     */
+    protected byte boolState = 0;
 
     public Arg(int lineNumber,int lineColumn,String value) {
       this(new LineOfCode(lineNumber,lineColumn),value);
     }
 
+    public Arg(int lineNumber,int lineColumn,int value) {
+      this(new LineOfCode(lineNumber,lineColumn),value);
+    }
+
+    public Arg(LineOfCode loc,int value) {
+      this(loc,Integer.toString(value));
+    }
+
     public Arg(LineOfCode loc,String value) {
+      this(loc,value,false);
+    }
+
+    public Arg(LineOfCode loc,String value,boolean isQuoted) {
       if(loc == null) {
         throw new IllegalArgumentException("LineOfCode cannot be null");
       }
@@ -1088,8 +1414,39 @@ public class BotBuddyCode implements Closeable {
         throw new IllegalArgumentException("Value cannot be null");
       }
 
+      this.isQuoted = isQuoted;
       this.loc = loc;
       this.value = value;
+
+      long longValue = ConstantPool.parseInt(value);
+
+      this.intValue = (int)longValue;
+      this.isInt = (longValue != ConstantPool.NOT_INT);
+    }
+
+    /**
+     * @see Bools#parse(String)
+     */
+    public boolean getBool() {
+      if(boolState == 0) {
+        boolState = Bools.parse(value) ? (byte)2 : (byte)1;
+      }
+
+      return boolState == 2;
+    }
+
+    /**
+     * @return true if an unquoted "$name" (see {@link #getVariableName()})
+     */
+    public boolean isVariable() {
+      return !isQuoted && value.length() > 1 && value.charAt(0) == VARIABLE_CHAR;
+    }
+
+    /**
+     * @return the name of the variable without the '$' if {@link #isVariable()}; else, the value as is
+     */
+    public String getVariableName() {
+      return (value.length() > 1 && value.charAt(0) == VARIABLE_CHAR) ? value.substring(1) : value;
     }
 
     @Override
@@ -1107,11 +1464,15 @@ public class BotBuddyCode implements Closeable {
    */
   public static class Builder {
     protected BotBuddy buddy = null;
+    protected Path cacheDir = null;
     protected Charset charset = StandardCharsets.UTF_8;
     protected int commentChar = DEFAULT_COMMENT_CHAR;
     protected int escapeChar = DEFAULT_ESCAPE_CHAR;
     protected Executors executors = null;
+    protected List<String> fields = Collections.emptyList();
     protected BufferedReader input = null;
+    protected boolean isLightErrors = false;
+    protected boolean isMapped = false;
     protected Path path = null;
 
     protected Builder() {
@@ -1151,12 +1512,44 @@ public class BotBuddyCode implements Closeable {
       return new BotBuddyCode(this);
     }
 
+    /**
+     * <pre>
+     * Compiles the input into a {@link Program} without building a default {@link BotBuddy},
+     *   so a {@link java.awt.Robot} is not needed (e.g., on a headless server).
+     *
+     * The input is closed afterward.
+     * </pre>
+     */
+    public Program compile() throws IOException,ParseCodeException {
+      try(BotBuddyCode bbc = new BotBuddyCode(this,buddy)) {
+        return bbc.compile();
+      }
+    }
+
     public Builder buddy(BotBuddy buddy) {
       this.buddy = buddy;
 
       return this;
     }
 
+    /**
+     * <pre>
+     * If set and {@link #path(Path)} is used (and not {@link #input(BufferedReader)}),
+     *   the compiled {@link Program} is stored in {@code cacheDir} and loaded from it on the next run
+     *   of the same file, instead of parsing it again. A dry run always parses.
+     *
+     * If the file, the charset, the comment/escape char, or the IDs of the executors change,
+     *   then a new entry is made.
+     * </pre>
+     *
+     * @see ProgramCache
+     */
+    public Builder cacheDir(Path cacheDir) {
+      this.cacheDir = cacheDir;
+
+      return this;
+    }
+
     public Builder charset(Charset charset) {
       this.charset = charset;
 
@@ -1181,6 +1574,29 @@ public class BotBuddyCode implements Closeable {
       return this;
     }
 
+    /**
+     * <pre>
+     * The names of the variables that are set outside of the code, before each execution,
+     *   such as the fields (columns) of each row of a CSV file (e.g., the header "Hanzi,English").
+     *
+     * They're not reported as never set when compiling, and they're given the first slots,
+     *   in the same order. Duplicate names are ignored.
+     * </pre>
+     *
+     * @see Program#executeEachRow(BotBuddy,CSVReader)
+     */
+    public Builder fields(List<String> fields) {
+      this.fields = (fields != null)
+          ? Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(fields)))
+          : Collections.<String>emptyList();
+
+      return this;
+    }
+
+    public Builder fields(String... fields) {
+      return fields(Arrays.asList(fields));
+    }
+
     public Builder input() {
       // Because input(null) is ambiguous
 
@@ -1207,6 +1623,39 @@ public class BotBuddyCode implements Closeable {
       return this;
     }
 
+    /**
+     * <pre>
+     * If true, errors in the code found when compiling (parsing &amp; linking) are light exceptions,
+     *   which don't fill in a stack trace and don't format their message until needed.
+     *
+     * Use this when validating many scripts, where most errors are collected and not printed.
+     * </pre>
+     *
+     * @see ParseCodeException#buildLight(LineOfCode,String,String)
+     */
+    public Builder lightErrors(boolean isLightErrors) {
+      this.isLightErrors = isLightErrors;
+
+      return this;
+    }
+
+    /**
+     * <pre>
+     * If true and {@link #path(Path)} is used (and not {@link #input(BufferedReader)}),
+     *   the file is memory-mapped and decoded incrementally, instead of reading a new String for each line.
+     *
+     * Use this for very large (e.g., generated) scripts, so that the heap used while parsing
+     *   doesn't grow with the size of the file.
+     * </pre>
+     *
+     * @see MappedLineReader
+     */
+    public Builder mapped(boolean isMapped) {
+      this.isMapped = isMapped;
+
+      return this;
+    }
+
     public Builder path(Path path) {
       this.path = path;
 
@@ -1222,52 +1671,493 @@ public class BotBuddyCode implements Closeable {
   }
 
   /**
+   * <pre>
+   * <b>Checkpoint</b> is where an execution of a {@link Program} was interrupted by {@link UserIsActiveException}
+   *   (e.g., by Safe Mode), so that it can be resumed from there, instead of from the beginning.
+   *
+   * It's only filled in while the exception is thrown, so it costs nothing while executing normally.
+   * It has a frame for each block being executed (main &amp; each user method called, in order),
+   *   with its instruction that was in-flight, the counters of its repeats, and its open batches,
+   *   and the variables at the time. The in-flight instruction is executed again when resuming.
+   *
+   * The open batches are ended when interrupted (so the buddy is not left batching)
+   *   and are begun again when resuming.
+   *
+   * For a CSV, it also has the row (see {@link Program#executeEachRow(BotBuddy,CSVReader,Checkpoint)}).
+   *
+   * Example:
+   *   Checkpoint checkpoint = Checkpoint.load(file); // Empty if no file
+   *
+   *   try {
+   *     program.execute(buddy,checkpoint);
+   *     Files.deleteIfExists(file);
+   *   }
+   *   catch(UserIsActiveException ex) {
+   *     checkpoint.store(file);
+   *   }
+   * </pre>
+   *
    * @author Jonathan Bradley Whited
    */
-  public static class DefaultExecutors {
-    public static final Executors defaultExecutors = new Executors();
-
-    static {
-      defaultExecutors.addBase();
-    }
-  }
-
-  /**
-   * @author Jonathan Bradley Whited
-   */
-  @FunctionalInterface
-  public static interface Executor {
-    public abstract void execute(BotBuddy buddy,Instruction inst) throws ParseCodeException;
-  }
+  public static class Checkpoint {
+    public static final int MAGIC = 0x42424350; // "BBCP"
+    public static final int VERSION = 2;
 
-  /**
-   * @author Jonathan Bradley Whited
-   */
-  public static class Executors {
     /**
-     * <pre>
-     * This MUST match the number of base entries in #addBase() for testing,
-     *   because a JUnit test will fail if an entry has been overwritten accidentally.
-     * </pre>
+     * @return the Checkpoint in {@code file}, or an empty one if {@code file} does not exist
+     * @throws IOException if {@code file} is not a valid checkpoint
      */
-    public static final int BASE_COUNT = 71;
+    public static Checkpoint load(Path file) throws IOException {
+      Checkpoint checkpoint = new Checkpoint();
 
-    protected Map<String,Executor> entries;
+      if(Files.isRegularFile(file)) {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+          checkpoint.read(in);
+        }
+      }
 
-    public Executors() {
-      // Default loadFactor is 0.75, so make it so we have enough on init, and a little extra
-      this((int)Math.ceil(BASE_COUNT / 0.74));
+      return checkpoint;
     }
 
-    /**
-     * <pre>
-     * This does NOT copy the entries, but uses {@code entries} directly as is.
+    protected static Arg readArg(DataInput in) throws IOException {
+      if(!in.readBoolean()) {
+        return null;
+      }
+
+      LineOfCode loc = new LineOfCode(in.readInt(),in.readInt());
+      byte[] bytes = new byte[in.readInt()];
+
+      in.readFully(bytes);
+
+      return new Arg(loc,new String(bytes,StandardCharsets.UTF_8),in.readBoolean());
+    }
+
+    protected static Arg[] readArgs(DataInput in) throws IOException {
+      final int length = in.readInt();
+
+      if(length < 0) {
+        return null;
+      }
+
+      Arg[] args = new Arg[length];
+
+      for(int i = 0; i < length; ++i) {
+        args[i] = readArg(in);
+      }
+
+      return args;
+    }
+
+    protected static void writeArg(DataOutput out,Arg arg) throws IOException {
+      out.writeBoolean(arg != null);
+
+      if(arg != null) {
+        byte[] bytes = arg.value.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(arg.loc.getNumber());
+        out.writeInt(arg.loc.getColumn());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeBoolean(arg.isQuoted);
+      }
+    }
+
+    protected static void writeArgs(DataOutput out,Arg[] args) throws IOException {
+      if(args == null) {
+        out.writeInt(-1);
+
+        return;
+      }
+
+      out.writeInt(args.length);
+
+      for(Arg arg: args) {
+        writeArg(out,arg);
+      }
+    }
+
+    protected long fingerprint = 0L;
+
+    /**
+     * <pre>
+     * Outermost (main) first.
+     * </pre>
+     */
+    protected final List<Frame> frames = new ArrayList<>();
+
+    protected boolean isCapturing = false;
+    protected int resumeIndex = 0;
+    protected long rowNumber = 0L;
+    protected Arg[] vars = null;
+
+    /**
+     * <pre>
+     * Called by each block being executed, from the innermost to the outermost,
+     *   while the exception is thrown.
+     * </pre>
+     */
+    protected void capture(int index,int[] counters,Arg[] vars,int batchDepth) {
+      if(!isCapturing) {
+        clear();
+
+        this.isCapturing = true;
+        this.vars = vars.clone(); // Before the params of calls are restored
+      }
+
+      Frame frame = new Frame(index,(counters != null) ? counters.clone() : null);
+
+      frame.batchDepth = batchDepth;
+      frames.add(0,frame);
+    }
+
+    /**
+     * <pre>
+     * Called by a call (that wasn't inlined), after its method's frame was captured.
+     * </pre>
+     */
+    protected void captureCall(Arg[] prevArgs) {
+      if(isCapturing && !frames.isEmpty()) {
+        frames.get(0).prevArgs = prevArgs.clone();
+      }
+    }
+
+    public void clear() {
+      fingerprint = 0L;
+      frames.clear();
+      isCapturing = false;
+      resumeIndex = 0;
+      rowNumber = 0L;
+      vars = null;
+    }
+
+    /**
+     * @return the frame to resume the next block from, or null if not resuming (anymore)
+     */
+    protected Frame nextFrame() {
+      return (resumeIndex < frames.size()) ? frames.get(resumeIndex++) : null;
+    }
+
+    protected Frame peekFrame() {
+      return (resumeIndex < frames.size()) ? frames.get(resumeIndex) : null;
+    }
+
+    /**
+     * @throws IOException if not a valid checkpoint (e.g., an old version)
+     */
+    public void read(DataInput in) throws IOException {
+      if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Invalid checkpoint or version");
+      }
+
+      clear();
+
+      fingerprint = in.readLong();
+      rowNumber = in.readLong();
+      vars = readArgs(in);
+
+      final int frameCount = in.readInt();
+
+      for(int i = 0; i < frameCount; ++i) {
+        Frame frame = new Frame(in.readInt(),null);
+
+        frame.batchDepth = in.readInt();
+
+        final int counterCount = in.readInt();
+
+        if(counterCount >= 0) {
+          frame.counters = new int[counterCount];
+
+          for(int j = 0; j < counterCount; ++j) {
+            frame.counters[j] = in.readInt();
+          }
+        }
+
+        frame.prevArgs = readArgs(in);
+        frames.add(frame);
+      }
+    }
+
+    /**
+     * <pre>
+     * Writes to a temp file first and then moves it, so that a partial file is never loaded.
+     * </pre>
+     */
+    public void store(Path file) throws IOException {
+      Path dir = file.toAbsolutePath().getParent();
+      Path tempFile = Files.createTempFile(dir,file.getFileName().toString(),".tmp");
+
+      try {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(tempFile)))) {
+          write(out);
+        }
+
+        Files.move(tempFile,file,StandardCopyOption.REPLACE_EXISTING);
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+    }
+
+    public void write(DataOutput out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(fingerprint);
+      out.writeLong(rowNumber);
+      writeArgs(out,vars);
+      out.writeInt(frames.size());
+
+      for(Frame frame: frames) {
+        out.writeInt(frame.index);
+        out.writeInt(frame.batchDepth);
+
+        if(frame.counters == null) {
+          out.writeInt(-1);
+        }
+        else {
+          out.writeInt(frame.counters.length);
+
+          for(int counter: frame.counters) {
+            out.writeInt(counter);
+          }
+        }
+
+        writeArgs(out,frame.prevArgs);
+      }
+    }
+
+    public boolean isEmpty() {
+      return frames.isEmpty();
+    }
+
+    /**
+     * @return the in-flight instruction of the innermost block, as an index into the Program's code,
+     *         or -1 if empty
+     */
+    public int getIndex() {
+      return frames.isEmpty() ? -1 : frames.get(frames.size() - 1).index;
+    }
+
+    /**
+     * @return the number of the CSV row (1-based), or 0 if not executed for each row
+     */
+    public long getRowNumber() {
+      return rowNumber;
+    }
+
+    /**
+     * <pre>
+     * Where a block was interrupted.
+     * </pre>
+     *
+     * @author Jonathan Bradley Whited
+     */
+    protected static final class Frame {
+      public int index;
+      public int[] counters;
+
+      /**
+       * The number of batches of the block that were open, to begin them again when resuming.
+       */
+      public int batchDepth = 0;
+
+      /**
+       * For a user method, the values of its params before it was called, to restore them after.
+       */
+      public Arg[] prevArgs = null;
+
+      public Frame(int index,int[] counters) {
+        this.index = index;
+        this.counters = counters;
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * A condition of {@code if} &amp; {@code while} (e.g., "while pixel 10 20 0xFFFFFF").
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   * @see Executors#putCondition(String,Condition)
+   */
+  @FunctionalInterface
+  public static interface Condition {
+    /**
+     * @param index the index in {@code inst}'s args of the condition's first arg (after its name)
+     */
+    public abstract boolean test(BotBuddy buddy,Instruction inst,int index) throws ParseCodeException;
+  }
+
+  /**
+   * <pre>
+   * <b>ConstantPool</b> holds the literal values of the args of compiled code.
+   *
+   * Strings are deduplicated, so that the same literal (e.g., a coordinate or a heredoc used many times)
+   *   is only stored once. Each {@link Arg} also stores its int and boolean conversions,
+   *   so that {@link Instruction#getInt(int)}, {@link Instruction#getInts()}, and {@link Instruction#getBool(int)}
+   *   don't parse anything (or box) when executing.
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  public static class ConstantPool {
+    /**
+     * Returned by {@link #parseInt(CharSequence)} if not an int; outside of the range of an int.
+     */
+    public static final long NOT_INT = Long.MIN_VALUE;
+
+    /**
+     * <pre>
+     * Parses the same as {@link Integer#parseInt(String)}, but without throwing
+     *   {@link NumberFormatException}, which is expensive when most args are not ints.
+     * </pre>
+     *
+     * @return the int value, or {@link #NOT_INT} if not an int
+     */
+    public static long parseInt(CharSequence str) {
+      final int len = str.length();
+
+      if(len < 1) {
+        return NOT_INT;
+      }
+
+      int i = 0;
+      boolean isNegative = false;
+      char c = str.charAt(0);
+
+      if(c == '-' || c == '+') {
+        if(len < 2) {
+          return NOT_INT;
+        }
+
+        isNegative = (c == '-');
+        ++i;
+      }
+
+      long result = 0;
+
+      for(; i < len; ++i) {
+        int digit = Character.digit(str.charAt(i),10);
+
+        if(digit < 0) {
+          return NOT_INT;
+        }
+
+        result = (result * 10) + digit;
+
+        if(result > (long)Integer.MAX_VALUE + 1) {
+          return NOT_INT;
+        }
+      }
+
+      if(isNegative) {
+        result = -result;
+      }
+      else if(result > Integer.MAX_VALUE) {
+        return NOT_INT;
+      }
+
+      return result;
+    }
+
+    protected final Map<String,String> strs = new HashMap<>();
+
+    /**
+     * @return the pooled String equal to {@code str}, which is {@code str} if new
+     */
+    public String intern(String str) {
+      String pooledStr = strs.putIfAbsent(str,str);
+
+      return (pooledStr != null) ? pooledStr : str;
+    }
+
+    public int getSize() {
+      return strs.size();
+    }
+  }
+
+  /**
+   * @author Jonathan Bradley Whited
+   */
+  public static class DefaultExecutors {
+    public static final Executors defaultExecutors = new Executors();
+
+    static {
+      defaultExecutors.addBase();
+    }
+  }
+
+  /**
+   * @author Jonathan Bradley Whited
+   */
+  @FunctionalInterface
+  public static interface Executor {
+    public abstract void execute(BotBuddy buddy,Instruction inst) throws ParseCodeException;
+  }
+
+  /**
+   * @author Jonathan Bradley Whited
+   */
+  public static class Executors {
+    /**
+     * <pre>
+     * This MUST match the number of base entries in #addBase() for testing,
+     *   because a JUnit test will fail if an entry has been overwritten accidentally.
+     * </pre>
+     */
+    public static final int BASE_COUNT = 90;
+
+    /**
+     * <pre>
+     * The conditions of {@code if} &amp; {@code while}, by ID.
+     * </pre>
+     */
+    protected Map<String,Condition> conditions = new HashMap<>();
+
+    /**
+     * <pre>
+     * The number of args of each condition (after its name), by ID, which is checked when linking.
+     * A condition without one (see {@link #putCondition(String,Condition)}) is not checked.
+     * </pre>
+     */
+    protected Map<String,Integer> conditionArgCounts = new HashMap<>();
+
+    protected Map<String,Executor> entries;
+
+    /**
+     * <pre>
+     * The key layouts loaded from profile files by {@code set_key_layout}, by absolute path,
+     *   so that a script that sets one in a loop (or for each row) only loads it once.
+     * </pre>
+     */
+    protected Map<Path,KeyLayout> keyLayouts = new ConcurrentHashMap<>();
+
+    /**
+     * <pre>
+     * The same executors as {@link #entries}, but indexed by {@link Opcodes opcode}.
+     * </pre>
+     */
+    protected Executor[] table = new Executor[BASE_COUNT];
+
+    public Executors() {
+      // Default loadFactor is 0.75, so make it so we have enough on init, and a little extra
+      this((int)Math.ceil(BASE_COUNT / 0.74));
+    }
+
+    /**
+     * <pre>
+     * This does NOT copy the entries, but uses {@code entries} directly as is.
      * </pre>
      *
      * @param entries the entries to be used directly (not copied)
      */
     public Executors(Map<String,Executor> entries) {
       this.entries = entries;
+
+      for(Map.Entry<String,Executor> entry: entries.entrySet()) {
+        putInTable(entry.getKey(),entry.getValue());
+      }
     }
 
     public Executors(int initCapacity) {
@@ -1350,6 +2240,12 @@ public class BotBuddyCode implements Closeable {
           default: buddy.enter(inst.getInt(0),inst.getInt(1),inst.getStr(2)); break;
         }
       });
+      put("entertext",(buddy,inst) -> {
+        switch(inst.args.length) {
+          case 3:  buddy.enterText(inst.getInt(0),inst.getInt(1),inst.getStr(2)); break;
+          default: buddy.enterText(inst.getStr(0)); break;
+        }
+      });
       put("leftclick",(buddy,inst) -> {
         switch(inst.args.length) {
           case 0:  buddy.leftClick(); break;
@@ -1371,6 +2267,12 @@ public class BotBuddyCode implements Closeable {
           default: buddy.paste(inst.getInt(0),inst.getInt(1),inst.getStr(2)); break;
         }
       });
+      put("pastechunks",new Overloads()
+          .on("int int str",(buddy,inst) -> buddy.pasteChunks(inst.getInt(0),inst.getInt(1),inst.getStr(2)))
+          .on("str int int int",(buddy,inst) -> buddy.pasteChunks(inst.getStr(0),inst.getInt(1),
+              new Point(inst.getInt(2),inst.getInt(3))))
+          .on("str int",(buddy,inst) -> buddy.pasteChunks(inst.getStr(0),inst.getInt(1),null))
+          .on("str",(buddy,inst) -> buddy.pasteChunks(inst.getStr(0))));
       put("pressbutton",(buddy,inst) -> {
         switch(inst.args.length) {
           case 1:  buddy.pressButton(inst.getInt(0)); break;
@@ -1450,27 +2352,13 @@ public class BotBuddyCode implements Closeable {
       put("rollbuttons",(buddy,inst) -> buddy.rollButtons(inst.getInts()));
       put("rollkeys",(buddy,inst) -> buddy.rollKeys(inst.getInts()));
       put("stash",(buddy,inst) -> buddy.stash());
-      put("type",(buddy,inst) -> {
-        switch(inst.args.length) {
+      put("sync",(buddy,inst) -> buddy.sync());
+      put("type",new Overloads()
           // @since 0.3.5
-          case 3:
-            try {
-              buddy.type(inst.getInt(0),inst.getInt(1),inst.getInt(2));
-            }
-            catch(ParseCodeException ex) {
-              buddy.type(inst.getInt(0),inst.getInt(1),inst.getStr(2));
-            }
-            break;
-          default:
-            try {
-              buddy.type(inst.getInt(0));
-            }
-            catch(ParseCodeException ex) {
-              buddy.type(inst.getStr(0));
-            }
-            break;
-        }
-      });
+          .on("int int int",(buddy,inst) -> buddy.type(inst.getInt(0),inst.getInt(1),inst.getInt(2)))
+          .on("int int str",(buddy,inst) -> buddy.type(inst.getInt(0),inst.getInt(1),inst.getStr(2)))
+          .on("int ...",(buddy,inst) -> buddy.type(inst.getInt(0)))
+          .on("str ...",(buddy,inst) -> buddy.type(inst.getStr(0))));
       put("types",(buddy,inst) -> buddy.types(inst.getInts()));
       // @since 0.3.5
       put("typeunsurely",(buddy,inst) -> {
@@ -1497,38 +2385,78 @@ public class BotBuddyCode implements Closeable {
       });
 
       // Setters
-      put("setautodelay",(buddy,inst) -> {
-        String msg = "setAutoDelay: ";
-
-        try {
-          buddy.setAutoDelay(inst.getInt(0));
-          msg += buddy.getAutoDelay();
-        }
-        catch(ParseCodeException ex) {
-          buddy.setAutoDelay(inst.getBool(0));
-          msg += buddy.isAutoDelay();
-        }
-
-        System.out.println(msg);
-      });
+      put("setautodelay",new Overloads()
+          .on("int ...",(buddy,inst) -> {
+            buddy.setAutoDelay(inst.getInt(0));
+            System.out.println("setAutoDelay: " + buddy.getAutoDelay());
+          })
+          .on("bool ...",(buddy,inst) -> {
+            buddy.setAutoDelay(inst.getBool(0));
+            System.out.println("setAutoDelay: " + buddy.isAutoDelay());
+          }));
       put("setautowaitforidle",(buddy,inst) -> {
         buddy.setAutoWaitForIdle(inst.getBool(0));
         System.out.println("setAutoWaitForIdle: " + buddy.isAutoWaitForIdle());
       });
+      put("setentertextmode",(buddy,inst) -> {
+        buddy.setEnterTextMode(inst.getBool(0));
+        System.out.println("setEnterTextMode: " + buddy.isEnterTextMode());
+      });
+      put("setfasttypemode",(buddy,inst) -> {
+        buddy.setFastTypeMode(inst.getBool(0));
+        System.out.println("setFastTypeMode: " + buddy.isFastTypeMode());
+      });
       put("setfastdelay",(buddy,inst) -> {
         buddy.setFastDelay(inst.getInt(0));
         System.out.println("setFastDelay: " + buddy.getFastDelay());
       });
-      put("setlongdelay",(buddy,inst) -> {
-        buddy.setLongDelay(inst.getInt(0));
-        System.out.println("setLongDelay: " + buddy.getLongDelay());
-      });
+      put("setkeylayout",(buddy,inst) -> {
+        // A built-in layout (e.g., "UK"), else a profile file
+        String name = inst.getStr(0);
+        KeyLayout layout = KeyCodes.getLayout(name);
+
+        if(layout == null) {
+          try {
+            layout = loadKeyLayout(Paths.get(name));
+          }
+          catch(IOException ex) {
+            throw inst.buildParseCodeException("Failed to load key layout: " + name,ex);
+          }
+        }
+
+        buddy.setKeyLayout(layout);
+        System.out.println("setKeyLayout: " + buddy.getKeyLayout());
+      });
+      put("setlongdelay",(buddy,inst) -> {
+        buddy.setLongDelay(inst.getInt(0));
+        System.out.println("setLongDelay: " + buddy.getLongDelay());
+      });
+      put("setmonitorrate",(buddy,inst) -> {
+        buddy.setMonitorRate(inst.getInt(0));
+        System.out.println("setMonitorRate: " + buddy.getMonitorRate());
+      });
       put("setosfamily",(buddy,inst) -> {
         OSFamily osf = OSFamily.guessFromName(inst.getStr(0));
 
         buddy.setOSFamily(osf);
         System.out.println("setOSFamily: " + buddy.getOSFamily());
       });
+      put("setpastechunksize",(buddy,inst) -> {
+        buddy.setPasteChunkSize(inst.getInt(0));
+        System.out.println("setPasteChunkSize: " + buddy.getPasteChunkSize());
+      });
+      put("setpausedelay",(buddy,inst) -> {
+        buddy.setPauseDelay(inst.getInt(0));
+        System.out.println("setPauseDelay: " + buddy.getPauseDelay());
+      });
+      put("setpausemode",(buddy,inst) -> {
+        buddy.setPauseMode(inst.getBool(0));
+        System.out.println("setPauseMode: " + buddy.isPauseMode());
+      });
+      put("setprecisemode",(buddy,inst) -> {
+        buddy.setPreciseMode(inst.getBool(0));
+        System.out.println("setPreciseMode: " + buddy.isPreciseMode());
+      });
       put("setreleasemode",(buddy,inst) -> {
         buddy.setReleaseMode(inst.getBool(0));
         System.out.println("setReleaseMode: " + buddy.isReleaseMode());
@@ -1543,11 +2471,16 @@ public class BotBuddyCode implements Closeable {
       put("isautodelay",(buddy,inst) -> System.out.println(buddy.isAutoDelay()));
       put("isautowaitforidle",(buddy,inst) -> System.out.println(buddy.isAutoWaitForIdle()));
       put("getdefaultbutton",(buddy,inst) -> System.out.println(buddy.getDefaultButton()));
+      put("isentertextmode",(buddy,inst) -> System.out.println(buddy.isEnterTextMode()));
       put("getfastdelay",(buddy,inst) -> System.out.println(buddy.getFastDelay()));
+      put("isfasttypemode",(buddy,inst) -> System.out.println(buddy.isFastTypeMode()));
+      put("getkeylayout",(buddy,inst) -> System.out.println(buddy.getKeyLayout()));
       put("getleftbutton",(buddy,inst) -> System.out.println(buddy.getLeftButton()));
       put("getlongdelay",(buddy,inst) -> System.out.println(buddy.getLongDelay()));
       put("getmiddlebutton",(buddy,inst) -> System.out.println(buddy.getMiddleButton()));
+      put("getmonitorrate",(buddy,inst) -> System.out.println(buddy.getMonitorRate()));
       put("getosfamily",(buddy,inst) -> System.out.println(buddy.getOSFamily()));
+      put("getpastechunksize",(buddy,inst) -> System.out.println(buddy.getPasteChunkSize()));
       put("getpixel",(buddy,inst) -> {
         // Probably don't need alpha I think; probably always 255
         Color pixel = buddy.getPixel(inst.getInt(0),inst.getInt(1));
@@ -1562,6 +2495,9 @@ public class BotBuddyCode implements Closeable {
 
         System.out.println(sb);
       });
+      put("getpausedelay",(buddy,inst) -> System.out.println(buddy.getPauseDelay()));
+      put("ispausemode",(buddy,inst) -> System.out.println(buddy.isPauseMode()));
+      put("isprecisemode",(buddy,inst) -> System.out.println(buddy.isPreciseMode()));
       put("isreleasemode",(buddy,inst) -> System.out.println(buddy.isReleaseMode()));
       put("getrightbutton",(buddy,inst) -> System.out.println(buddy.getRightButton()));
       put("issafemode",(buddy,inst) -> System.out.println(buddy.isSafeMode()));
@@ -1573,6 +2509,54 @@ public class BotBuddyCode implements Closeable {
       });
       put("getscreenwidth",(buddy,inst) -> System.out.println(buddy.getScreenWidth()));
       put("getshortdelay",(buddy,inst) -> System.out.println(buddy.getShortDelay()));
+
+      // Conditions (not counted in #BASE_COUNT)
+      putCondition("eq",2,(buddy,inst,index) -> {
+        Arg x = inst.getArg(index);
+        Arg y = inst.getArg(index + 1);
+
+        return (x.isInt && y.isInt) ? (x.intValue == y.intValue) : x.value.equals(y.value);
+      });
+      putCondition("false",0,(buddy,inst,index) -> false);
+      putCondition("ge",2,(buddy,inst,index) -> inst.getInt(index) >= inst.getInt(index + 1));
+      putCondition("gt",2,(buddy,inst,index) -> inst.getInt(index) > inst.getInt(index + 1));
+      putCondition("le",2,(buddy,inst,index) -> inst.getInt(index) <= inst.getInt(index + 1));
+      putCondition("lt",2,(buddy,inst,index) -> inst.getInt(index) < inst.getInt(index + 1));
+      putCondition("ne",2,(buddy,inst,index) -> {
+        Arg x = inst.getArg(index);
+        Arg y = inst.getArg(index + 1);
+
+        return (x.isInt && y.isInt) ? (x.intValue != y.intValue) : !x.value.equals(y.value);
+      });
+      putCondition("pixel",3,(buddy,inst,index) -> {
+        Color pixel = buddy.getPixel(inst.getInt(index),inst.getInt(index + 1));
+
+        return (pixel.getRGB() & 0xFFFFFF) == inst.getRGB(index + 2);
+      });
+      putCondition("true",0,(buddy,inst,index) -> true);
+    }
+
+    /**
+     * <pre>
+     * Loads the key layout of the profile {@code file} only once, and then returns the same one
+     *   (see {@link #keyLayouts}).
+     * </pre>
+     */
+    public KeyLayout loadKeyLayout(Path file) throws IOException {
+      final Path key = file.toAbsolutePath().normalize();
+      KeyLayout layout = keyLayouts.get(key);
+
+      if(layout == null) {
+        layout = KeyLayout.load(key);
+
+        final KeyLayout prevLayout = keyLayouts.putIfAbsent(key,layout);
+
+        if(prevLayout != null) {
+          layout = prevLayout; // Loaded by another thread at the same time
+        }
+      }
+
+      return layout;
     }
 
     public boolean contains(String id) {
@@ -1580,7 +2564,7 @@ public class BotBuddyCode implements Closeable {
     }
 
     public boolean contains(Instruction inst) {
-      return entries.containsKey(inst.id);
+      return get(inst) != null;
     }
 
     public boolean containsID(String id) {
@@ -1596,11 +2580,38 @@ public class BotBuddyCode implements Closeable {
     }
 
     public Executor putWithID(String id,Executor executor) {
+      putInTable(id,executor);
+
       return entries.put(id,executor);
     }
 
     public Executor putWithName(String name,Executor executor) {
-      return entries.put(Instruction.toID(name),executor);
+      return putWithID(Instruction.toID(name),executor);
+    }
+
+    public Condition putCondition(String id,Condition condition) {
+      conditionArgCounts.remove(id);
+
+      return conditions.put(id,condition);
+    }
+
+    /**
+     * @param argCount the number of args of the condition (after its name), which is checked when linking
+     */
+    public Condition putCondition(String id,int argCount,Condition condition) {
+      conditionArgCounts.put(id,argCount);
+
+      return conditions.put(id,condition);
+    }
+
+    protected void putInTable(String id,Executor executor) {
+      final int opcode = Opcodes.intern(id);
+
+      if(opcode >= table.length) {
+        table = Arrays.copyOf(table,Math.max(opcode + 1,table.length * 2));
+      }
+
+      table[opcode] = executor;
     }
 
     public Executor remove(String id) {
@@ -1608,21 +2619,43 @@ public class BotBuddyCode implements Closeable {
     }
 
     public Executor removeWithID(String id) {
+      final int opcode = Opcodes.get(id);
+
+      if(opcode >= 0 && opcode < table.length) {
+        table[opcode] = null;
+      }
+
       return entries.remove(id);
     }
 
     public Executor removeWithName(String name) {
-      return entries.remove(Instruction.toID(name));
+      return removeWithID(Instruction.toID(name));
     }
 
     public Executor get(String id) {
       return getWithID(id);
     }
 
+    /**
+     * <pre>
+     * Gets the executor by array index using the instruction's opcode, without hashing its ID.
+     * </pre>
+     */
     public Executor get(Instruction inst) {
-      return entries.get(inst.id);
+      // The ID might have been interned after the instruction was made
+      return get((inst.opcode != Opcodes.NONE) ? inst.opcode : Opcodes.get(inst.id));
+    }
+
+    public Executor get(int opcode) {
+      return (opcode >= 0 && opcode < table.length) ? table[opcode] : null;
     }
 
+    /**
+     * <pre>
+     * Use {@link #put(String,Executor)} and {@link #remove(String)} to change the entries,
+     *   not this map directly, else the entries won't be found by opcode.
+     * </pre>
+     */
     public Map<String,Executor> getEntries() {
       return entries;
     }
@@ -1638,6 +2671,23 @@ public class BotBuddyCode implements Closeable {
     public Executor getWithName(String name) {
       return entries.get(Instruction.toID(name));
     }
+
+    public Condition getCondition(String id) {
+      return conditions.get(id);
+    }
+
+    /**
+     * @return the number of args of the condition (after its name), or -1 if not checked
+     */
+    public int getConditionArgCount(String id) {
+      Integer argCount = conditionArgCounts.get(id);
+
+      return (argCount != null) ? argCount : -1;
+    }
+
+    public Map<String,Condition> getConditions() {
+      return conditions;
+    }
   }
 
   /**
@@ -1656,11 +2706,48 @@ public class BotBuddyCode implements Closeable {
     public LineOfCode loc;
     public String name;
 
+    /**
+     * <pre>
+     * The {@link Opcodes opcode} of {@link #id}, or {@link Opcodes#NONE} if no executor was ever added for it.
+     * </pre>
+     */
+    public int opcode;
+
+    /**
+     * <pre>
+     * The args as ints, if all of them are ints, for {@link #getInts(int)}; else, null.
+     * {@link #intsArgs} is the args that this was made from, in case {@link #args} is set directly.
+     * </pre>
+     */
+    protected int[] ints = null;
+    protected Arg[] intsArgs = null;
+
     public Instruction(int lineNumber,int lineColumn,String name) {
       this(new LineOfCode(lineNumber,lineColumn),name);
     }
 
     public Instruction(LineOfCode loc,String name) {
+      this(loc,name,(name != null) ? toID(name) : null);
+    }
+
+    /**
+     * <pre>
+     * Copies {@code inst} (without looking up its opcode again), but with different args.
+     * Used for substituting variables when executing.
+     * </pre>
+     */
+    protected Instruction(Instruction inst,Arg[] args) {
+      this.args = args;
+      this.id = inst.id;
+      this.loc = inst.loc;
+      this.name = inst.name;
+      this.opcode = inst.opcode;
+    }
+
+    /**
+     * @param id the already-normalized ID of {@code name} (e.g., from a {@link SymbolTable})
+     */
+    public Instruction(LineOfCode loc,String name,String id) {
       if(loc == null) {
         throw new IllegalArgumentException("LineOfCode cannot be null");
       }
@@ -1668,9 +2755,10 @@ public class BotBuddyCode implements Closeable {
         throw new IllegalArgumentException("Name cannot be null");
       }
 
-      this.id = toID(name);
+      this.id = id;
       this.loc = loc;
       this.name = name;
+      this.opcode = Opcodes.get(id);
     }
 
     public ParseCodeException buildParseCodeException(String message) {
@@ -1687,6 +2775,20 @@ public class BotBuddyCode implements Closeable {
       }
 
       this.args = args;
+
+      int[] ints = new int[args.length];
+
+      for(int i = 0; i < args.length; ++i) {
+        if(!args[i].isInt) {
+          ints = null;
+          break;
+        }
+
+        ints[i] = args[i].intValue;
+      }
+
+      this.ints = ints;
+      this.intsArgs = args;
     }
 
     public void setArgs(List<Arg> args) {
@@ -1702,13 +2804,18 @@ public class BotBuddyCode implements Closeable {
     }
 
     public boolean getBool(int index) throws ParseCodeException {
-      return Bools.parse(getStr(0));
+      return getArg(index).getBool();
     }
 
     public int getInt(int index) throws ParseCodeException {
       Arg arg = getArg(index);
 
+      if(arg.isInt) {
+        return arg.intValue;
+      }
+
       try {
+        // Not an int, but parse it anyway for the cause's message
         return Integer.parseInt(arg.value);
       }
       catch(NumberFormatException ex) {
@@ -1717,11 +2824,24 @@ public class BotBuddyCode implements Closeable {
       }
     }
 
+    /**
+     * @see #getInts(int)
+     */
     public int[] getInts() throws ParseCodeException {
       return getInts(1);
     }
 
+    /**
+     * <pre>
+     * If all of the args are ints, this returns the same array for every execution (converted at compile time),
+     *   so callers must not modify it (e.g., the executors only pass it to BotBuddy, which only reads it).
+     * </pre>
+     */
     public int[] getInts(int minArgCount) throws ParseCodeException {
+      if(this.ints != null && intsArgs == args && args.length >= minArgCount) {
+        return this.ints;
+      }
+
       int[] ints = new int[args.length];
 
       // Throw an exception if doesn't have the minimum number of args
@@ -1740,6 +2860,28 @@ public class BotBuddyCode implements Closeable {
       return ints;
     }
 
+    /**
+     * <pre>
+     * Gets a color as an RGB word (without alpha), which can be written as
+     *   hex ("0xFF8000", or "#FF8000" if quoted, as '#' begins a comment)
+     *   or as an int ("16744448"), like the output of {@code get_pixel}.
+     * </pre>
+     */
+    public int getRGB(int index) throws ParseCodeException {
+      Arg arg = getArg(index);
+
+      if(arg.isInt) {
+        return arg.intValue & 0xFFFFFF;
+      }
+
+      try {
+        return Integer.decode(arg.value) & 0xFFFFFF;
+      }
+      catch(NumberFormatException ex) {
+        throw ParseCodeException.build(arg.loc,"Arg '" + arg.value + "' must be a color",name,ex);
+      }
+    }
+
     public String getStr(int index) throws ParseCodeException {
       return getArg(index).value;
     }
@@ -1759,10 +2901,1945 @@ public class BotBuddyCode implements Closeable {
   }
 
   /**
+   * <pre>
+   * <b>Opcodes</b> maps each instruction ID that has an {@link Executor} to a dense int,
+   *   so that {@link Executors} can look up an executor by array index instead of hashing the ID.
+   *
+   * An ID is given an opcode when an executor is first put for it, so the base executors
+   *   ({@link Executors#addBase()}) are normally 0 to {@link Executors#BASE_COUNT} - 1.
+   *   Opcodes are global (shared by all {@link Executors}), so an {@link Instruction}'s opcode
+   *   is valid for any of them.
+   * </pre>
+   *
    * @author Jonathan Bradley Whited
    */
-  public static class UserMethod extends Instruction {
-    public List<Instruction> instructions = new LinkedList<>();
+  public static final class Opcodes {
+    public static final int NONE = -1;
+
+    private static final List<String> IDS = new ArrayList<>(Executors.BASE_COUNT);
+    private static final Map<String,Integer> OPCODES = new ConcurrentHashMap<>(Executors.BASE_COUNT * 2);
+
+    /**
+     * @return the opcode of {@code id}, or {@link #NONE} if it hasn't been interned
+     */
+    public static int get(String id) {
+      Integer opcode = (id != null) ? OPCODES.get(id) : null;
+
+      return (opcode != null) ? opcode : NONE;
+    }
+
+    public static synchronized String getID(int opcode) {
+      return (opcode >= 0 && opcode < IDS.size()) ? IDS.get(opcode) : null;
+    }
+
+    public static synchronized int getSize() {
+      return IDS.size();
+    }
+
+    /**
+     * @return the opcode of {@code id}, which is created if it doesn't exist
+     */
+    public static synchronized int intern(String id) {
+      Integer opcode = OPCODES.get(id);
+
+      if(opcode == null) {
+        opcode = IDS.size();
+
+        IDS.add(id);
+        OPCODES.put(id,opcode);
+      }
+
+      return opcode;
+    }
+
+    private Opcodes() {
+      throw new UtilClassException();
+    }
+  }
+
+  /**
+   * <pre>
+   * <b>Overloads</b> is an {@link Executor} with more than one signature, chosen by the number of args
+   *   and their types, without trying one and catching a {@link ParseCodeException} to try the next.
+   *
+   * A {@link Program} resolves the overload of each instruction once when linking,
+   *   and then executes the chosen one directly.
+   *
+   * A signature is a space-separated list of arg types, optionally ending with "..." for any more args:
+   * - int:  {@link Arg#isInt}
+   * - bool: any arg (see {@link com.esotericpig.jeso.Bools#parse(String)})
+   * - str:  any arg
+   *
+   * The first signature that matches is chosen, so put the more specific ones first:{@code
+   *   put("type",new Overloads()
+   *       .on("int ...",(buddy,inst) -> buddy.type(inst.getInt(0)))
+   *       .on("str ...",(buddy,inst) -> buddy.type(inst.getStr(0))));}
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  public static class Overloads implements Executor {
+    protected final List<Signature> signatures = new ArrayList<>();
+
+    public ParseCodeException buildParseCodeException(Instruction inst) {
+      return inst.buildParseCodeException(buildMismatchMessage(inst));
+    }
+
+    public String buildMismatchMessage(Instruction inst) {
+      StringBuilder msg = new StringBuilder();
+
+      msg.append("Args do not match any of '").append(inst.id).append("':");
+
+      for(Signature signature: signatures) {
+        msg.append(" (").append(signature.text).append(')');
+      }
+
+      return msg.toString();
+    }
+
+    @Override
+    public void execute(BotBuddy buddy,Instruction inst) throws ParseCodeException {
+      Executor executor = resolve(inst);
+
+      if(executor == null) {
+        throw buildParseCodeException(inst);
+      }
+
+      executor.execute(buddy,inst);
+    }
+
+    /**
+     * @param signature for example: "int int str" or "int ..."
+     */
+    public Overloads on(String signature,Executor executor) {
+      signatures.add(new Signature(signature,executor));
+
+      return this;
+    }
+
+    /**
+     * @return the executor of the first signature that matches {@code inst}'s args, or null if none
+     */
+    public Executor resolve(Instruction inst) {
+      for(Signature signature: signatures) {
+        if(signature.matches(inst.args)) {
+          return signature.executor;
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * @author Jonathan Bradley Whited
+     */
+    public static class Signature {
+      public final Executor executor;
+      public final boolean isVarArgs;
+      public final String text;
+
+      /**
+       * true if the arg at the index must be an int
+       */
+      protected final boolean[] isInts;
+
+      public Signature(String text,Executor executor) {
+        String[] types = WHITESPACE_PATTERN.split(text.trim());
+        int typeCount = types.length;
+
+        this.isVarArgs = types[typeCount - 1].equals("...");
+
+        if(isVarArgs) {
+          --typeCount;
+        }
+
+        this.executor = executor;
+        this.isInts = new boolean[typeCount];
+        this.text = text;
+
+        for(int i = 0; i < typeCount; ++i) {
+          switch(types[i]) {
+            case "int": isInts[i] = true; break;
+            case "bool":
+            case "str": isInts[i] = false; break;
+
+            default:
+              throw new IllegalArgumentException("Invalid arg type '" + types[i] + "' in signature '" + text
+                  + "'");
+          }
+        }
+      }
+
+      public boolean matches(Arg[] args) {
+        if(isVarArgs ? (args.length < isInts.length) : (args.length != isInts.length)) {
+          return false;
+        }
+
+        for(int i = 0; i < isInts.length; ++i) {
+          if(isInts[i] && !args[i].isInt) {
+            return false;
+          }
+        }
+
+        return true;
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * <b>Program</b> is compiled BotBuddyCode that can be executed any number of times,
+   *   against any {@link BotBuddy}, from any thread, without parsing the code again.
+   *
+   * All of the code is stored flat in one array: the top-level instructions first,
+   *   followed by the body of each user method. Each instruction keeps its {@link LineOfCode}.
+   *
+   * Control flow ({@code repeat}, {@code while}, {@code if}, {@code else}, {@code break}, {@code end})
+   *   is linked to jumps within this array, so a loop doesn't grow the code or recurse.
+   *
+   * A call of a small, non-recursive user method (see {@link #INLINE_MAX_LENGTH}) is inlined:
+   *   the method's code is copied in place of the call, with its params replaced by the call's args.
+   *
+   * It is immutable, as long as you don't modify the {@link Instruction}s.
+   *   Each instruction is linked to its {@link Executor} when compiled,
+   *   so changing the {@link Executors} afterward does not affect it.
+   *
+   * Example:{@code
+   *   BotBuddyCode.Program program = BotBuddyCode.builder(Paths.get("file.bbc")).compile();
+   *
+   *   for(int i = 0; i < 1000; ++i) {
+   *     program.execute(buddy);
+   *   }}
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   * @see BotBuddyCode#compile()
+   * @see Builder#compile()
+   */
+  public static class Program {
+    protected static final byte KIND_EXECUTOR = 0;
+    protected static final byte KIND_CALL = 1;
+    protected static final byte KIND_REPEAT = 2;
+    protected static final byte KIND_WHILE = 3;
+    protected static final byte KIND_IF = 4;
+    protected static final byte KIND_ELSE = 5;
+    protected static final byte KIND_BREAK = 6;
+    protected static final byte KIND_END = 7;
+    protected static final byte KIND_BATCH = 8;
+    protected static final byte KIND_BATCH_END = 9;
+    protected static final byte KIND_SET = 10; // The kinds that set a variable must be last
+    protected static final byte KIND_ADD = 11;
+    protected static final byte KIND_SUB = 12;
+    protected static final byte KIND_MUL = 13;
+    protected static final byte KIND_DIV = 14;
+    protected static final byte KIND_MOD = 15;
+
+    /**
+     * <pre>
+     * The max number of instructions of a user method (after its own calls are inlined) for it to be inlined.
+     * A method that calls itself (directly or not), or that changes one of its params, is never inlined.
+     * </pre>
+     */
+    public static final int INLINE_MAX_LENGTH = 16;
+
+    /**
+     * <pre>
+     * The variable name of a param, which can't be made by the user, as it has a space.
+     * </pre>
+     */
+    public static String toParamKey(UserMethod method,String param) {
+      return method.id + ' ' + param;
+    }
+
+    protected final Instruction[] code;
+    protected final ConstantPool constants;
+    protected final Executors executors;
+    protected final List<String> fields;
+    protected long fingerprint = 0L;
+    protected final boolean isLightErrors;
+    protected final Block main;
+    protected final int mainLength;
+    protected final Map<String,Block> userMethods;
+
+    /**
+     * <pre>
+     * The slot of each variable by name. When executing, the values are stored in an array by slot,
+     *   so that a variable is not looked up by name.
+     * </pre>
+     */
+    protected final Map<String,Integer> variableSlots = new HashMap<>();
+
+    /**
+     * <pre>
+     * For each instruction that has a variable arg (e.g., "click $x $y"), argSlots[i][j] is the slot of args[j],
+     *   or -1 if args[j] is not a variable. Else, argSlots[i] is null.
+     * </pre>
+     */
+    protected final int[][] argSlots;
+
+    /**
+     * <pre>
+     * The linked {@link Executor} of each instruction in {@link #code}, or null for a keyword (e.g., {@code call}).
+     * </pre>
+     */
+    protected final Executor[] bindings;
+
+    /**
+     * <pre>
+     * The linked {@link Condition} of each {@code if} &amp; {@code while}; else, null.
+     * </pre>
+     */
+    protected final Condition[] conditions;
+
+    /**
+     * <pre>
+     * The jump of each control flow instruction, as an index into {@link #code}:
+     * - repeat/while: its 'end'
+     * - if:           its 'else', else its 'end'
+     * - else:         its 'end'
+     * - break:        the 'end' of its loop
+     * - end:          its repeat/while, else -1 (for if/else)
+     * </pre>
+     */
+    protected final int[] jumps;
+
+    /**
+     * <pre>
+     * The KIND_* of each instruction, for executing without comparing IDs.
+     * </pre>
+     */
+    protected final byte[] kinds;
+
+    /**
+     * <pre>
+     * For if/while, the index of the condition's first arg.
+     * For repeat, the index of its counter (its depth of nested repeats in its block).
+     * For set/add/sub/mul/div/mod, the slot of its variable.
+     * </pre>
+     */
+    protected final int[] operands;
+
+    /**
+     * <pre>
+     * For the {@code call} instruction at code[i], targets[i] is the linked {@link Block} of its user method.
+     *   Else, targets[i] is null.
+     *
+     * A call of multiple methods (e.g., "call a b") is split into a call for each method when compiled.
+     * </pre>
+     */
+    protected final Block[] targets;
+
+    /**
+     * @throws ParseCodeException if an instruction, a condition, or a called user method does not exist,
+     *                            or if the control flow is invalid
+     */
+    protected Program(List<Instruction> mainCode,Map<String,UserMethod> userMethods,Executors executors
+        ,List<String> fields,SymbolTable symbols,ConstantPool constants,boolean isLightErrors)
+        throws ParseCodeException {
+      Inliner inliner = new Inliner(userMethods,symbols);
+      List<Instruction> code = inliner.expand(mainCode);
+      final int mainLength = code.size();
+      Map<String,Block> blocks = new LinkedHashMap<>(userMethods.size() * 2);
+      List<UserMethod> sortedMethods = new ArrayList<>(userMethods.values());
+
+      // Sorted, so that the code is laid out the same, whether parsed or loaded (e.g., for a Checkpoint)
+      Collections.sort(sortedMethods,(a,b) -> a.id.compareTo(b.id));
+
+      for(UserMethod userMethod: sortedMethods) {
+        final int start = code.size();
+
+        code.addAll(inliner.getBody(userMethod));
+        blocks.put(userMethod.id,new Block(userMethod,start,code.size()));
+      }
+
+      this.code = code.toArray(new Instruction[code.size()]);
+      this.constants = constants;
+      this.executors = executors;
+      this.fields = fields;
+      this.isLightErrors = isLightErrors;
+      this.main = new Block(null,0,mainLength);
+      this.mainLength = mainLength;
+      this.userMethods = Collections.unmodifiableMap(blocks);
+      this.argSlots = new int[this.code.length][];
+      this.bindings = new Executor[this.code.length];
+      this.conditions = new Condition[this.code.length];
+      this.jumps = new int[this.code.length];
+      this.kinds = new byte[this.code.length];
+      this.operands = new int[this.code.length];
+      this.targets = new Block[this.code.length];
+
+      // Fields first, so that their slots are 0 to (size - 1)
+      for(String field: fields) {
+        toVariableSlot(field);
+      }
+
+      for(Block block: blocks.values()) {
+        block.paramSlots = new int[block.method.params.size()];
+
+        for(int i = 0; i < block.paramSlots.length; ++i) {
+          block.paramSlots[i] = toVariableSlot(toParamKey(block.method,block.method.params.get(i)));
+        }
+      }
+
+      link(main,symbols);
+
+      for(Block block: blocks.values()) {
+        link(block,symbols);
+      }
+
+      checkVariables();
+    }
+
+    /**
+     * @throws ParseCodeException if a variable is used, but never set
+     */
+    protected void checkVariables() throws ParseCodeException {
+      boolean[] isSet = new boolean[variableSlots.size()];
+
+      for(String field: fields) {
+        isSet[variableSlots.get(field)] = true; // Set before each execution
+      }
+
+      for(Block block: userMethods.values()) {
+        for(int slot: block.paramSlots) {
+          isSet[slot] = true; // Set by each call
+        }
+      }
+
+      for(int i = 0; i < code.length; ++i) {
+        if(kinds[i] >= KIND_SET) { // set/add/sub/mul/div/mod
+          isSet[operands[i]] = true;
+        }
+      }
+
+      for(int i = 0; i < code.length; ++i) {
+        if(argSlots[i] != null) {
+          for(int j = 0; j < argSlots[i].length; ++j) {
+            if(argSlots[i][j] >= 0 && !isSet[argSlots[i][j]]) {
+              Arg arg = code[i].args[j];
+
+              throw buildParseCodeException(arg.loc,"Variable '" + arg.getVariableName() + "' is never set"
+                  ,code[i].name);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * <pre>
+     * Resolves every instruction to its {@link Executor} and every {@code call} arg to its user method,
+     *   and every control flow instruction to its jump, so that nothing is looked up while executing.
+     *
+     * A block of control flow (e.g., {@code repeat}) must be closed within the same user method.
+     * </pre>
+     *
+     * @throws ParseCodeException if an instruction, a condition, or a called user method does not exist,
+     *                            or if the control flow is invalid
+     */
+    protected void link(Block block,SymbolTable symbols) throws ParseCodeException {
+      LinkedList<Integer> openBlocks = new LinkedList<>();
+      int repeatDepth = 0;
+
+      for(int i = block.start; i < block.end; ++i) {
+        Instruction inst = code[i];
+
+        // Special keywords
+        if(inst.id.equals(INSTRUCTION_CALL_ID)) {
+          if(inst.args.length < 1) {
+            throw buildParseCodeException(inst.loc,"Not enough args",inst.name);
+          }
+
+          // Already split into one call per method by the Inliner
+          Arg arg = inst.args[0];
+          String methodID = symbols.toID(arg.value);
+          Block target = userMethods.get(methodID);
+
+          if(target == null) {
+            throw buildParseCodeException(arg.loc,"Method '" + methodID + "' from '" + arg.value
+                + "' does not exist",inst.name);
+          }
+          if((inst.args.length - 1) != target.paramSlots.length) {
+            throw buildParseCodeException(arg.loc,"Method '" + methodID + "' takes "
+                + target.paramSlots.length + " arg(s), but got " + (inst.args.length - 1),inst.name);
+          }
+
+          kinds[i] = KIND_CALL;
+          targets[i] = target;
+
+          linkVariables(i,1); // Arg 0 is the method name, not a variable
+
+          continue;
+        }
+
+        final boolean isVariableInst = isVariableID(inst.id);
+
+        linkVariables(i,isVariableInst ? 1 : 0);
+
+        if(isVariableInst) {
+          if(inst.args.length < 2) {
+            throw buildParseCodeException(inst.loc,"Not enough args",inst.name);
+          }
+          if(inst.args.length > 2) {
+            throw buildParseCodeException(inst.args[2].loc,"Too many args",inst.name);
+          }
+
+          switch(inst.id) {
+            case INSTRUCTION_SET_ID: kinds[i] = KIND_SET; break;
+            case INSTRUCTION_ADD_ID: kinds[i] = KIND_ADD; break;
+            case INSTRUCTION_SUB_ID: kinds[i] = KIND_SUB; break;
+            case INSTRUCTION_MUL_ID: kinds[i] = KIND_MUL; break;
+            case INSTRUCTION_DIV_ID: kinds[i] = KIND_DIV; break;
+            default:                 kinds[i] = KIND_MOD; break;
+          }
+
+          if(kinds[i] != KIND_SET && !inst.args[1].isVariable()) {
+            inst.getInt(1); // Throw an error if not an int
+          }
+
+          operands[i] = toVariableSlot(inst.args[0].getVariableName());
+        }
+        else if(inst.id.equals(INSTRUCTION_REPEAT_ID)) {
+          if(inst.args.length < 1 || !inst.args[0].isVariable()) {
+            inst.getInt(0); // Throw an error if not an int
+          }
+
+          kinds[i] = KIND_REPEAT;
+          operands[i] = repeatDepth++;
+
+          if(repeatDepth > block.counterCount) {
+            block.counterCount = repeatDepth;
+          }
+
+          openBlocks.push(i);
+        }
+        else if(inst.id.equals(INSTRUCTION_BATCH_ID)) {
+          if(inst.args.length > 0) {
+            throw buildParseCodeException(inst.args[0].loc,"Too many args",inst.name);
+          }
+
+          kinds[i] = KIND_BATCH;
+
+          openBlocks.push(i);
+        }
+        else if(inst.id.equals(INSTRUCTION_WHILE_ID) || inst.id.equals(INSTRUCTION_IF_ID)) {
+          kinds[i] = inst.id.equals(INSTRUCTION_WHILE_ID) ? KIND_WHILE : KIND_IF;
+
+          linkCondition(i,symbols);
+          openBlocks.push(i);
+        }
+        else if(inst.id.equals(INSTRUCTION_ELSE_ID)) {
+          if(openBlocks.isEmpty() || kinds[openBlocks.peek()] != KIND_IF) {
+            throw buildParseCodeException(inst.loc,"'" + inst.name + "' is not within an 'if'",inst.name);
+          }
+
+          kinds[i] = KIND_ELSE;
+          jumps[openBlocks.pop()] = i;
+          openBlocks.push(i);
+        }
+        else if(inst.id.equals(INSTRUCTION_BREAK_ID)) {
+          Integer loop = null;
+
+          for(Integer opener: openBlocks) {
+            if(kinds[opener] == KIND_REPEAT || kinds[opener] == KIND_WHILE) {
+              loop = opener;
+              break;
+            }
+            if(kinds[opener] == KIND_BATCH) {
+              // Else, the batch would never end
+              throw buildParseCodeException(inst.loc,"'" + inst.name + "' cannot leave a 'batch'",inst.name);
+            }
+          }
+
+          if(loop == null) {
+            throw buildParseCodeException(inst.loc,"'" + inst.name + "' is not within a loop",inst.name);
+          }
+
+          kinds[i] = KIND_BREAK;
+          jumps[i] = loop; // Changed to the loop's 'end' below, after it's linked
+        }
+        else if(inst.id.equals(INSTRUCTION_END_ID)) {
+          if(openBlocks.isEmpty()) {
+            throw buildParseCodeException(inst.loc,"'" + inst.name + "' has no block",inst.name);
+          }
+
+          final int opener = openBlocks.pop();
+
+          if(kinds[opener] == KIND_BATCH) {
+            kinds[i] = KIND_BATCH_END; // A batch has no jumps
+
+            continue;
+          }
+
+          kinds[i] = KIND_END;
+          jumps[opener] = i;
+
+          if(kinds[opener] == KIND_REPEAT || kinds[opener] == KIND_WHILE) {
+            jumps[i] = opener;
+
+            if(kinds[opener] == KIND_REPEAT) {
+              --repeatDepth;
+            }
+          }
+          else {
+            jumps[i] = -1;
+          }
+        }
+        else {
+          Executor executor = executors.get(inst);
+
+          if(executor == null) {
+            throw buildParseCodeException(inst.loc,"Instruction '" + inst.id + "' from '" + inst.name
+                + "' does not exist",inst.name);
+          }
+
+          // Resolve the overload now, instead of on every execution
+          // - If it has a variable arg, then it can only be resolved when executing
+          if(executor instanceof Overloads && argSlots[i] == null) {
+            Overloads overloads = (Overloads)executor;
+
+            executor = overloads.resolve(inst);
+
+            if(executor == null) {
+              throw buildParseCodeException(inst.loc,overloads.buildMismatchMessage(inst),inst.name);
+            }
+          }
+
+          kinds[i] = KIND_EXECUTOR;
+          bindings[i] = executor;
+        }
+      }
+
+      if(!openBlocks.isEmpty()) {
+        Instruction inst = code[openBlocks.peek()];
+
+        throw buildParseCodeException(inst.loc,"Block has no 'end'",inst.name);
+      }
+
+      // Now that each loop knows its 'end'
+      for(int i = block.start; i < block.end; ++i) {
+        if(kinds[i] == KIND_BREAK) {
+          jumps[i] = jumps[jumps[i]];
+        }
+      }
+    }
+
+    /**
+     * <pre>
+     * Links each variable arg (e.g., $x) of code[i] to its slot, starting at arg {@code start}.
+     * </pre>
+     */
+    protected void linkVariables(int i,int start) {
+      Instruction inst = code[i];
+
+      for(int j = start; j < inst.args.length; ++j) {
+        Arg arg = inst.args[j];
+
+        if(arg.isVariable()) {
+          if(argSlots[i] == null) {
+            argSlots[i] = new int[inst.args.length];
+
+            Arrays.fill(argSlots[i],-1);
+          }
+
+          argSlots[i][j] = toVariableSlot(arg.getVariableName());
+        }
+      }
+    }
+
+    protected int toVariableSlot(String name) {
+      Integer slot = variableSlots.get(name);
+
+      if(slot == null) {
+        slot = variableSlots.size();
+
+        variableSlots.put(name,slot);
+      }
+
+      return slot;
+    }
+
+    /**
+     * <pre>
+     * Links the condition of the if/while at code[i]: "[not] name args...".
+     * </pre>
+     */
+    protected void linkCondition(int i,SymbolTable symbols) throws ParseCodeException {
+      Instruction inst = code[i];
+      int index = 0;
+      boolean isNot = false;
+
+      if(inst.args.length > 0 && symbols.toID(inst.args[0].value).equals("not")) {
+        index = 1;
+        isNot = true;
+      }
+      if(index >= inst.args.length) {
+        throw buildParseCodeException(inst.loc,"Not enough args; a condition is required",inst.name);
+      }
+
+      Arg arg = inst.args[index];
+      String conditionID = symbols.toID(arg.value);
+      Condition condition = executors.getCondition(conditionID);
+
+      if(condition == null) {
+        throw buildParseCodeException(arg.loc,"Condition '" + conditionID + "' from '" + arg.value
+            + "' does not exist",inst.name);
+      }
+
+      // Check now, instead of after the actions before it have already been done
+      final int argCount = executors.getConditionArgCount(conditionID);
+      final int actualCount = inst.args.length - index - 1;
+
+      if(argCount >= 0 && actualCount != argCount) {
+        throw buildParseCodeException(arg.loc,"Condition '" + conditionID + "' takes " + argCount
+            + " args, but has " + actualCount,inst.name);
+      }
+
+      if(isNot) {
+        final Condition notCondition = condition;
+
+        condition = (buddy,cInst,cIndex) -> !notCondition.test(buddy,cInst,cIndex);
+      }
+
+      conditions[i] = condition;
+      operands[i] = index + 1;
+    }
+
+    protected ParseCodeException buildParseCodeException(LineOfCode loc,String message,String name) {
+      return isLightErrors ? ParseCodeException.buildLight(loc,message,name)
+          : ParseCodeException.build(loc,message,name);
+    }
+
+    /**
+     * <pre>
+     * Each execution has its own variables, so this can be executed by multiple threads at the same time.
+     * </pre>
+     *
+     * @throws ParseCodeException if an instruction fails, including any other RuntimeException
+     *                            (except {@link UserIsActiveException}), which is its cause
+     */
+    public void execute(BotBuddy buddy) throws ParseCodeException {
+      execute(buddy,main,new Arg[variableSlots.size()],null);
+    }
+
+    /**
+     * <pre>
+     * If {@code checkpoint} is not empty, then this resumes from it; else, this executes from the beginning.
+     *
+     * If {@link UserIsActiveException} is thrown, then {@code checkpoint} is filled in with where it stopped.
+     * Else, it's cleared when done.
+     * </pre>
+     *
+     * @throws ParseCodeException if {@code checkpoint} is not of this program (e.g., the file was changed)
+     */
+    public void execute(BotBuddy buddy,Checkpoint checkpoint) throws ParseCodeException {
+      if(checkpoint == null) {
+        execute(buddy);
+
+        return;
+      }
+
+      Arg[] vars = resume(checkpoint,false);
+
+      try {
+        execute(buddy,main,(vars != null) ? vars : new Arg[variableSlots.size()],checkpoint);
+      }
+      catch(UserIsActiveException ex) {
+        checkpoint.fingerprint = getFingerprint();
+
+        throw ex;
+      }
+      finally {
+        checkpoint.isCapturing = false;
+      }
+
+      checkpoint.clear();
+    }
+
+    /**
+     * <pre>
+     * Executes this program (as a template) once for each row of {@code csv}, with each field
+     *   (see {@link Builder#fields(List)}) set to the value of the column with the same name in the header.
+     *
+     * If the header has not been read yet, then it's read first.
+     * Only one row is read at a time, and the variables are reused (but cleared) for each row,
+     *   so memory doesn't grow with the number of rows.
+     *
+     * For example, with the fields of the header "Hanzi,English":
+     *   paste 976 501 $Hanzi
+     *   enter 1411 496 $English
+     * </pre>
+     *
+     * @return the number of rows executed
+     * @throws IOException        if the CSV fails to be read
+     * @throws ParseCodeException   if a field is not in the header, or if a row fails to be executed
+     *                              (see {@link #execute(BotBuddy)}), which has the row number
+     *                              (and CSV line number) in its message
+     * @throws UserIsActiveException if the user is active, which also has the row in its message
+     */
+    public long executeEachRow(BotBuddy buddy,CSVReader csv) throws IOException,ParseCodeException {
+      return executeEachRow(buddy,csv,null);
+    }
+
+    /**
+     * <pre>
+     * Same as {@link #executeEachRow(BotBuddy,CSVReader)}, but with a {@link Checkpoint} (which can be null).
+     *
+     * If {@code checkpoint} is not empty, then the rows before its row are skipped (read, but not executed),
+     *   and its row is resumed from it. {@code csv} must be from the beginning of the same file.
+     * </pre>
+     *
+     * @see #execute(BotBuddy,Checkpoint)
+     */
+    public long executeEachRow(BotBuddy buddy,CSVReader csv,Checkpoint checkpoint)
+        throws IOException,ParseCodeException {
+      Arg[] resumeVars = resume(checkpoint,true);
+      final long resumeRowNumber = (resumeVars != null) ? checkpoint.rowNumber : 0L;
+      List<String> header = csv.getHeader();
+
+      if(header == null && (header = csv.readHeader()) == null) {
+        return 0L;
+      }
+
+      // Column of each field, by slot
+      final int[] columns = new int[fields.size()];
+
+      for(int slot = 0; slot < columns.length; ++slot) {
+        final String field = fields.get(slot);
+
+        columns[slot] = header.indexOf(field);
+
+        if(columns[slot] < 0) {
+          throw new ParseCodeException(1,1,"Field '" + field + "' is not in the CSV header " + header);
+        }
+      }
+
+      final Arg[] vars = new Arg[variableSlots.size()];
+      long count = 0L;
+      List<String> row;
+
+      while((row = csv.readRow()) != null) {
+        if(csv.getRowNumber() < resumeRowNumber) {
+          continue; // Already done
+        }
+
+        if(csv.getRowNumber() == resumeRowNumber) {
+          System.arraycopy(resumeVars,0,vars,0,vars.length);
+        }
+        else {
+          Arrays.fill(vars,null);
+
+          for(int slot = 0; slot < columns.length; ++slot) {
+            final int column = columns[slot];
+            // Quoted, as data is never a variable
+            vars[slot] = new Arg(new LineOfCode(csv.getLineNumber(),column + 1),
+                (column < row.size()) ? row.get(column) : "",true);
+          }
+        }
+
+        try {
+          execute(buddy,main,vars,checkpoint);
+        }
+        catch(ParseCodeException ex) {
+          throw new ParseCodeException(ex.getLineOfCode(),buildRowMessage(csv,ex),ex);
+        }
+        catch(UserIsActiveException ex) {
+          if(checkpoint != null) {
+            checkpoint.fingerprint = getFingerprint();
+            checkpoint.rowNumber = csv.getRowNumber();
+          }
+
+          // Still a UserIsActiveException, for library callers that catch it to stop (or to resume later)
+          throw new UserIsActiveException(buildRowMessage(csv,ex),ex);
+        }
+        finally {
+          if(checkpoint != null) {
+            checkpoint.isCapturing = false;
+          }
+        }
+
+        ++count;
+      }
+
+      if(checkpoint != null) {
+        checkpoint.clear();
+      }
+
+      return count;
+    }
+
+    protected static String buildRowMessage(CSVReader csv,Exception ex) {
+      return "Row " + csv.getRowNumber() + " (line " + csv.getLineNumber() + " of CSV): " + ex.getMessage();
+    }
+
+    /**
+     * @return a copy of the variables of {@code checkpoint} to resume with, or null if it's null or empty
+     * @throws ParseCodeException if {@code checkpoint} is not of this program
+     */
+    protected Arg[] resume(Checkpoint checkpoint,boolean isRows) throws ParseCodeException {
+      if(checkpoint == null || checkpoint.isEmpty()) {
+        return null;
+      }
+
+      if(checkpoint.fingerprint != getFingerprint() || (checkpoint.rowNumber > 0L) != isRows
+          || checkpoint.vars == null || checkpoint.vars.length != variableSlots.size()) {
+        throw new ParseCodeException(1,1,"Checkpoint is not of this program; the code was changed");
+      }
+
+      checkpoint.isCapturing = false;
+      checkpoint.resumeIndex = 0;
+
+      return checkpoint.vars.clone();
+    }
+
+    /**
+     * @param vars       the values of the variables by slot
+     * @param checkpoint to resume from and/or to fill in if {@link UserIsActiveException} is thrown;
+     *                   can be null
+     */
+    protected void execute(BotBuddy buddy,Block block,Arg[] vars,Checkpoint checkpoint)
+        throws ParseCodeException {
+      final Checkpoint.Frame frame = (checkpoint != null) ? checkpoint.nextFrame() : null;
+
+      // Counters of nested repeats, per call, in case a method is called within its own repeat
+      final int[] counters = (frame != null) ? frame.counters
+          : ((block.counterCount > 0) ? new int[block.counterCount] : null);
+      int i = (frame != null) ? frame.index : block.start;
+
+      // Batches of this block that are open, to end them if an exception is thrown
+      int batchDepth = (frame != null) ? frame.batchDepth : 0;
+
+      for(int j = 0; j < batchDepth; ++j) {
+        buddy.beginBatch(); // Resumed within the batch, so begin it again
+      }
+
+      try {
+        while(i < block.end) {
+          switch(kinds[i]) {
+            case KIND_EXECUTOR:
+              bindings[i].execute(buddy,(argSlots[i] != null) ? bind(i,vars) : code[i]);
+              ++i;
+              break;
+
+            case KIND_CALL:
+              call(buddy,i,vars,checkpoint);
+              ++i;
+              break;
+
+            case KIND_REPEAT: {
+              final int count = toInt(i,getArg(i,0,vars));
+
+              if(count > 0) {
+                counters[operands[i]] = count;
+                ++i;
+              }
+              else {
+                i = jumps[i] + 1;
+              }
+
+              break;
+            }
+
+            case KIND_WHILE:
+            case KIND_IF: {
+              final Instruction inst = (argSlots[i] != null) ? bind(i,vars) : code[i];
+
+              i = conditions[i].test(buddy,inst,operands[i]) ? (i + 1) : (jumps[i] + 1);
+              break;
+            }
+
+            case KIND_ELSE:
+            case KIND_BREAK:
+              i = jumps[i] + 1;
+              break;
+
+            case KIND_END: {
+              final int opener = jumps[i];
+
+              if(opener < 0) {
+                ++i; // if/else
+              }
+              else if(kinds[opener] == KIND_WHILE) {
+                i = opener; // Test the condition again
+              }
+              else {
+                i = (--counters[operands[opener]] > 0) ? (opener + 1) : (i + 1);
+              }
+
+              break;
+            }
+
+            case KIND_SET:
+              vars[operands[i]] = getArg(i,1,vars);
+              ++i;
+              break;
+
+            case KIND_ADD:
+            case KIND_SUB:
+            case KIND_MUL:
+            case KIND_DIV:
+            case KIND_MOD:
+              calc(i,vars);
+              ++i;
+              break;
+
+            case KIND_BATCH:
+              buddy.beginBatch();
+              ++batchDepth;
+              ++i;
+              break;
+
+            case KIND_BATCH_END:
+              --batchDepth; // Ended even if the sync throws
+              buddy.endBatch();
+              ++i;
+              break;
+
+            default:
+              throw code[i].buildParseCodeException("Internal code is broken; unknown kind: " + kinds[i]);
+          }
+        }
+      }
+      catch(UserIsActiveException ex) {
+        if(checkpoint != null) {
+          // The in-flight instruction is executed again when resumed, so its batch must be open for it
+          final int openDepth = (kinds[i] == KIND_BATCH_END) ? (batchDepth + 1) : batchDepth;
+
+          checkpoint.capture(i,counters,vars,openDepth);
+        }
+
+        throw ex;
+      }
+      catch(ParseCodeException ex) {
+        throw ex;
+      }
+      catch(RuntimeException ex) {
+        // E.g., an IllegalArgumentException of an executor, which doesn't know the line
+        throw code[i].buildParseCodeException("Failed to execute: " + ex,ex);
+      }
+      finally {
+        // Only if an exception was thrown, as each batch is ended by its 'end' otherwise
+        for(; batchDepth > 0; --batchDepth) {
+          buddy.endBatch(false);
+        }
+      }
+    }
+
+    /**
+     * <pre>
+     * Copies code[i] with its variable args substituted with their values.
+     * </pre>
+     */
+    protected Instruction bind(int i,Arg[] vars) throws ParseCodeException {
+      Instruction inst = code[i];
+      Arg[] args = inst.args.clone();
+
+      for(int j = 0; j < args.length; ++j) {
+        if(argSlots[i][j] >= 0) {
+          args[j] = getArg(i,j,vars);
+        }
+      }
+
+      return new Instruction(inst,args);
+    }
+
+    /**
+     * <pre>
+     * Calls the user method of code[i], which wasn't inlined.
+     * Its params are set to the call's args and then restored afterward, in case it's recursive.
+     *
+     * If resuming into the method, then its params are already set (in the checkpoint's variables),
+     *   and the values to restore are from the checkpoint.
+     * </pre>
+     */
+    protected void call(BotBuddy buddy,int i,Arg[] vars,Checkpoint checkpoint) throws ParseCodeException {
+      final Block target = targets[i];
+      final int[] params = target.paramSlots;
+
+      if(params.length == 0) {
+        execute(buddy,target,vars,checkpoint);
+
+        return;
+      }
+
+      final Checkpoint.Frame resumeFrame = (checkpoint != null) ? checkpoint.peekFrame() : null;
+      Arg[] prevArgs;
+
+      if(resumeFrame != null) {
+        prevArgs = resumeFrame.prevArgs;
+      }
+      else {
+        // Get all of the args first, in case an arg uses a param (e.g., "call my_method $x")
+        Arg[] args = new Arg[params.length];
+
+        prevArgs = new Arg[params.length];
+
+        for(int j = 0; j < params.length; ++j) {
+          args[j] = getArg(i,j + 1,vars);
+        }
+        for(int j = 0; j < params.length; ++j) {
+          prevArgs[j] = vars[params[j]];
+          vars[params[j]] = args[j];
+        }
+      }
+
+      try {
+        execute(buddy,target,vars,checkpoint);
+      }
+      catch(UserIsActiveException ex) {
+        if(checkpoint != null) {
+          checkpoint.captureCall(prevArgs);
+        }
+
+        throw ex;
+      }
+      finally {
+        for(int j = 0; j < params.length; ++j) {
+          vars[params[j]] = prevArgs[j];
+        }
+      }
+    }
+
+    protected void calc(int i,Arg[] vars) throws ParseCodeException {
+      Instruction inst = code[i];
+      Arg varArg = inst.args[0];
+      Arg var = vars[operands[i]];
+
+      if(var == null) {
+        throw buildParseCodeException(varArg.loc,"Variable '" + varArg.getVariableName() + "' is not set"
+            ,inst.name);
+      }
+
+      final int x = toInt(i,var);
+      final int y = toInt(i,getArg(i,1,vars));
+      int result;
+
+      switch(kinds[i]) {
+        case KIND_ADD: result = x + y; break;
+        case KIND_SUB: result = x - y; break;
+        case KIND_MUL: result = x * y; break;
+
+        default:
+          if(y == 0) {
+            throw buildParseCodeException(inst.args[1].loc,"Division by zero",inst.name);
+          }
+
+          result = (kinds[i] == KIND_DIV) ? (x / y) : (x % y);
+          break;
+      }
+
+      vars[operands[i]] = new Arg(varArg.loc,result);
+    }
+
+    /**
+     * @return args[j] of code[i], or the value of the variable if args[j] is a variable
+     */
+    protected Arg getArg(int i,int j,Arg[] vars) throws ParseCodeException {
+      if(argSlots[i] == null || argSlots[i][j] < 0) {
+        return code[i].args[j];
+      }
+
+      Arg value = vars[argSlots[i][j]];
+
+      if(value == null) {
+        Arg arg = code[i].args[j];
+
+        throw buildParseCodeException(arg.loc,"Variable '" + arg.getVariableName() + "' is not set"
+            ,code[i].name);
+      }
+
+      return value;
+    }
+
+    protected int toInt(int i,Arg arg) throws ParseCodeException {
+      if(!arg.isInt) {
+        throw buildParseCodeException(arg.loc,"Arg '" + arg.value + "' must be an int",code[i].name);
+      }
+
+      return arg.intValue;
+    }
+
+    public ConstantPool getConstantPool() {
+      return constants;
+    }
+
+    public Executors getExecutors() {
+      return executors;
+    }
+
+    public List<String> getFields() {
+      return fields;
+    }
+
+    /**
+     * <pre>
+     * A hash of the code (&amp; fields), to check that a {@link Checkpoint} is of this program.
+     *
+     * It's only computed once; a benign race could compute it twice, but the result is the same.
+     * </pre>
+     */
+    public long getFingerprint() {
+      long result = fingerprint;
+
+      if(result == 0L) {
+        result = 17L;
+
+        for(String field: fields) {
+          result = 31L * result + field.hashCode();
+        }
+        for(Instruction inst: code) {
+          result = 31L * result + inst.id.hashCode();
+          result = 31L * result + inst.loc.getNumber();
+
+          for(Arg arg: inst.args) {
+            result = 31L * result + arg.value.hashCode();
+          }
+        }
+
+        if(result == 0L) {
+          result = 1L;
+        }
+
+        fingerprint = result;
+      }
+
+      return result;
+    }
+
+    public Instruction getInstruction(int index) {
+      return code[index];
+    }
+
+    public int getInstructionCount() {
+      return code.length;
+    }
+
+    public LineOfCode getLineOfCode(int index) {
+      return code[index].loc;
+    }
+
+    /**
+     * @return the number of top-level instructions, which are stored before the user methods
+     */
+    public int getMainLength() {
+      return mainLength;
+    }
+
+    public UserMethod getUserMethod(String id) {
+      Block block = userMethods.get(id);
+
+      return (block != null) ? block.method : null;
+    }
+
+    public int getUserMethodCount() {
+      return userMethods.size();
+    }
+
+    public int getVariableCount() {
+      return variableSlots.size();
+    }
+
+    /**
+     * @return the slot of the variable, or -1 if it's not used
+     */
+    public int getVariableSlot(String name) {
+      Integer slot = variableSlots.get(name);
+
+      return (slot != null) ? slot : -1;
+    }
+
+    /**
+     * <pre>
+     * Prepares the code of a {@link Program} before it's linked:
+     * - Renames the params of each user method to their keys (see {@link Program#toParamKey(UserMethod,String)}),
+     *     so that they don't clash with the variables of the caller when inlined.
+     * - Splits a call of multiple methods into a call for each method.
+     * - Inlines each call of a small, non-recursive user method.
+     * </pre>
+     */
+    protected static class Inliner {
+      protected final Map<String,List<Instruction>> bodies = new HashMap<>();
+      protected final Map<String,List<Instruction>> expandedBodies = new HashMap<>();
+      protected final Map<String,Boolean> inlinables = new HashMap<>();
+      protected final Map<String,Boolean> recursives = new HashMap<>();
+      protected final SymbolTable symbols;
+      protected final Map<String,UserMethod> userMethods;
+
+      public Inliner(Map<String,UserMethod> userMethods,SymbolTable symbols) throws ParseCodeException {
+        this.symbols = symbols;
+        this.userMethods = userMethods;
+
+        for(UserMethod userMethod: userMethods.values()) {
+          bodies.put(userMethod.id,renameParams(userMethod));
+        }
+      }
+
+      /**
+       * @return a copy of {@code code} with each call split and (if possible) inlined
+       */
+      public List<Instruction> expand(List<Instruction> code) throws ParseCodeException {
+        List<Instruction> result = new ArrayList<>(code.size());
+
+        for(Instruction inst: code) {
+          if(!inst.id.equals(INSTRUCTION_CALL_ID) || inst.args.length < 1) {
+            result.add(inst);
+
+            continue;
+          }
+
+          for(Arg[] callArgs: splitCall(inst)) {
+            UserMethod userMethod = userMethods.get(symbols.toID(callArgs[0].value));
+
+            if(userMethod != null && isInlinable(userMethod)) {
+              inline(result,inst,userMethod,callArgs);
+            }
+            else {
+              result.add((callArgs.length == inst.args.length) ? inst : new Instruction(inst,callArgs));
+            }
+          }
+        }
+
+        return result;
+      }
+
+      /**
+       * @return the code of the user method with its calls expanded (see {@link #expand(List)})
+       */
+      public List<Instruction> getBody(UserMethod userMethod) throws ParseCodeException {
+        List<Instruction> body = expandedBodies.get(userMethod.id);
+
+        if(body == null) {
+          body = expand(bodies.get(userMethod.id));
+
+          expandedBodies.put(userMethod.id,body);
+        }
+
+        return body;
+      }
+
+      /**
+       * <pre>
+       * Pastes the user method's code, with each param replaced by its arg.
+       *
+       * A variable arg (e.g., $x) is copied into the param first ("set $param $x"), as a call does,
+       *   so that it's passed by value: if the code changes $x, the param doesn't change too.
+       * </pre>
+       */
+      protected void inline(List<Instruction> result,Instruction callInst,UserMethod userMethod,Arg[] callArgs)
+          throws ParseCodeException {
+        final int paramCount = userMethod.params.size();
+        String[] paramKeys = new String[paramCount];
+        Arg[] paramArgs = new Arg[paramCount];
+
+        for(int i = 0; i < paramCount; ++i) {
+          final Arg callArg = callArgs[i + 1];
+
+          paramKeys[i] = toParamKey(userMethod,userMethod.params.get(i));
+
+          if(callArg.isVariable()) {
+            Instruction set = new Instruction(callInst.loc,INSTRUCTION_SET_ID,INSTRUCTION_SET_ID);
+            Arg param = new Arg(callArg.loc,(char)VARIABLE_CHAR + paramKeys[i]);
+
+            set.setArgs(new Arg[]{param,callArg});
+            result.add(set);
+
+            paramArgs[i] = param;
+          }
+          else {
+            paramArgs[i] = callArg; // A constant can't change
+          }
+        }
+
+        for(Instruction inst: getBody(userMethod)) {
+          Arg[] args = null;
+
+          for(int i = 0; i < inst.args.length; ++i) {
+            Arg arg = inst.args[i];
+
+            if(!arg.isVariable()) {
+              continue;
+            }
+
+            String name = arg.getVariableName();
+
+            for(int j = 0; j < paramCount; ++j) {
+              if(name.equals(paramKeys[j])) {
+                if(args == null) {
+                  args = inst.args.clone();
+                }
+
+                args[i] = paramArgs[j];
+                break;
+              }
+            }
+          }
+
+          result.add((args != null) ? new Instruction(inst,args) : inst);
+        }
+      }
+
+      public boolean isInlinable(UserMethod userMethod) throws ParseCodeException {
+        Boolean isInlinable = inlinables.get(userMethod.id);
+
+        if(isInlinable == null) {
+          isInlinable = !isRecursive(userMethod) && !isChangingParams(userMethod)
+              && getBody(userMethod).size() <= INLINE_MAX_LENGTH;
+
+          inlinables.put(userMethod.id,isInlinable);
+        }
+
+        return isInlinable;
+      }
+
+      protected boolean isChangingParams(UserMethod userMethod) {
+        for(Instruction inst: bodies.get(userMethod.id)) {
+          if(isVariableID(inst.id) && inst.args.length > 0) {
+            String name = inst.args[0].getVariableName();
+
+            for(String param: userMethod.params) {
+              if(name.equals(toParamKey(userMethod,param))) {
+                return true;
+              }
+            }
+          }
+        }
+
+        return false;
+      }
+
+      /**
+       * @return true if the user method can call itself (directly or not)
+       */
+      public boolean isRecursive(UserMethod userMethod) throws ParseCodeException {
+        Boolean isRecursive = recursives.get(userMethod.id);
+
+        if(isRecursive == null) {
+          isRecursive = isCalling(userMethod.id,userMethod.id,new HashMap<>());
+
+          recursives.put(userMethod.id,isRecursive);
+        }
+
+        return isRecursive;
+      }
+
+      protected boolean isCalling(String callerID,String targetID,Map<String,Boolean> visited)
+          throws ParseCodeException {
+        List<Instruction> body = bodies.get(callerID);
+
+        if(body == null || visited.put(callerID,Boolean.TRUE) != null) {
+          return false;
+        }
+
+        for(Instruction inst: body) {
+          if(!inst.id.equals(INSTRUCTION_CALL_ID) || inst.args.length < 1) {
+            continue;
+          }
+
+          for(Arg[] callArgs: splitCall(inst)) {
+            String calleeID = symbols.toID(callArgs[0].value);
+
+            if(calleeID.equals(targetID) || isCalling(calleeID,targetID,visited)) {
+              return true;
+            }
+          }
+        }
+
+        return false;
+      }
+
+      /**
+       * <pre>
+       * Renames each use of a param ($x) in the method's code to its key.
+       * </pre>
+       */
+      protected List<Instruction> renameParams(UserMethod userMethod) {
+        List<Instruction> body = new ArrayList<>(userMethod.instructions);
+
+        if(userMethod.params.isEmpty()) {
+          return body;
+        }
+
+        for(ListIterator<Instruction> it = body.listIterator(); it.hasNext();) {
+          Instruction inst = it.next();
+          Arg[] args = null;
+
+          for(int i = 0; i < inst.args.length; ++i) {
+            Arg arg = inst.args[i];
+
+            // The variable of set/add/etc. doesn't need a '$'
+            boolean isVariable = arg.isVariable()
+                || (i == 0 && !arg.isQuoted && isVariableID(inst.id));
+
+            if(isVariable && userMethod.params.contains(arg.getVariableName())) {
+              if(args == null) {
+                args = inst.args.clone();
+              }
+
+              args[i] = new Arg(arg.loc,(char)VARIABLE_CHAR + toParamKey(userMethod,arg.getVariableName()));
+            }
+          }
+
+          if(args != null) {
+            it.set(new Instruction(inst,args));
+          }
+        }
+
+        return body;
+      }
+
+      /**
+       * <pre>
+       * Splits "call a 1 2 b c" into "a 1 2", "b", "c", if "a" takes 2 params.
+       * </pre>
+       *
+       * @return the args of each call, where [0] is the method name
+       */
+      protected List<Arg[]> splitCall(Instruction inst) throws ParseCodeException {
+        List<Arg[]> calls = new ArrayList<>();
+
+        for(int i = 0; i < inst.args.length;) {
+          UserMethod userMethod = userMethods.get(symbols.toID(inst.args[i].value));
+          final int paramCount = (userMethod != null) ? userMethod.params.size() : 0;
+
+          if((i + paramCount) >= inst.args.length) {
+            throw ParseCodeException.build(inst.args[i].loc,"Method '" + userMethod.id + "' takes "
+                + paramCount + " arg(s)",inst.name);
+          }
+
+          calls.add(Arrays.copyOfRange(inst.args,i,i + 1 + paramCount));
+          i += 1 + paramCount;
+        }
+
+        return calls;
+      }
+    }
+
+    /**
+     * <pre>
+     * A user method's body (or the top-level code) in {@link Program#code}: [start,end).
+     * </pre>
+     */
+    protected static final class Block {
+      public final UserMethod method;
+      public final int start;
+      public final int end;
+
+      /**
+       * The max depth of nested repeats, which is the number of counters needed to execute it.
+       */
+      protected int counterCount = 0;
+
+      /**
+       * The variable slot of each param of {@link #method}.
+       */
+      protected int[] paramSlots = new int[0];
+
+      public Block(UserMethod method,int start,int end) {
+        this.method = method;
+        this.start = start;
+        this.end = end;
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * <b>ProgramCache</b> stores compiled {@link Program}s in a directory, in a compact binary form,
+   *   so that running the same script again doesn't need to parse it again (e.g., heredocs &amp; quotes).
+   *
+   * Each file is keyed by a hash (SHA-256) of the source, the settings that change parsing
+   *   (charset, comment char, escape char), and the IDs of the executors &amp; conditions.
+   * A Program loaded from the cache is linked again with the current executors.
+   *
+   * The binary form contains the instructions, the constant pool (each distinct string once),
+   *   the user methods, and the source positions (for errors).
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   * @see Builder#cacheDir(Path)
+   */
+  public static class ProgramCache {
+    public static final String FILE_EXT = ".bbcc";
+    public static final int MAGIC = 0x42424343; // "BBCC"
+    public static final int VERSION = 3;
+
+    protected final Path dir;
+
+    public ProgramCache(Path dir) {
+      if(dir == null) {
+        throw new IllegalArgumentException("Dir cannot be null");
+      }
+
+      this.dir = dir;
+    }
+
+    public String buildKey(Path source,Charset charset,int commentChar,int escapeChar,Executors executors)
+        throws IOException {
+      return buildKey(source,charset,commentChar,escapeChar,executors,Collections.<String>emptyList());
+    }
+
+    public String buildKey(Path source,Charset charset,int commentChar,int escapeChar,Executors executors
+        ,List<String> fields) throws IOException {
+      MessageDigest digest;
+
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      }
+      catch(NoSuchAlgorithmException ex) {
+        throw new IOException("SHA-256 is not supported",ex);
+      }
+
+      // Settings
+      StringBuilder settings = new StringBuilder();
+
+      settings.append(VERSION).append('\n');
+      settings.append(charset.name()).append('\n');
+      settings.append(commentChar).append('\n');
+      settings.append(escapeChar).append('\n');
+
+      // Executors (sorted, as the order of the map can differ)
+      List<String> ids = new ArrayList<>(executors.entries.keySet());
+
+      Collections.sort(ids);
+
+      for(String id: ids) {
+        settings.append(id).append('\n');
+      }
+
+      ids = new ArrayList<>(executors.conditions.keySet());
+
+      Collections.sort(ids);
+
+      for(String id: ids) {
+        settings.append("?").append(id).append('\n');
+      }
+
+      // Fields (in order, as it's the order of their slots)
+      for(String field: fields) {
+        settings.append("$").append(field).append('\n');
+      }
+
+      digest.update(settings.toString().getBytes(StandardCharsets.UTF_8));
+
+      // Source
+      try(InputStream in = Files.newInputStream(source)) {
+        byte[] buf = new byte[64 * 1024];
+        int len;
+
+        while((len = in.read(buf)) >= 0) {
+          digest.update(buf,0,len);
+        }
+      }
+
+      StringBuilder key = new StringBuilder(64);
+
+      for(byte b: digest.digest()) {
+        key.append(Character.forDigit((b >> 4) & 0xF,16)).append(Character.forDigit(b & 0xF,16));
+      }
+
+      return key.toString();
+    }
+
+    /**
+     * @return the Program, or null if not in the cache or if the file is not valid (e.g., an old version)
+     */
+    public Program load(String key,Executors executors,boolean isLightErrors) throws IOException {
+      return load(key,executors,Collections.<String>emptyList(),isLightErrors);
+    }
+
+    /**
+     * <pre>
+     * If the file is not valid (e.g., truncated or corrupt), it's deleted and treated as a miss,
+     *   so that it's compiled &amp; stored again.
+     * This includes failing to be linked, as the compile will then fail with the real error (if any).
+     * </pre>
+     *
+     * @return the Program, or null if not in the cache or if the file is not valid (e.g., an old version)
+     * @throws IOException if the file fails to be read (not if it's not valid)
+     */
+    public Program load(String key,Executors executors,List<String> fields,boolean isLightErrors)
+        throws IOException {
+      Path file = toPath(key);
+
+      if(!Files.isRegularFile(file)) {
+        return null;
+      }
+
+      // Read it all first, so that no length in it can be larger than the file
+      final byte[] data = Files.readAllBytes(file);
+      Program program = null;
+
+      try {
+        program = read(new DataInputStream(new ByteArrayInputStream(data)),data.length,executors,fields
+            ,isLightErrors);
+      }
+      catch(IOException | RuntimeException ex) {
+        // Not valid (e.g., EOFException if truncated, ParseCodeException if corrupt)
+      }
+
+      if(program == null) {
+        Files.deleteIfExists(file);
+      }
+
+      return program;
+    }
+
+    /**
+     * <pre>
+     * Writes to a temp file first and then moves it, so that a partial file is never loaded.
+     * </pre>
+     */
+    public void store(String key,Program program) throws IOException {
+      Files.createDirectories(dir);
+
+      Path file = toPath(key);
+      Path tempFile = Files.createTempFile(dir,key,".tmp");
+
+      try {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(tempFile)))) {
+          write(out,program);
+        }
+
+        Files.move(tempFile,file,StandardCopyOption.REPLACE_EXISTING);
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+    }
+
+    /**
+     * @return the Program, or null if the magic number or version doesn't match
+     */
+    public static Program read(DataInput in,int maxLength,Executors executors,boolean isLightErrors)
+        throws IOException,ParseCodeException {
+      return read(in,maxLength,executors,Collections.<String>emptyList(),isLightErrors);
+    }
+
+    /**
+     * @param maxLength the max length of any string or list in it (e.g., the size of the file),
+     *                  so that a corrupt length fails instead of allocating a huge array
+     * @return the Program, or null if the magic number or version doesn't match
+     * @throws IOException if a length or an index in it is not valid
+     */
+    public static Program read(DataInput in,int maxLength,Executors executors,List<String> fields
+        ,boolean isLightErrors) throws IOException,ParseCodeException {
+      if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+
+      // Constants
+      final ConstantPool constants = new ConstantPool();
+      final String[] strs = new String[readLength(in,maxLength)];
+
+      for(int i = 0; i < strs.length; ++i) {
+        byte[] bytes = new byte[readLength(in,maxLength)];
+
+        in.readFully(bytes);
+        strs[i] = constants.intern(new String(bytes,StandardCharsets.UTF_8));
+      }
+
+      final SymbolTable symbols = new SymbolTable();
+
+      // Main code
+      List<Instruction> mainCode = readInstructions(in,maxLength,strs,symbols);
+
+      // User methods
+      final int userMethodCount = readLength(in,maxLength);
+      Map<String,UserMethod> userMethods = new HashMap<>(userMethodCount * 2);
+
+      for(int i = 0; i < userMethodCount; ++i) {
+        String name = readStr(in,strs);
+        LineOfCode loc = new LineOfCode(in.readInt(),in.readInt());
+        UserMethod userMethod = new UserMethod(loc,name);
+        final int paramCount = readLength(in,maxLength);
+
+        for(int j = 0; j < paramCount; ++j) {
+          userMethod.params.add(readStr(in,strs));
+        }
+
+        userMethod.instructions.addAll(readInstructions(in,maxLength,strs,symbols));
+        userMethods.put(userMethod.id,userMethod);
+      }
+
+      return new Program(mainCode,userMethods,executors,fields,symbols,constants,isLightErrors);
+    }
+
+    protected static List<Instruction> readInstructions(DataInput in,int maxLength,String[] strs
+        ,SymbolTable symbols) throws IOException {
+      final int count = readLength(in,maxLength);
+      List<Instruction> insts = new ArrayList<>(count);
+
+      for(int i = 0; i < count; ++i) {
+        String name = readStr(in,strs);
+        LineOfCode loc = new LineOfCode(in.readInt(),in.readInt());
+        Instruction inst = new Instruction(loc,name,symbols.toID(name));
+        Arg[] args = new Arg[readLength(in,maxLength)];
+
+        for(int j = 0; j < args.length; ++j) {
+          LineOfCode argLoc = new LineOfCode(in.readInt(),in.readInt());
+
+          args[j] = new Arg(argLoc,readStr(in,strs),in.readBoolean());
+        }
+
+        inst.setArgs(args);
+        insts.add(inst);
+      }
+
+      return insts;
+    }
+
+    protected static int readLength(DataInput in,int maxLength) throws IOException {
+      final int length = in.readInt();
+
+      if(length < 0 || length > maxLength) {
+        throw new IOException("Invalid length: " + length);
+      }
+
+      return length;
+    }
+
+    protected static String readStr(DataInput in,String[] strs) throws IOException {
+      final int index = in.readInt();
+
+      if(index < 0 || index >= strs.length) {
+        throw new IOException("Invalid string index: " + index);
+      }
+
+      return strs[index];
+    }
+
+    public static void write(DataOutput out,Program program) throws IOException {
+      // Number each distinct string (names & arg values)
+      Map<String,Integer> strIndexes = new LinkedHashMap<>();
+
+      for(Instruction inst: program.code) {
+        strIndexes.putIfAbsent(inst.name,strIndexes.size());
+
+        for(Arg arg: inst.args) {
+          strIndexes.putIfAbsent(arg.value,strIndexes.size());
+        }
+      }
+      for(Program.Block block: program.userMethods.values()) {
+        strIndexes.putIfAbsent(block.method.name,strIndexes.size());
+
+        for(String param: block.method.params) {
+          strIndexes.putIfAbsent(param,strIndexes.size());
+        }
+      }
+
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      // Constants
+      out.writeInt(strIndexes.size());
+
+      for(String str: strIndexes.keySet()) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      // Main code
+      writeInstructions(out,program.code,0,program.mainLength,strIndexes);
+
+      // User methods
+      out.writeInt(program.userMethods.size());
+
+      for(Program.Block block: program.userMethods.values()) {
+        out.writeInt(strIndexes.get(block.method.name));
+        out.writeInt(block.method.loc.getNumber());
+        out.writeInt(block.method.loc.getColumn());
+        out.writeInt(block.method.params.size());
+
+        for(String param: block.method.params) {
+          out.writeInt(strIndexes.get(param));
+        }
+
+        writeInstructions(out,program.code,block.start,block.end,strIndexes);
+      }
+    }
+
+    protected static void writeInstructions(DataOutput out,Instruction[] code,int start,int end
+        ,Map<String,Integer> strIndexes) throws IOException {
+      out.writeInt(end - start);
+
+      for(int i = start; i < end; ++i) {
+        Instruction inst = code[i];
+
+        out.writeInt(strIndexes.get(inst.name));
+        out.writeInt(inst.loc.getNumber());
+        out.writeInt(inst.loc.getColumn());
+        out.writeInt(inst.args.length);
+
+        for(Arg arg: inst.args) {
+          out.writeInt(arg.loc.getNumber());
+          out.writeInt(arg.loc.getColumn());
+          out.writeInt(strIndexes.get(arg.value));
+          out.writeBoolean(arg.isQuoted);
+        }
+      }
+    }
+
+    public Path toPath(String key) {
+      return dir.resolve(key + FILE_EXT);
+    }
+
+    public Path getDir() {
+      return dir;
+    }
+  }
+
+  /**
+   * <pre>
+   * <b>SymbolTable</b> interns the IDs of names, so that {@link Instruction#toID(String)}
+   *   (a regex and a lowercase) is only done once per distinct name, instead of for every instruction.
+   *
+   * Each ID is interned, so the same ID is always the same String instance.
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  public static class SymbolTable {
+    protected final Map<String,String> ids = new ConcurrentHashMap<>();
+
+    public String toID(String name) {
+      String id = ids.get(name);
+
+      if(id == null) {
+        id = Instruction.toID(name);
+
+        // Intern the ID itself too, as different names can have the same ID ("get_coords" & "getCoords")
+        String prevID = ids.putIfAbsent(id,id);
+
+        if(prevID != null) {
+          id = prevID;
+        }
+
+        ids.put(name,id);
+      }
+
+      return id;
+    }
+
+    public int getSize() {
+      return ids.size();
+    }
+  }
+
+  /**
+   * @author Jonathan Bradley Whited
+   */
+  public static class UserMethod extends Instruction {
+    public List<Instruction> instructions = new LinkedList<>();
+
+    /**
+     * <pre>
+     * The names of the positional params (e.g., "def my_method x y"), which are used as variables ($x).
+     * </pre>
+     */
+    public List<String> params = new ArrayList<>();
 
     public UserMethod(int lineNumber,int lineColumn,String name) {
       this(new LineOfCode(lineNumber,lineColumn),name);
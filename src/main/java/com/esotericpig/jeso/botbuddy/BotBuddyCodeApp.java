@@ -8,6 +8,7 @@
 package com.esotericpig.jeso.botbuddy;
 
 import com.esotericpig.jeso.code.ParseCodeException;
+import com.esotericpig.jeso.io.CSVReader;
 import java.awt.AWTException;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -15,6 +16,7 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * <pre>
@@ -25,6 +27,10 @@ import java.nio.file.Paths;
  * @author Jonathan Bradley Whited
  */
 public class BotBuddyCodeApp {
+  public static final String CHECKPOINT_EXT = ".checkpoint";
+  public static final Path DEFAULT_CACHE_DIR = Paths.get(System.getProperty("user.home"),".cache","jeso"
+      ,"botbuddycode");
+
   public static void main(String[] args) {
     try {
       BotBuddyCodeApp app = new BotBuddyCodeApp(args);
@@ -62,14 +68,18 @@ public class BotBuddyCodeApp {
   protected BotBuddy buddy = null;
   protected BotBuddyCode.Builder builder = BotBuddyCode.builder();
   protected int indent = 4;
+  protected boolean isCached = false;
   protected boolean isDryRun = false;
+  protected boolean isResumed = false;
   protected String name = getClass().getSimpleName();
   protected int optionsIndent = 24;
   protected Path path = null;
+  protected Path rowsPath = null;
 
   public BotBuddyCodeApp(String[] args) throws AWTException {
     this.args = args.clone();
-    buddy = BotBuddy.builder().build();
+    // Sample the mouse in the background for Safe Mode, so that long delays stop as soon as the user is active
+    buddy = BotBuddy.builder().monitorRate(BotBuddy.DEFAULT_MONITOR_RATE).build();
 
     builder.buddy(buddy);
   }
@@ -87,19 +97,91 @@ public class BotBuddyCodeApp {
     }
 
     // Clear piped-in input
-    builder.input().path(path);
+    builder.input().path(path).mapped(true).cacheDir(isCached ? DEFAULT_CACHE_DIR : null);
+
+    if(!isDryRun) {
+      return interpretWithCheckpoint();
+    }
 
     try(BotBuddyCode bbc = builder.build()) {
-      if(isDryRun) {
-        System.out.println(bbc.interpretDryRun());
+      // Stream it, so that huge scripts are output immediately (e.g., piped into grep)
+      bbc.interpretDryRun(System.out);
+      System.out.println();
+
+      return true;
+    }
+    finally {
+      buddy.releasePressed();
+    }
+  }
+
+  /**
+   * <pre>
+   * Compiles the file and executes it, or executes it for each row of the CSV file
+   *   with each column of the header as a variable (e.g., $Hanzi).
+   *
+   * If the user is active (see Safe Mode), then where it stopped is stored in a checkpoint file,
+   *   which is resumed from with {@code --resume}.
+   * </pre>
+   */
+  public boolean interpretWithCheckpoint() throws IOException,ParseCodeException {
+    final Path checkpointPath = Paths.get(path.toString() + CHECKPOINT_EXT);
+    BotBuddyCode.Checkpoint checkpoint = isResumed ? BotBuddyCode.Checkpoint.load(checkpointPath)
+        : new BotBuddyCode.Checkpoint();
+    CSVReader csv = null;
+    BotBuddyCode.Program program = null;
+
+    if(isResumed && checkpoint.isEmpty()) {
+      System.out.println("No checkpoint to resume from; starting from the beginning.");
+    }
+
+    try {
+      if(rowsPath != null) {
+        csv = new CSVReader(Files.newBufferedReader(rowsPath));
+
+        List<String> header = csv.readHeader();
+
+        if(header == null) {
+          System.out.println("Error: CSV file is empty: " + rowsPath.toFile().getAbsolutePath());
+
+          return true;
+        }
+
+        builder.fields(header);
+      }
+
+      program = builder.compile();
+
+      if(csv != null) {
+        long count = program.executeEachRow(buddy,csv,checkpoint);
+
+        System.out.println("Executed " + count + " row(s).");
       }
       else {
-        bbc.interpret();
+        program.execute(buddy,checkpoint);
       }
 
+      Files.deleteIfExists(checkpointPath);
+
       return true;
     }
+    catch(UserIsActiveException ex) {
+      if(program != null && !checkpoint.isEmpty()) {
+        checkpoint.store(checkpointPath);
+
+        System.out.println("Stopped at line " + program.getLineOfCode(checkpoint.getIndex()).getNumber()
+            + ((checkpoint.getRowNumber() > 0L) ? (" of row " + checkpoint.getRowNumber()) : "") + ".");
+        System.out.println("Checkpoint saved to " + checkpointPath.toFile().getAbsolutePath()
+            + "; use --resume to continue from there.");
+      }
+
+      throw ex;
+    }
     finally {
+      if(csv != null) {
+        csv.close();
+      }
+
       buddy.releasePressed();
     }
   }
@@ -119,7 +201,9 @@ public class BotBuddyCodeApp {
       BotBuddyCode bbc = builder.input(input).build();
 
       if(isDryRun) {
-        System.out.println(bbc.interpretDryRun());
+        // Stream it, so that huge scripts are output immediately (e.g., piped into grep)
+        bbc.interpretDryRun(System.out);
+        System.out.println();
       }
       else {
         bbc.interpret();
@@ -133,15 +217,38 @@ public class BotBuddyCodeApp {
   }
 
   public boolean parseArgs() {
-    for(String arg: args) {
+    for(int i = 0; i < args.length; ++i) {
+      String arg = args[i];
+
       if(arg.equals("-h") || arg.equals("--help")) {
         printHelp();
 
         return true;
       }
+      else if(arg.equals("-c") || arg.equals("--cache")) {
+        isCached = true;
+      }
       else if(arg.equals("-n") || arg.equals("--dry-run")) {
         isDryRun = true;
       }
+      else if(arg.equals("--resume")) {
+        isResumed = true;
+      }
+      else if(arg.equals("-r") || arg.equals("--rows")) {
+        if(++i >= args.length) {
+          printHelp("Error: No CSV file specified for " + arg + ".");
+
+          return true;
+        }
+
+        rowsPath = Paths.get(args[i].trim());
+
+        if(Files.notExists(rowsPath)) {
+          printHelp("Error: CSV file does not exist: " + rowsPath.toFile().getAbsolutePath());
+
+          return true;
+        }
+      }
       else {
         if(path != null) {
           printHelp("Error: Too many files specified; only one file is allowed.");
@@ -173,13 +280,21 @@ public class BotBuddyCodeApp {
     println("Data can also be piped in, without using a file.");
     println();
     println("Options:");
+    println("{i}-c, --cache {o} Cache the compiled <file> to load it faster next time");
     println("{i}-n, --dry-run {o} Do not execute any code, only output the interpretation");
+    println("{i}-r, --rows <csv> {o} Execute <file> once for each row of <csv>,");
+    println("{i}{o} with each column of its header as a variable (e.g., $Hanzi)");
+    println("{i}--resume {o} Continue from where <file> was stopped by the user (Safe Mode),");
+    println("{i}{o} using <file>.checkpoint, instead of from the beginning");
     println("{i}---");
     println("{i}-h, --help {o} Print this help");
     println();
     println("Examples:");
     println("{i}{n} -n mydir/myfile.bbc");
     println("{i}{n} 'My Dir/My File.bbc'");
+    println("{i}{n} -c mydir/myfile.bbc");
+    println("{i}{n} -r buffl.csv buffl.bbc");
+    println("{i}{n} --resume -r buffl.csv buffl.bbc");
     println("{i}echo 'get_coords' | {n}");
 
     if(errorMessage != null) {
@@ -0,0 +1,261 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * The pacing of pasting a large text in chunks (see {@link BotBuddy#pasteChunks(String,int,Point)}),
+ *   apart from the events, so that it can be tested without a Robot or a real clipboard.
+ *
+ * A chunk is never copied over until the target has read the previous one (if the clipboard can be watched),
+ *   else the previous one would be lost and the next one pasted twice.
+ * If the target stalls, it backs off and keeps waiting, and fails after {@link #MAX_STALL_COUNT} long delays.
+ *
+ * This class is not thread-safe.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public abstract class ChunkPaster {
+  /**
+   * The max number of long delays to wait for a stalled target to read a chunk, before failing.
+   */
+  public static final int MAX_STALL_COUNT = 10;
+
+  /**
+   * <pre>
+   * Breaks after a line break in the last half of the chunk, if any, and never in a surrogate pair.
+   * </pre>
+   *
+   * @return the end index (exclusive) of the chunk of at most {@code size} chars (unless a surrogate pair)
+   */
+  public static int findChunkEnd(String text,int start,int size) {
+    if((text.length() - start) <= size) {
+      return text.length();
+    }
+
+    final int end = start + size;
+    final int lineEnd = text.lastIndexOf('\n',end - 1);
+
+    if(lineEnd >= (start + (size >> 1))) {
+      return lineEnd + 1;
+    }
+    if(Character.isHighSurrogate(text.charAt(end - 1))) {
+      return ((end - 1) > start) ? (end - 1) : (end + 1);
+    }
+
+    return end;
+  }
+
+  protected final int fastDelay;
+  protected final int longDelay;
+  protected final int shortDelay;
+
+  /**
+   * @param fastDelay  how long a watched pixel must stay the same to be settled
+   * @param shortDelay a chunk consumed within this doubles the next one
+   * @param longDelay  a chunk not consumed within this halves the next one
+   */
+  public ChunkPaster(int fastDelay,int shortDelay,int longDelay) {
+    this.fastDelay = fastDelay;
+    this.longDelay = longDelay;
+    this.shortDelay = shortDelay;
+  }
+
+  protected abstract void copy(ChunkSelection chunk);
+
+  protected abstract void delay(int delay);
+
+  protected abstract Color getPixel(Point coords);
+
+  protected abstract void paste();
+
+  protected abstract void waitForIdle();
+
+  protected long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * <pre>
+   * See {@link BotBuddy#pasteChunks(String,int,Point)}.
+   * </pre>
+   *
+   * @param chunkSize the max number of chars in a chunk (it breaks at a line break near the end, if any)
+   * @param watch     the coords of a pixel to watch, else null
+   * @throws IllegalStateException if the target stalls on a chunk (see {@link #waitForRead(ChunkSelection,int)})
+   */
+  public void pasteChunks(String text,int chunkSize,Point watch) {
+    if(chunkSize < 1) {
+      throw new IllegalArgumentException("Chunk size must be at least 1");
+    }
+
+    final int length = text.length();
+    final int minSize = Math.min(BotBuddy.MIN_PASTE_CHUNK_SIZE,chunkSize);
+    final long shortNanos = TimeUnit.MILLISECONDS.toNanos(shortDelay);
+    boolean isClipWatched = true; // Until the platform is found to read it when copied, instead of when pasted
+    int size = chunkSize;
+
+    for(int start = 0; start < length; ) {
+      final int end = findChunkEnd(text,start,size);
+      final ChunkSelection chunk = new ChunkSelection(text.substring(start,end),start);
+      final Color pixel = (watch != null) ? getPixel(watch) : null;
+
+      copy(chunk);
+
+      // If requested when set (e.g., the platform copies it right away), then it can't be watched
+      final int readCount = chunk.getReadCount();
+
+      if(readCount > 0) {
+        isClipWatched = false;
+      }
+
+      paste();
+
+      final long pasteTime = nanoTime();
+
+      if(waitForChunk(chunk,isClipWatched ? readCount : -1,watch,pixel)) {
+        if((nanoTime() - pasteTime) < shortNanos) {
+          size = (int)Math.min((long)size << 1,chunkSize);
+        }
+      }
+      else {
+        // Never copy over a chunk that hasn't been read
+        if(isClipWatched) {
+          waitForRead(chunk,readCount);
+        }
+
+        size = Math.max(size >> 1,minSize);
+      }
+
+      start = end;
+    }
+  }
+
+  /**
+   * @param readCount the read count of {@code chunk} when pasted, else -1 to not watch the clipboard
+   * @return true if consumed, else false if timed out (the long delay)
+   */
+  protected boolean waitForChunk(ChunkSelection chunk,int readCount,Point watch,Color pixel) {
+    if(readCount < 0 && watch == null) {
+      waitForIdle();
+      delay(shortDelay);
+
+      return true;
+    }
+
+    final long settleNanos = TimeUnit.MILLISECONDS.toNanos(fastDelay);
+    final long start = nanoTime();
+    final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(longDelay);
+    boolean isRead = (readCount < 0);
+    long changeTime = 0L;
+    boolean isChanged = false;
+
+    while(true) {
+      final long now = nanoTime();
+
+      if(!isRead) {
+        isRead = (chunk.getReadCount() > readCount);
+      }
+
+      boolean isSettled = true;
+
+      if(watch != null) {
+        final Color newPixel = getPixel(watch);
+
+        if(!newPixel.equals(pixel)) {
+          pixel = newPixel;
+          changeTime = now;
+          isChanged = true;
+        }
+
+        isSettled = isChanged && (now - changeTime) >= settleNanos;
+      }
+
+      if(isRead && isSettled) {
+        return true;
+      }
+      if((now - start) >= timeoutNanos) {
+        return false;
+      }
+
+      delay(BotBuddy.PASTE_CHECK_DELAY);
+    }
+  }
+
+  /**
+   * <pre>
+   * Waits for a stalled target to read {@code chunk}, doubling the time between checks up to the long delay.
+   * </pre>
+   *
+   * @param readCount the read count of {@code chunk} when pasted
+   * @throws IllegalStateException if not read within {@link #MAX_STALL_COUNT} long delays,
+   *                               instead of losing it
+   */
+  protected void waitForRead(ChunkSelection chunk,int readCount) {
+    final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos((long)longDelay * MAX_STALL_COUNT);
+    final long start = nanoTime();
+    final int maxDelay = Math.max(longDelay,BotBuddy.PASTE_CHECK_DELAY);
+    int checkDelay = BotBuddy.PASTE_CHECK_DELAY;
+
+    while(chunk.getReadCount() <= readCount) {
+      if((nanoTime() - start) >= timeoutNanos) {
+        throw new IllegalStateException("The target did not read the chunk at char " + chunk.getStart()
+            + " of the paste within " + (MAX_STALL_COUNT + 1) + " long delays; stopped instead of losing it");
+      }
+
+      delay(checkDelay);
+      checkDelay = Math.min(checkDelay << 1,maxDelay);
+    }
+  }
+
+  /**
+   * <pre>
+   * A StringSelection that counts the requests for its data, to know when the target has consumed it.
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  public static class ChunkSelection extends StringSelection {
+    protected final AtomicInteger readCount = new AtomicInteger(0); // Requested on other threads
+    protected final int start;
+
+    /**
+     * @param start the index of the chunk in the text
+     */
+    public ChunkSelection(String data,int start) {
+      super(data);
+
+      this.start = start;
+    }
+
+    @Override
+    public Object getTransferData(DataFlavor flavor) throws IOException,UnsupportedFlavorException {
+      readCount.incrementAndGet();
+
+      return super.getTransferData(flavor);
+    }
+
+    public int getReadCount() {
+      return readCount.get();
+    }
+
+    public int getStart() {
+      return start;
+    }
+  }
+}
@@ -15,19 +15,27 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * FIXME: Will this (VK_SHIFT, etc.) work for Mac OS X?
  * <p>
- * FIXME: '#' (VK_NUMBER_SIGN) is 'Shift+3' on US keyboard, but no 'Shift' on UK keyboard
- *        - have to make it generic somehow (classes?) and choose (class)
- *        - default auto-chooses w/ KeyEvent.getKeyModifiersText()
+ * The keys of a char depend on the layout (e.g., '#' is 'Shift+3' on a US keyboard, but its own key
+ * on a UK one); see {@link #UK_LAYOUT}.
+ * The static methods use the US layout ({@link #US_LAYOUT}). The built-in layouts can be gotten by name
+ * with {@link #getLayout(String)}; see {@link KeyLayout} for loading your own.
+ * <p>
+ * The char codes are stored in a table of pages (of 256 code points each) indexed by code point,
+ * so a lookup doesn't box the code point. The char codes of
+ * {@link KeyEvent#getExtendedKeyCodeForChar(int)} are cached the first time that each code point is
+ * looked up (including misses), so typing the same chars again does no string or AWT work.
+ * <p>
+ * The returned arrays are shared, so don't modify them.
  *
  * @author Jonathan Bradley Whited
  * @see BotBuddy
@@ -35,7 +43,28 @@ import java.util.stream.Collectors;
  * @since 0.3.5
  */
 public final class KeyCodes {
-  private static final Map<Integer,int[]> CHAR_CODES = new HashMap<>();
+  /**
+   * The default layout, filled in below.
+   */
+  public static final KeyLayout US_LAYOUT = new KeyLayout("US");
+
+  private static final Map<Integer,int[]> EX_CHAR_CODES = new ConcurrentHashMap<>();
+  private static final int[] NO_CHAR_CODES = new int[0]; // For caching a miss
+
+  /**
+   * The modifier masks of {@link InputEvent#getModifiersExText(int)} (in the same order)
+   * and their codes.
+   */
+  private static final int[][] MODIFIER_CODES = {
+    {InputEvent.META_DOWN_MASK,KeyEvent.VK_META},
+    {InputEvent.CTRL_DOWN_MASK,KeyEvent.VK_CONTROL},
+    {InputEvent.ALT_DOWN_MASK,KeyEvent.VK_ALT},
+    {InputEvent.SHIFT_DOWN_MASK,KeyEvent.VK_SHIFT},
+    {InputEvent.ALT_GRAPH_DOWN_MASK,KeyEvent.VK_ALT_GRAPH},
+    {InputEvent.BUTTON1_DOWN_MASK,InputEvent.BUTTON1_DOWN_MASK},
+    {InputEvent.BUTTON2_DOWN_MASK,InputEvent.BUTTON2_DOWN_MASK},
+    {InputEvent.BUTTON3_DOWN_MASK,InputEvent.BUTTON3_DOWN_MASK},
+  };
 
   static {
     // Generated with #generateAndPrintCharCodes() and then edited by hand.
@@ -144,6 +173,91 @@ public final class KeyCodes {
     putCharCodesSafely('€',new int[]{KeyEvent.VK_SHIFT,KeyEvent.VK_EURO_SIGN});
   }
 
+  // The other built-in layouts (after the US layout is filled in above).
+  //
+  // Only the keys that type the same char on both Windows & X11 for the layout are mapped:
+  //   letters, digits, '-', ',', '.', and the modifiers (e.g., Shift+2 is '"' on UK).
+  // A char of the US layout that can't be mapped is removed, so that it's pasted instead of mistyped.
+
+  public static final KeyLayout DE_LAYOUT = buildDELayout();
+  public static final KeyLayout JIS_LAYOUT = buildJISLayout();
+  public static final KeyLayout UK_LAYOUT = buildUKLayout();
+
+  private static KeyLayout buildDELayout() {
+    KeyLayout layout = new KeyLayout("DE",US_LAYOUT);
+
+    putShiftedDigits(layout,"=!\"§$%&/()");
+    removeChars(layout,"#'*+<>?\\^`|~¡");
+
+    layout.put('@',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_Q);
+    layout.put('[',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_8);
+    layout.put(']',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_9);
+    layout.put('_',KeyEvent.VK_SHIFT,KeyEvent.VK_MINUS);
+    layout.put('{',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_7);
+    layout.put('}',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_0);
+    layout.put(':',KeyEvent.VK_SHIFT,KeyEvent.VK_PERIOD);
+    layout.put(';',KeyEvent.VK_SHIFT,KeyEvent.VK_COMMA);
+    layout.put('²',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_2);
+    layout.put('³',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_3);
+    layout.put('µ',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_M);
+    layout.put('€',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_E);
+
+    return layout;
+  }
+
+  private static KeyLayout buildJISLayout() {
+    KeyLayout layout = new KeyLayout("JIS",US_LAYOUT);
+
+    putShiftedDigits(layout,"\0!\"#$%&'()");
+    removeChars(layout,"*+:@[\\]^_`{|}~¡€");
+
+    layout.put('<',KeyEvent.VK_SHIFT,KeyEvent.VK_COMMA);
+    layout.put('=',KeyEvent.VK_SHIFT,KeyEvent.VK_MINUS);
+    layout.put('>',KeyEvent.VK_SHIFT,KeyEvent.VK_PERIOD);
+
+    return layout;
+  }
+
+  private static KeyLayout buildUKLayout() {
+    KeyLayout layout = new KeyLayout("UK",US_LAYOUT);
+
+    putShiftedDigits(layout,")!\"£$%^&*(");
+    removeChars(layout,"#@\\|~¡");
+
+    layout.put('€',KeyEvent.VK_ALT_GRAPH,KeyEvent.VK_4);
+
+    return layout;
+  }
+
+  private static void putShiftedDigits(KeyLayout layout,String chars) {
+    for(int i = 0; i < chars.length(); ++i) {
+      if(chars.charAt(i) != '\0') {
+        layout.put(chars.charAt(i),KeyEvent.VK_SHIFT,KeyEvent.VK_0 + i);
+      }
+    }
+  }
+
+  private static void removeChars(KeyLayout layout,String chars) {
+    chars.codePoints().forEach(layout::remove);
+  }
+
+  /**
+   * @param name the name of a built-in layout (e.g., "UK"), in any case;
+   *             "GB" is also the UK layout, and "JP" is also the JIS layout
+   * @return null if not found, else the built-in layout
+   */
+  public static KeyLayout getLayout(String name) {
+    switch(name.toUpperCase(Locale.ENGLISH)) {
+      case "DE": return DE_LAYOUT;
+      case "GB":
+      case "UK": return UK_LAYOUT;
+      case "JIS":
+      case "JP": return JIS_LAYOUT;
+      case "US": return US_LAYOUT;
+      default:   return null;
+    }
+  }
+
   public static int[] getCharCodes(int keyChar) {
     return getCharCodes(keyChar,true);
   }
@@ -155,51 +269,52 @@ public final class KeyCodes {
    * @return null if not found, else int[] of keyChar's key codes
    */
   public static int[] getCharCodes(int keyChar,boolean getExKeyCode) {
-    int[] keyCodes = CHAR_CODES.get(keyChar);
-
-    if(keyCodes == null && getExKeyCode) {
-      int keyCode = KeyEvent.getExtendedKeyCodeForChar(keyChar);
-
-      if(keyCode != KeyEvent.VK_UNDEFINED) {
-        List<Integer> keyCodeList = new ArrayList<>();
-        String[] keyModsText = InputEvent.getModifiersExText(keyCode)
-            .trim().toLowerCase(Locale.ENGLISH).split("\\s+")[0].split("\\+");
-
-        for(String keyModText: keyModsText) {
-          int kc;
-
-          switch(keyModText) {
-            case "alt": kc = KeyEvent.VK_ALT; break;
-            case "button1": kc = KeyEvent.BUTTON1_DOWN_MASK; break;
-            case "button2": kc = KeyEvent.BUTTON2_DOWN_MASK; break;
-            case "button3": kc = KeyEvent.BUTTON3_DOWN_MASK; break;
-            case "ctrl": kc = KeyEvent.VK_CONTROL; break;
-            case "graph": kc = KeyEvent.VK_ALT_GRAPH; break;
-            case "meta": kc = KeyEvent.VK_META; break;
-            case "shift": kc = KeyEvent.VK_SHIFT; break;
-            default: kc = KeyEvent.VK_UNDEFINED; break;
-          }
+    return US_LAYOUT.getCharCodes(keyChar,getExKeyCode);
+  }
 
-          if(kc != KeyEvent.VK_UNDEFINED) {
-            keyCodeList.add(kc);
-          }
-        }
+  /**
+   * @return null if not found, else the (cached) char codes of {@link KeyEvent#getExtendedKeyCodeForChar(int)}
+   */
+  static int[] getExCharCodes(int keyChar) {
+    if(!Character.isValidCodePoint(keyChar)) {
+      return null;
+    }
 
-        keyCodeList.add(keyCode);
+    final int[] keyCodes = EX_CHAR_CODES.computeIfAbsent(keyChar,KeyCodes::buildExCharCodes);
 
-        keyCodes = new int[keyCodeList.size()];
+    return (keyCodes != NO_CHAR_CODES) ? keyCodes : null;
+  }
 
-        for(int i = 0; i < keyCodes.length; ++i) {
-          keyCodes[i] = keyCodeList.get(i);
-        }
+  /**
+   * @return the modifiers (as in {@link InputEvent#getModifiersExText(int)}) and the key code of
+   *         {@link KeyEvent#getExtendedKeyCodeForChar(int)}, or {@link #NO_CHAR_CODES} if undefined
+   */
+  private static int[] buildExCharCodes(int keyChar) {
+    final int keyCode = KeyEvent.getExtendedKeyCodeForChar(keyChar);
+
+    if(keyCode == KeyEvent.VK_UNDEFINED) {
+      return NO_CHAR_CODES;
+    }
+
+    int[] keyCodes = new int[MODIFIER_CODES.length + 1];
+    int count = 0;
+
+    for(int[] modifierCode: MODIFIER_CODES) {
+      if((keyCode & modifierCode[0]) != 0) {
+        keyCodes[count++] = modifierCode[1];
       }
     }
 
-    return keyCodes;
+    keyCodes[count++] = keyCode;
+
+    return Arrays.copyOf(keyCodes,count);
   }
 
+  /**
+   * @throws IllegalArgumentException if {@code keyChar} is not a valid code point
+   */
   public static int[] putCharCodes(int keyChar,int[] keyCodes) {
-    return CHAR_CODES.put(keyChar,keyCodes);
+    return US_LAYOUT.put(keyChar,keyCodes);
   }
 
   /**
@@ -207,10 +322,10 @@ public final class KeyCodes {
    *
    * @param keyChar  code point key
    * @param keyCodes of KeyEvent value
-   * @return result of Map#put(...)
+   * @return the previous key codes, else null
    */
   public static int[] putCharCodesSafely(int keyChar,int[] keyCodes) {
-    if(CHAR_CODES.containsKey(keyChar)) {
+    if(getCharCodes(keyChar,false) != null) {
       String keyStr = Chars.toString(keyChar);
       String keyText = Arrays.stream(keyCodes)
                              .mapToObj(KeyEvent::getKeyText)
@@ -268,15 +383,14 @@ public final class KeyCodes {
           code.add(new String[]{"\0","'" + keyText + "'|" + vkName,vkName});
         }
 
-        boolean hasKeyCode = CHAR_CODES.values().stream()
-            .anyMatch(kcs -> Arrays.stream(kcs).anyMatch(kc -> kc == keyCode));
+        boolean hasKeyCode = US_LAYOUT.contains(keyCode);
 
         for(String[] c: code) {
           keyChar = c[0].codePointAt(0);
           keyText = c[1];
           vkName = c[2];
 
-          if(hasKeyCode || CHAR_CODES.containsKey(keyChar)) {
+          if(hasKeyCode || getCharCodes(keyChar,false) != null) {
             codes.put(vkName,keyText);
           }
           else {
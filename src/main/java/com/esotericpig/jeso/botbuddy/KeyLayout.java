@@ -0,0 +1,270 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2020-2022 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <pre>
+ * The char codes (key codes) to type each char on a keyboard layout, for {@link BotBuddy#type(String)}.
+ *
+ * The char codes are stored in a table of pages (of 256 code points each) indexed by code point,
+ *   so a lookup doesn't box the code point.
+ * The built-in layouts are in {@link KeyCodes} (e.g., {@link KeyCodes#UK_LAYOUT}).
+ *
+ * A layout can also be loaded from a profile (see {@link #load(BufferedReader)}):
+ *   # Comment
+ *   name  UK-Mac
+ *   base  UK
+ *
+ *   "      shift 2
+ *   U+00A3 shift 3
+ *   @      none
+ *
+ * - name: the name of the layout (else, "Custom"); must be first
+ * - base: a built-in layout to copy (else, empty); must be before the chars
+ * - Each other line is a char (or "U+" and its hex code point) and its key codes (KeyEvent.VK_*),
+ *     with or without "VK_", in any case.
+ *   - "none" removes the char, so that it's pasted instead.
+ *   - Use U+0023 for '#' and U+0020 for ' ', as they would be a comment or whitespace.
+ *
+ * A layout is not thread-safe to change, so change it before sharing it (e.g., with a copy of a built-in).
+ * The returned arrays are shared, so don't modify them.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ * @see KeyCodes
+ */
+public class KeyLayout {
+  protected static final int PAGE_BITS = 8;
+  protected static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+  protected final int[][][] charCodes = new int[(Character.MAX_CODE_POINT >>> PAGE_BITS) + 1][][];
+  protected final String name;
+
+  public KeyLayout(String name) {
+    this.name = name;
+  }
+
+  /**
+   * <pre>
+   * Copies the char codes of {@code base}.
+   * </pre>
+   */
+  public KeyLayout(String name,KeyLayout base) {
+    this(name);
+
+    for(int i = 0; i < charCodes.length; ++i) {
+      if(base.charCodes[i] != null) {
+        charCodes[i] = base.charCodes[i].clone();
+      }
+    }
+  }
+
+  public static KeyLayout load(Path file) throws IOException {
+    try(BufferedReader in = Files.newBufferedReader(file,StandardCharsets.UTF_8)) {
+      return load(in);
+    }
+  }
+
+  /**
+   * @throws IOException if a line is invalid, or if it fails to be read
+   */
+  public static KeyLayout load(BufferedReader in) throws IOException {
+    KeyLayout layout = null;
+    String layoutName = "Custom";
+    int lineNumber = 0;
+
+    for(String line; (line = in.readLine()) != null; ) {
+      ++lineNumber;
+
+      final String[] parts = line.trim().split("\\s+");
+
+      if(parts[0].isEmpty() || parts[0].charAt(0) == '#') {
+        continue;
+      }
+      if(parts.length < 2) {
+        throw new IOException("No key codes for '" + parts[0] + "' on line " + lineNumber);
+      }
+
+      // Settings
+      if(layout == null) {
+        if(parts[0].equals("name")) {
+          layoutName = parts[1];
+
+          continue;
+        }
+        if(parts[0].equals("base")) {
+          KeyLayout base = KeyCodes.getLayout(parts[1]);
+
+          if(base == null) {
+            throw new IOException("Invalid base layout '" + parts[1] + "' on line " + lineNumber);
+          }
+
+          layout = new KeyLayout(layoutName,base);
+
+          continue;
+        }
+
+        layout = new KeyLayout(layoutName);
+      }
+
+      final int keyChar = parseChar(parts[0],lineNumber);
+
+      if(parts[1].equalsIgnoreCase("none")) {
+        layout.remove(keyChar);
+
+        continue;
+      }
+
+      int[] keyCodes = new int[parts.length - 1];
+
+      for(int i = 1; i < parts.length; ++i) {
+        keyCodes[i - 1] = parseKeyCode(parts[i],lineNumber);
+      }
+
+      layout.put(keyChar,keyCodes);
+    }
+
+    return (layout != null) ? layout : new KeyLayout(layoutName);
+  }
+
+  protected static int parseChar(String text,int lineNumber) throws IOException {
+    if(text.length() > 2 && (text.startsWith("U+") || text.startsWith("u+"))) {
+      try {
+        final int keyChar = Integer.parseInt(text.substring(2),16);
+
+        if(Character.isValidCodePoint(keyChar)) {
+          return keyChar;
+        }
+      }
+      catch(NumberFormatException ex) {
+        // Thrown below
+      }
+    }
+    else if(text.codePointCount(0,text.length()) == 1) {
+      return text.codePointAt(0);
+    }
+
+    throw new IOException("Invalid char '" + text + "' on line " + lineNumber);
+  }
+
+  /**
+   * <pre>
+   * Uses reflection to get the field of KeyEvent, but only when loading.
+   * </pre>
+   */
+  protected static int parseKeyCode(String text,int lineNumber) throws IOException {
+    String fieldName = text.toUpperCase(Locale.ENGLISH);
+
+    if(!fieldName.startsWith("VK_")) {
+      fieldName = "VK_" + fieldName;
+    }
+
+    try {
+      Field field = KeyEvent.class.getField(fieldName);
+
+      if(field.getType().equals(int.class)) {
+        return field.getInt(null);
+      }
+    }
+    catch(IllegalAccessException | NoSuchFieldException | SecurityException ex) {
+      throw new IOException("Invalid key code '" + text + "' on line " + lineNumber,ex);
+    }
+
+    throw new IOException("Invalid key code '" + text + "' on line " + lineNumber);
+  }
+
+  /**
+   * @return true if any char codes have {@code keyCode}
+   */
+  public boolean contains(int keyCode) {
+    for(int[][] page: charCodes) {
+      if(page != null) {
+        for(int[] keyCodes: page) {
+          if(keyCodes != null && Arrays.stream(keyCodes).anyMatch(kc -> kc == keyCode)) {
+            return true;
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return the previous key codes, else null
+   * @throws IllegalArgumentException if {@code keyChar} is not a valid code point
+   */
+  public int[] put(int keyChar,int... keyCodes) {
+    if(!Character.isValidCodePoint(keyChar)) {
+      throw new IllegalArgumentException("Invalid code point: " + keyChar);
+    }
+
+    int[][] page = charCodes[keyChar >>> PAGE_BITS];
+
+    if(page == null) {
+      page = new int[PAGE_MASK + 1][];
+      charCodes[keyChar >>> PAGE_BITS] = page;
+    }
+
+    final int[] prevKeyCodes = page[keyChar & PAGE_MASK];
+
+    page[keyChar & PAGE_MASK] = keyCodes;
+
+    return prevKeyCodes;
+  }
+
+  /**
+   * @return the previous key codes, else null
+   */
+  public int[] remove(int keyChar) {
+    return put(keyChar,(int[])null);
+  }
+
+  /**
+   * @return null if not found, else the key codes of {@code keyChar}
+   */
+  public int[] get(int keyChar) {
+    if(!Character.isValidCodePoint(keyChar)) {
+      return null;
+    }
+
+    final int[][] page = charCodes[keyChar >>> PAGE_BITS];
+
+    return (page != null) ? page[keyChar & PAGE_MASK] : null;
+  }
+
+  /**
+   * @param getExKeyCode true to try {@link KeyEvent#getExtendedKeyCodeForChar(int)} if not found
+   *                     (see {@link KeyCodes#getCharCodes(int,boolean)})
+   * @return null if not found, else the key codes of {@code keyChar}
+   */
+  public int[] getCharCodes(int keyChar,boolean getExKeyCode) {
+    final int[] keyCodes = get(keyChar);
+
+    return (keyCodes == null && getExKeyCode) ? KeyCodes.getExCharCodes(keyChar) : keyCodes;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ * A precise pacer for Precise Mode, instead of {@link java.awt.Robot#delay(int)},
+ *   which has millisecond granularity plus the jitter of sleeping.
+ *
+ * Each wait is until a deadline (of {@link System#nanoTime()}), which is the interval after the previous deadline,
+ *   not after now, so that the time taken by the events (or a late wake up) doesn't add up (drift).
+ * If more than an interval behind, it starts over from now, instead of sending a burst of events to catch up.
+ *
+ * This is only for the interval between events. An explicit delay (see {@link #delay(long)}) is from now,
+ *   as it was asked for after whatever came before it.
+ *
+ * It parks the thread until close to the deadline, and then spins (yields) for the rest.
+ * The time spun adapts to how late parking wakes up on this system.
+ *
+ * This class is not thread-safe.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ * @see BotBuddy#setPreciseMode(boolean)
+ */
+public class Pacer {
+  public static final long DEFAULT_SPIN_NANOS = 1_000_000L;
+  public static final long MAX_SPIN_NANOS = 5_000_000L;
+  public static final long MIN_SPIN_NANOS = 50_000L;
+
+  protected long deadline = 0L;
+  protected boolean hasDeadline = false;
+  protected long spinNanos = DEFAULT_SPIN_NANOS;
+
+  /**
+   * <pre>
+   * Waits until {@code intervalNanos} after the previous deadline (see the class doc).
+   * If interrupted, it returns early with the interrupt status set, the same as {@link java.awt.Robot#delay(int)}.
+   * </pre>
+   *
+   * @throws IllegalArgumentException if {@code intervalNanos} is negative
+   */
+  public void pace(long intervalNanos) {
+    if(intervalNanos < 0L) {
+      throw new IllegalArgumentException("Interval cannot be negative: " + intervalNanos);
+    }
+
+    deadline = nextDeadline(System.nanoTime(),intervalNanos);
+    hasDeadline = true;
+
+    waitUntil(deadline);
+  }
+
+  /**
+   * <pre>
+   * Waits {@code delayNanos} from now, not from the previous deadline,
+   *   and then the next {@link #pace(long)} is from the end of this.
+   * </pre>
+   *
+   * @throws IllegalArgumentException if {@code delayNanos} is negative
+   */
+  public void delay(long delayNanos) {
+    reset();
+    pace(delayNanos);
+  }
+
+  /**
+   * @return the next deadline: {@code intervalNanos} after the previous deadline,
+   *         unless there is none or it's more than an interval behind {@code now}
+   */
+  protected long nextDeadline(long now,long intervalNanos) {
+    if(hasDeadline) {
+      final long next = deadline + intervalNanos;
+
+      if((now - next) <= intervalNanos) {
+        return next;
+      }
+    }
+
+    return now + intervalNanos;
+  }
+
+  /**
+   * <pre>
+   * Forgets the previous deadline, so that the next wait is from now.
+   * </pre>
+   */
+  public void reset() {
+    hasDeadline = false;
+  }
+
+  protected void waitUntil(long deadline) {
+    while(true) {
+      final long remaining = deadline - System.nanoTime();
+
+      if(remaining <= 0L) {
+        return;
+      }
+
+      if(remaining > spinNanos) {
+        final long parkNanos = remaining - spinNanos;
+        final long parkStart = System.nanoTime();
+
+        LockSupport.parkNanos(parkNanos);
+
+        if(Thread.currentThread().isInterrupted()) {
+          return;
+        }
+
+        adaptSpin(System.nanoTime() - parkStart - parkNanos);
+      }
+      else {
+        Thread.yield(); // Java 8 doesn't have Thread.onSpinWait()
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * Moves the time spun toward twice how late parking woke up (a moving average).
+   * </pre>
+   */
+  protected void adaptSpin(long lateNanos) {
+    final long target = Math.max(lateNanos,0L) << 1;
+
+    spinNanos += (target - spinNanos) >> 3;
+    spinNanos = Math.max(MIN_SPIN_NANOS,Math.min(spinNanos,MAX_SPIN_NANOS));
+  }
+
+  public long getSpinNanos() {
+    return spinNanos;
+  }
+}
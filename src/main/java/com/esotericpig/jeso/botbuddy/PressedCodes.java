@@ -0,0 +1,296 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * A stack of pressed codes (key codes or mouse buttons) for Release Mode, without boxing.
+ *
+ * - {@link #push(int)} and {@link #remove(int)} are O(1) and don't allocate (unless growing).
+ * - {@link #pop()} returns the most recently pressed code, so releasing is LIFO.
+ * - The same code can be pushed more than once; {@link #remove(int)} removes the most recent one.
+ *
+ * Internally, the codes are a doubly linked list of nodes in int arrays (newest at the head),
+ *   and an open-addressing hash table maps each code to its newest node.
+ * Each node also links to the previous node of the same code, for when it's removed.
+ *
+ * This class is not thread-safe.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class PressedCodes {
+  public static final int DEFAULT_CAPACITY = 16;
+
+  protected static final int NONE = -1;
+
+  // Nodes
+  protected int[] codes;
+  protected int freeNode = NONE;
+  protected int head = NONE; // Newest
+  protected int[] nexts; // Toward older
+  protected int nodeCount = 0; // Used so far (including free)
+  protected int[] prevs; // Toward newer
+  protected int[] sames; // Older node of the same code
+  protected int size = 0;
+  protected int tail = NONE; // Oldest
+
+  // Hash table of code => newest node (NONE for empty)
+  protected int[] table;
+
+  public PressedCodes() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public PressedCodes(int capacity) {
+    if(capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    }
+
+    codes = new int[capacity];
+    nexts = new int[capacity];
+    prevs = new int[capacity];
+    sames = new int[capacity];
+    table = newTable(tableLength(capacity));
+  }
+
+  protected static int hash(int code) {
+    final int h = code * 0x9E3779B9; // Fibonacci hashing, as codes are often masks (e.g., buttons)
+
+    return h ^ (h >>> 16);
+  }
+
+  protected static int[] newTable(int length) {
+    final int[] table = new int[length];
+
+    Arrays.fill(table,NONE);
+
+    return table;
+  }
+
+  /**
+   * @return a power of 2, at least twice the capacity, to keep the load factor at most 0.5
+   */
+  protected static int tableLength(int capacity) {
+    return Integer.highestOneBit(Math.max(capacity,2) - 1) << 2;
+  }
+
+  public void clear() {
+    Arrays.fill(table,NONE);
+
+    freeNode = NONE;
+    head = NONE;
+    nodeCount = 0;
+    size = 0;
+    tail = NONE;
+  }
+
+  public boolean contains(int code) {
+    return table[findSlot(code)] != NONE;
+  }
+
+  /**
+   * @return the slot of {@code code} in the table, or the empty slot where it would go
+   */
+  protected int findSlot(int code) {
+    final int mask = table.length - 1;
+    int slot = hash(code) & mask;
+
+    while(table[slot] != NONE && codes[table[slot]] != code) {
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  protected void grow() {
+    final int capacity = codes.length << 1;
+
+    codes = Arrays.copyOf(codes,capacity);
+    nexts = Arrays.copyOf(nexts,capacity);
+    prevs = Arrays.copyOf(prevs,capacity);
+    sames = Arrays.copyOf(sames,capacity);
+
+    // Rehash
+    final int[] oldTable = table;
+
+    table = newTable(tableLength(capacity));
+
+    for(int node: oldTable) {
+      if(node != NONE) {
+        table[findSlot(codes[node])] = node;
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * Removes the newest code.
+   * </pre>
+   *
+   * @return the newest code
+   * @throws IllegalStateException if empty
+   */
+  public int pop() {
+    if(head == NONE) {
+      throw new IllegalStateException("No pressed codes");
+    }
+
+    final int code = codes[head];
+
+    remove(code); // The newest of a code is always its newest node, so this removes the head
+
+    return code;
+  }
+
+  public void push(int code) {
+    int node = freeNode;
+
+    if(node != NONE) {
+      freeNode = nexts[node];
+    }
+    else {
+      if(nodeCount == codes.length) {
+        grow();
+      }
+
+      node = nodeCount++;
+    }
+
+    final int slot = findSlot(code);
+
+    codes[node] = code;
+    nexts[node] = head;
+    prevs[node] = NONE;
+    sames[node] = table[slot];
+    table[slot] = node;
+
+    if(head != NONE) {
+      prevs[head] = node;
+    }
+    else {
+      tail = node;
+    }
+
+    head = node;
+    ++size;
+  }
+
+  /**
+   * <pre>
+   * Removes the newest press of {@code code}.
+   * </pre>
+   *
+   * @return true if {@code code} was removed, else false if not pressed
+   */
+  public boolean remove(int code) {
+    final int slot = findSlot(code);
+    final int node = table[slot];
+
+    if(node == NONE) {
+      return false;
+    }
+
+    // Unlink from list
+    final int next = nexts[node];
+    final int prev = prevs[node];
+
+    if(prev != NONE) {
+      nexts[prev] = next;
+    }
+    else {
+      head = next;
+    }
+    if(next != NONE) {
+      prevs[next] = prev;
+    }
+    else {
+      tail = prev;
+    }
+
+    // Point to the next newest of the same code, or remove from the table
+    if(sames[node] != NONE) {
+      table[slot] = sames[node];
+    }
+    else {
+      removeSlot(slot);
+    }
+
+    nexts[node] = freeNode;
+    freeNode = node;
+    --size;
+
+    return true;
+  }
+
+  /**
+   * <pre>
+   * Removes the slot from the table with backward shifting (linear probing), so no tombstones are needed.
+   * </pre>
+   */
+  protected void removeSlot(int slot) {
+    final int mask = table.length - 1;
+    int next = slot;
+
+    while(true) {
+      next = (next + 1) & mask;
+
+      final int node = table[next];
+
+      if(node == NONE) {
+        break;
+      }
+
+      final int home = hash(codes[node]) & mask;
+
+      // Shift back if the empty slot is between home and next (cyclically)
+      if(((next - home) & mask) >= ((next - slot) & mask)) {
+        table[slot] = node;
+        slot = next;
+      }
+    }
+
+    table[slot] = NONE;
+  }
+
+  /**
+   * @return the newest code
+   * @throws IllegalStateException if empty
+   */
+  public int peek() {
+    if(head == NONE) {
+      throw new IllegalStateException("No pressed codes");
+    }
+
+    return codes[head];
+  }
+
+  /**
+   * @return the codes from oldest to newest (i.e., the order pressed)
+   */
+  public int[] toArray() {
+    final int[] array = new int[size];
+    int i = 0;
+
+    for(int node = tail; node != NONE; node = prevs[node]) {
+      array[i++] = codes[node];
+    }
+
+    return array;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+}
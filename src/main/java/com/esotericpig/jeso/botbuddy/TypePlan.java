@@ -0,0 +1,379 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * A plan of the key events to type some text, made once (e.g., for typing the same text many times).
+ *
+ * Instead of rolling the key codes of each char (e.g., "HI" => Shift+H, Shift+I),
+ *   a modifier (e.g., Shift) is held across a run of chars that need it (e.g., "HI" => Shift+H+I).
+ * Each step is one char, or one run of chars to paste that don't have key codes (if ensured).
+ *
+ * The events are stored in an int[]: a key code to press, or the bitwise NOT (~) of a key code to release.
+ *
+ * With {@link Costs}, a run of chars that have key codes is also pasted if cheaper than typing it
+ *   (e.g., a long run), else typed (e.g., a short run between pastes).
+ *
+ * Example:
+ *   TypePlan plan = new TypePlan("HELLO World");
+ *
+ *   buddy.type(plan);
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ * @see BotBuddy#type(TypePlan)
+ * @see KeyCodes
+ */
+public class TypePlan {
+  public static boolean isPress(int event) {
+    return event >= 0;
+  }
+
+  public static int toKeyCode(int event) {
+    return (event >= 0) ? event : ~event;
+  }
+
+  protected int eventCount = 0;
+  protected int[] events;
+  protected int heldCount = 0;
+  protected int[] helds = new int[4]; // Modifiers held, oldest first
+  protected String[] pastes; // Of each step, else null
+  protected int stepCount = 0;
+  protected int[] stepEnds; // The end index (exclusive) in #events of each step
+
+  public TypePlan(CharSequence text) {
+    this(text,true);
+  }
+
+  /**
+   * @param isEnsure true to paste the chars that don't have key codes,
+   *                 else false to skip them (but try {@link java.awt.event.KeyEvent#getExtendedKeyCodeForChar(int)})
+   */
+  public TypePlan(CharSequence text,boolean isEnsure) {
+    this(text,isEnsure,KeyCodes.US_LAYOUT);
+  }
+
+  /**
+   * @param layout the layout of the keyboard to type on
+   */
+  public TypePlan(CharSequence text,boolean isEnsure,KeyLayout layout) {
+    this(text,isEnsure,layout,null);
+  }
+
+  /**
+   * @param costs if not null (and ensured), to paste the runs of chars that are cheaper to paste than to type
+   */
+  public TypePlan(CharSequence text,boolean isEnsure,KeyLayout layout,Costs costs) {
+    final int length = text.length();
+    final int[][] charCodes = new int[length][]; // By the index of each char's first char (code unit)
+    StringBuilder paste = null;
+
+    events = new int[(length << 1) + 4];
+    pastes = new String[length];
+    stepEnds = new int[length];
+
+    for(int i = 0; i < length; ) {
+      final int keyChar = Character.codePointAt(text,i);
+      final int[] keyCodes = layout.getCharCodes(keyChar,!isEnsure);
+
+      if(keyCodes != null && keyCodes.length > 0) {
+        charCodes[i] = keyCodes;
+      }
+
+      i += Character.charCount(keyChar);
+    }
+
+    final boolean[] isPasted = (costs != null && isEnsure) ? choosePastes(text,charCodes,costs) : null;
+
+    for(int i = 0; i < length; ) {
+      final int keyChar = Character.codePointAt(text,i);
+      final int[] keyCodes = charCodes[i];
+      final boolean isPaste = (keyCodes == null) || (isPasted != null && isPasted[i]);
+
+      i += Character.charCount(keyChar);
+
+      if(isPaste) {
+        if(isEnsure) {
+          if(paste == null) {
+            paste = new StringBuilder();
+          }
+
+          paste.appendCodePoint(keyChar); // Paste the whole run at once
+        }
+
+        continue;
+      }
+
+      if(paste != null) {
+        addPasteStep(paste.toString());
+        paste = null;
+      }
+
+      final int modCount = keyCodes.length - 1;
+
+      // Release the held modifiers that this char doesn't need (newest first)
+      for(int j = heldCount - 1; j >= 0; --j) {
+        if(indexOf(keyCodes,modCount,helds[j]) < 0) {
+          addEvent(~helds[j]);
+          removeHeld(j);
+        }
+      }
+
+      // Press the modifiers that aren't held
+      for(int j = 0; j < modCount; ++j) {
+        if(indexOf(helds,heldCount,keyCodes[j]) < 0) {
+          addEvent(keyCodes[j]);
+          addHeld(keyCodes[j]);
+        }
+      }
+
+      final int keyCode = keyCodes[modCount];
+
+      addEvent(keyCode);
+      addEvent(~keyCode);
+      addStep(null);
+    }
+
+    if(paste != null) {
+      addPasteStep(paste.toString());
+    }
+    else if(heldCount > 0) {
+      // Release the rest in the last step
+      releaseHelds();
+
+      stepEnds[stepCount - 1] = eventCount;
+    }
+
+    helds = null; // For Garbage Collection (GC)
+  }
+
+  /**
+   * <pre>
+   * Chooses for each run of chars that have key codes whether to paste it, by the least total cost.
+   * A run that's pasted joins the pastes before and after it (e.g., a run of chars without key codes),
+   *   so it doesn't cost another paste.
+   * </pre>
+   *
+   * @return whether each char (by the index of its first char) is pasted
+   */
+  protected static boolean[] choosePastes(CharSequence text,int[][] charCodes,Costs costs) {
+    final int length = text.length();
+    final boolean[] isPasted = new boolean[length];
+
+    // The runs, which alternate between typable & not
+    int[] runStarts = new int[8];
+    long[] typeCosts = new long[8]; // Of each typable run, else -1 (must paste)
+    int runCount = 0;
+
+    for(int i = 0; i < length; ) {
+      final boolean isTypable = (charCodes[i] != null);
+      final int start = i;
+      int[] prevKeyCodes = null;
+      long eventCount = 0;
+      long stepCount = 0;
+
+      while(i < length && (charCodes[i] != null) == isTypable) {
+        final int[] keyCodes = charCodes[i];
+
+        if(isTypable) {
+          eventCount += 2 + countModifierEvents(prevKeyCodes,keyCodes);
+          ++stepCount;
+          prevKeyCodes = keyCodes;
+        }
+
+        i += Character.charCount(Character.codePointAt(text,i));
+      }
+
+      if(runCount == runStarts.length) {
+        runStarts = Arrays.copyOf(runStarts,runCount << 1);
+        typeCosts = Arrays.copyOf(typeCosts,runCount << 1);
+      }
+
+      if(isTypable) {
+        eventCount += prevKeyCodes.length - 1; // Release the last modifiers
+        typeCosts[runCount] = (stepCount * costs.stepCost) + (eventCount * costs.eventCost);
+      }
+      else {
+        typeCosts[runCount] = -1L;
+      }
+
+      runStarts[runCount++] = start;
+    }
+
+    // The least cost of the runs so far, ending with a typed run or a pasted run,
+    //   and whether the previous run was pasted for each (to backtrack)
+    final long none = Long.MAX_VALUE >> 2; // Can't be added to overflow
+    final boolean[][] wasPasteds = new boolean[2][runCount]; // [0] typed, [1] pasted
+    long typedCost = 0L;
+    long pastedCost = none;
+
+    for(int r = 0; r < runCount; ++r) {
+      final long prevBest = Math.min(typedCost,pastedCost);
+      final boolean isPrevPasted = (pastedCost < typedCost);
+      final long joinCost = Math.min(typedCost + costs.pasteCost,pastedCost);
+      final boolean isJoinPasted = (pastedCost <= typedCost + costs.pasteCost);
+
+      wasPasteds[1][r] = isJoinPasted;
+
+      if(typeCosts[r] >= 0L) {
+        wasPasteds[0][r] = isPrevPasted;
+        typedCost = prevBest + typeCosts[r];
+      }
+      else {
+        typedCost = none;
+      }
+
+      pastedCost = joinCost;
+    }
+
+    // Backtrack
+    int state = (pastedCost < typedCost) ? 1 : 0;
+
+    for(int r = runCount - 1; r >= 0; --r) {
+      if(state == 1) {
+        final int end = (r + 1 < runCount) ? runStarts[r + 1] : length;
+
+        Arrays.fill(isPasted,runStarts[r],end,true);
+      }
+
+      state = wasPasteds[state][r] ? 1 : 0;
+    }
+
+    return isPasted;
+  }
+
+  /**
+   * @return the number of events to change the held modifiers from {@code prevKeyCodes} to {@code keyCodes}
+   */
+  protected static int countModifierEvents(int[] prevKeyCodes,int[] keyCodes) {
+    final int prevModCount = (prevKeyCodes != null) ? (prevKeyCodes.length - 1) : 0;
+    final int modCount = keyCodes.length - 1;
+    int count = 0;
+
+    for(int i = 0; i < prevModCount; ++i) {
+      if(indexOf(keyCodes,modCount,prevKeyCodes[i]) < 0) {
+        ++count; // Release
+      }
+    }
+    for(int i = 0; i < modCount; ++i) {
+      if(prevKeyCodes == null || indexOf(prevKeyCodes,prevModCount,keyCodes[i]) < 0) {
+        ++count; // Press
+      }
+    }
+
+    return count;
+  }
+
+  protected static int indexOf(int[] codes,int count,int code) {
+    for(int i = 0; i < count; ++i) {
+      if(codes[i] == code) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  protected void addEvent(int event) {
+    if(eventCount == events.length) {
+      events = Arrays.copyOf(events,events.length << 1);
+    }
+
+    events[eventCount++] = event;
+  }
+
+  protected void addHeld(int keyCode) {
+    if(heldCount == helds.length) {
+      helds = Arrays.copyOf(helds,helds.length << 1);
+    }
+
+    helds[heldCount++] = keyCode;
+  }
+
+  protected void addPasteStep(String paste) {
+    releaseHelds(); // Else, the paste shortcut would have them (e.g., Shift+Ctrl+V)
+    addStep(paste);
+  }
+
+  protected void addStep(String paste) {
+    pastes[stepCount] = paste;
+    stepEnds[stepCount++] = eventCount;
+  }
+
+  protected void releaseHelds() {
+    while(heldCount > 0) {
+      addEvent(~helds[--heldCount]);
+    }
+  }
+
+  protected void removeHeld(int index) {
+    System.arraycopy(helds,index + 1,helds,index,heldCount - index - 1);
+    --heldCount;
+  }
+
+  /**
+   * @return the events of all of the steps, in order
+   */
+  public int[] getEvents() {
+    return Arrays.copyOf(events,eventCount);
+  }
+
+  public int getEventCount() {
+    return eventCount;
+  }
+
+  public int getEvent(int index) {
+    return events[index];
+  }
+
+  /**
+   * @return the end index (exclusive) of the events of step {@code index}
+   */
+  public int getStepEnd(int index) {
+    return stepEnds[index];
+  }
+
+  public int getStepCount() {
+    return stepCount;
+  }
+
+  /**
+   * @return the text to paste after the events of step {@code index}, else null
+   */
+  public String getPaste(int index) {
+    return pastes[index];
+  }
+
+  /**
+   * <pre>
+   * The estimated costs (in any unit, such as microseconds) of typing vs pasting.
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   * @see BotBuddy#getTypeCosts()
+   */
+  public static class Costs {
+    public final long eventCost;
+    public final long pasteCost;
+    public final long stepCost;
+
+    /**
+     * @param stepCost  the cost of each char typed (e.g., a sync after it), besides its events
+     * @param eventCost the cost of each key event
+     * @param pasteCost the cost of each paste (e.g., the clipboard, the shortcut, and syncing)
+     */
+    public Costs(long stepCost,long eventCost,long pasteCost) {
+      this.eventCost = eventCost;
+      this.pasteCost = pasteCost;
+      this.stepCost = stepCost;
+    }
+  }
+}
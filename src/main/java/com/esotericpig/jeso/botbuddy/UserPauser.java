@@ -0,0 +1,123 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * The pausing of Pause Mode (see {@link BotBuddy#setPauseMode(boolean)}),
+ *   apart from the events, so that it can be tested without a Robot or a real mouse.
+ *
+ * It releases everything pressed, waits until the user hasn't moved the mouse for the pause delay,
+ *   and then restores the mouse and presses everything again, in the same order.
+ *
+ * This class is not thread-safe.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public abstract class UserPauser {
+  protected final int pauseDelay;
+
+  /**
+   * @param pauseDelay how long the mouse must not move for the user to be idle
+   */
+  public UserPauser(int pauseDelay) {
+    this.pauseDelay = pauseDelay;
+  }
+
+  protected abstract Point getCoords();
+
+  protected abstract void pressButton(int button);
+
+  protected abstract void pressKey(int keyCode);
+
+  protected abstract void releaseButton(int button);
+
+  protected abstract void releaseKey(int keyCode);
+
+  /**
+   * <pre>
+   * Moves the mouse back to where it was before the user moved it (e.g., the safe coords).
+   * </pre>
+   */
+  protected abstract void restoreCoords();
+
+  protected long nanoTime() {
+    return System.nanoTime();
+  }
+
+  protected void sleep(int delay) throws InterruptedException {
+    Thread.sleep(delay);
+  }
+
+  /**
+   * <pre>
+   * Releases {@code pressedKeys} and then {@code pressedButtons} (newest first), which are pressed
+   *   (and pushed) again after the user is idle.
+   * </pre>
+   *
+   * @throws UserIsActiveException if interrupted while waiting, with everything still released
+   */
+  public void pause(PressedCodes pressedButtons,PressedCodes pressedKeys) {
+    // Copy them, as releasing removes them
+    final int[] buttons = pressedButtons.toArray();
+    final int[] keyCodes = pressedKeys.toArray();
+
+    // Keys first as more important, like BotBuddy#releasePressed()
+    while(!pressedKeys.isEmpty()) {
+      releaseKey(pressedKeys.peek());
+      pressedKeys.pop(); // After, in case of an exception
+    }
+    while(!pressedButtons.isEmpty()) {
+      releaseButton(pressedButtons.peek());
+      pressedButtons.pop();
+    }
+
+    waitForIdle();
+    restoreCoords();
+
+    for(int button: buttons) {
+      pressButton(button);
+      pressedButtons.push(button);
+    }
+    for(int keyCode: keyCodes) {
+      pressKey(keyCode);
+      pressedKeys.push(keyCode);
+    }
+  }
+
+  /**
+   * @throws UserIsActiveException if interrupted
+   */
+  protected void waitForIdle() {
+    final long pauseNanos = TimeUnit.MILLISECONDS.toNanos(pauseDelay);
+    Point lastCoords = getCoords();
+    long idleStart = nanoTime();
+
+    while((nanoTime() - idleStart) < pauseNanos) {
+      try {
+        sleep(BotBuddy.PAUSE_CHECK_DELAY);
+      }
+      catch(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+
+        throw new UserIsActiveException("Interrupted while paused for the user",ex);
+      }
+
+      Point coords = getCoords();
+
+      if(!coords.equals(lastCoords)) {
+        lastCoords = coords;
+        idleStart = nanoTime();
+      }
+    }
+  }
+}
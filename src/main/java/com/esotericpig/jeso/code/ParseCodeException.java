@@ -8,6 +8,13 @@
 package com.esotericpig.jeso.code;
 
 /**
+ * <pre>
+ * The {@code buildLight(...)} methods build a light exception, which does not fill in its stack trace
+ *   and does not format its message until {@link #getMessage()} is called.
+ *   This is useful for collecting many recoverable errors (e.g., validating a batch of scripts),
+ *   where most of the messages are never printed.
+ * </pre>
+ *
  * @author Jonathan Bradley Whited
  */
 public class ParseCodeException extends RuntimeException {
@@ -36,6 +43,22 @@ public class ParseCodeException extends RuntimeException {
     return new ParseCodeException(loc,buildMessage(loc,message,name),cause);
   }
 
+  public static ParseCodeException buildLight(int lineNumber,int lineColumn,String message) {
+    return buildLight(new LineOfCode(lineNumber,lineColumn),message,null);
+  }
+
+  public static ParseCodeException buildLight(int lineNumber,int lineColumn,String message,String name) {
+    return buildLight(new LineOfCode(lineNumber,lineColumn),message,name);
+  }
+
+  public static ParseCodeException buildLight(LineOfCode loc,String message) {
+    return buildLight(loc,message,null);
+  }
+
+  public static ParseCodeException buildLight(LineOfCode loc,String message,String name) {
+    return new ParseCodeException(loc,message,name,true);
+  }
+
   public static String buildMessage(int lineNumber,int lineColumn,String message) {
     return buildMessage(lineNumber,lineColumn,message,null);
   }
@@ -64,6 +87,16 @@ public class ParseCodeException extends RuntimeException {
 
   protected LineOfCode loc;
 
+  /**
+   * <pre>
+   * For a light exception, the unformatted message and name, and the formatted message once built.
+   * </pre>
+   */
+  protected final boolean isLight;
+  protected String lightMessage = null;
+  protected String lightName = null;
+  protected String lightFullMessage = null;
+
   public ParseCodeException(int lineNumber,int lineColumn) {
     this(new LineOfCode(lineNumber,lineColumn),null,null);
   }
@@ -95,9 +128,49 @@ public class ParseCodeException extends RuntimeException {
   public ParseCodeException(LineOfCode loc,String message,Throwable cause) {
     super(message,cause);
 
+    this.isLight = false;
     this.loc = loc;
   }
 
+  /**
+   * <pre>
+   * If {@code isLight}, the stack trace is not filled in and the message is not formatted until needed.
+   * Else, this is the same as {@code build(loc,message,name)}.
+   * </pre>
+   */
+  protected ParseCodeException(LineOfCode loc,String message,String name,boolean isLight) {
+    super(isLight ? null : buildMessage(loc,message,name),null,true,!isLight);
+
+    this.isLight = isLight;
+    this.loc = loc;
+
+    if(isLight) {
+      this.lightMessage = message;
+      this.lightName = name;
+    }
+  }
+
+  @Override
+  public String getMessage() {
+    if(!isLight) {
+      return super.getMessage();
+    }
+
+    // Benign race: the same message could be built twice, but Strings are immutable
+    String fullMessage = lightFullMessage;
+
+    if(fullMessage == null) {
+      fullMessage = buildMessage(loc,lightMessage,lightName);
+      lightFullMessage = fullMessage;
+    }
+
+    return fullMessage;
+  }
+
+  public boolean isLight() {
+    return isLight;
+  }
+
   public int getLineColumn() {
     return loc.getColumn();
   }
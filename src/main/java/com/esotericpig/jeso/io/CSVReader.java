@@ -0,0 +1,256 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <pre>
+ * Reads the rows of a CSV file one at a time, so that memory doesn't grow with the number of rows.
+ *
+ * - Values are separated by commas (or a custom separator).
+ * - Rows end with "\n", "\r", or "\r\n" (or the end of input).
+ * - Values can be quoted with double quotes, which can have separators and newlines in them.
+ *   - A double quote is escaped with another double quote.
+ * - Whitespace around a value (outside of quotes) is trimmed.
+ * - Blank lines are skipped.
+ * - A byte order mark (BOM) at the start (e.g., from Excel's "CSV UTF-8") is skipped.
+ *
+ * The row returned by {@link #readRow()} is reused, so it's only valid until the next call.
+ * Copy it (e.g., {@code new ArrayList<>(row)}) to keep it.
+ *
+ * This class is not thread-safe.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class CSVReader implements Closeable {
+  public static final char BOM = '\uFEFF';
+  public static final char DEFAULT_SEPARATOR = ',';
+
+  protected List<String> header = null;
+  protected Reader input;
+  protected boolean isStart = true;
+  protected int lineNumber = 0;
+  protected int prevChar = -2; // -2 for none, as -1 is the end of input
+  protected final List<String> row = new ArrayList<>();
+  protected final List<String> rowView = Collections.unmodifiableList(row);
+  protected int rowLineNumber = 0;
+  protected long rowNumber = 0L;
+  protected final char separator;
+  protected final StringBuilder value = new StringBuilder();
+
+  public CSVReader(Reader input) {
+    this(input,DEFAULT_SEPARATOR);
+  }
+
+  public CSVReader(Reader input,char separator) {
+    if(separator == '"' || separator == '\n' || separator == '\r') {
+      throw new IllegalArgumentException("Invalid separator: '" + separator + "'");
+    }
+
+    this.input = (input instanceof BufferedReader) ? input : new BufferedReader(input);
+    this.separator = separator;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(input != null) {
+      input.close();
+      input = null;
+    }
+  }
+
+  protected void checkIfClosed() throws IOException {
+    if(input == null) {
+      throw new IOException("Reader has been closed");
+    }
+  }
+
+  protected int read() throws IOException {
+    if(prevChar != -2) {
+      final int c = prevChar;
+
+      prevChar = -2;
+
+      return c;
+    }
+    if(isStart) {
+      isStart = false;
+
+      final int c = input.read();
+
+      // Else, the BOM would be in the first value (e.g., of the header)
+      if(c != BOM) {
+        return c;
+      }
+    }
+
+    return input.read();
+  }
+
+  /**
+   * <pre>
+   * Counts the line terminator {@code c} (which is '\n' or '\r'), reading the '\n' of "\r\n".
+   * </pre>
+   */
+  protected void readLineTerminator(int c) throws IOException {
+    if(c == '\r') {
+      final int nextChar = read();
+
+      if(nextChar != '\n') {
+        prevChar = nextChar;
+      }
+    }
+
+    ++lineNumber;
+  }
+
+  /**
+   * <pre>
+   * Reads the next row as the header, which is kept (see {@link #getHeader()}).
+   * </pre>
+   *
+   * @return the header, or null if at the end of input
+   */
+  public List<String> readHeader() throws IOException {
+    List<String> row = readRow();
+
+    if(row == null) {
+      return null;
+    }
+
+    header = Collections.unmodifiableList(new ArrayList<>(row));
+    rowNumber = 0L; // The header is not a row
+
+    return header;
+  }
+
+  /**
+   * <pre>
+   * The returned row is only valid until the next call to this method.
+   * </pre>
+   *
+   * @return the values of the next row, or null if at the end of input
+   * @throws IOException if a quote is not closed
+   */
+  public List<String> readRow() throws IOException {
+    checkIfClosed();
+
+    int c = read();
+
+    // Skip blank lines
+    while(c == '\n' || c == '\r') {
+      readLineTerminator(c);
+      c = read();
+    }
+
+    if(c < 0) {
+      return null;
+    }
+
+    row.clear();
+    rowLineNumber = lineNumber + 1;
+
+    while(true) {
+      value.setLength(0);
+
+      while(c != separator && (c == ' ' || c == '\t')) {
+        c = read();
+      }
+
+      int trimLength = 0; // Don't trim the whitespace inside of quotes
+
+      if(c == '"') {
+        while(true) {
+          c = read();
+
+          if(c < 0) {
+            throw new IOException("Quote is not closed of the row on line " + rowLineNumber);
+          }
+          if(c == '"') {
+            c = read();
+
+            if(c != '"') {
+              break;
+            }
+          }
+          else if(c == '\n' || c == '\r') {
+            readLineTerminator(c);
+            value.append('\n');
+
+            continue;
+          }
+
+          value.append((char)c);
+        }
+
+        trimLength = value.length();
+      }
+
+      while(c >= 0 && c != separator && c != '\n' && c != '\r') {
+        value.append((char)c);
+        c = read();
+      }
+
+      int end = value.length();
+
+      while(end > trimLength && Character.isWhitespace(value.charAt(end - 1))) {
+        --end;
+      }
+
+      value.setLength(end);
+      row.add(value.toString());
+
+      if(c != separator) {
+        break;
+      }
+
+      c = read();
+    }
+
+    if(c >= 0) {
+      readLineTerminator(c);
+    }
+
+    ++rowNumber;
+
+    return rowView;
+  }
+
+  /**
+   * @return the header read by {@link #readHeader()}, or null if not read
+   */
+  public List<String> getHeader() {
+    return header;
+  }
+
+  /**
+   * @return the line number that the last row read started on (1-based)
+   */
+  public int getLineNumber() {
+    return rowLineNumber;
+  }
+
+  /**
+   * @return the number of the last row read (1-based), not counting the header
+   */
+  public long getRowNumber() {
+    return rowNumber;
+  }
+
+  public char getSeparator() {
+    return separator;
+  }
+}
@@ -0,0 +1,309 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <pre>
+ * Reads the lines of a file by memory-mapping it and decoding it incrementally into a small char buffer.
+ *
+ * Unlike {@link java.io.BufferedReader#readLine()}, a new String is not allocated for each line.
+ * Instead, {@link #readLine()} returns a view of the decoded buffer, which is only valid
+ *   until the next call to {@link #readLine()}. Call {@link CharSequence#toString()} on it to keep it.
+ *
+ * The char buffer only grows if a single line is longer than it,
+ *   so the heap used depends on the longest line, not on the size of the file.
+ *
+ * Lines end the same as {@link java.io.BufferedReader#readLine()}: "\n", "\r", or "\r\n".
+ * Malformed input throws a {@link java.nio.charset.CharacterCodingException}.
+ *
+ * This class is not thread-safe.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class MappedLineReader implements Closeable {
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+  public static final long DEFAULT_MAP_SIZE = 64L * 1024L * 1024L;
+
+  protected ByteBuffer bytes = null;
+  protected FileChannel channel;
+  protected CharBuffer chars;
+  protected CharsetDecoder decoder;
+  protected boolean isEndOfInput = false;
+  protected final Line line = new Line();
+  protected long mapPosition = 0L;
+  protected final long mapSize;
+  protected final long size;
+
+  public MappedLineReader(Path path) throws IOException {
+    this(path,StandardCharsets.UTF_8);
+  }
+
+  public MappedLineReader(Path path,Charset charset) throws IOException {
+    this(path,charset,DEFAULT_BUFFER_SIZE,DEFAULT_MAP_SIZE);
+  }
+
+  /**
+   * @param bufferSize the initial number of chars to decode at a time
+   * @param mapSize    the max number of bytes of the file to map at a time
+   */
+  public MappedLineReader(Path path,Charset charset,int bufferSize,long mapSize) throws IOException {
+    if(bufferSize < 2) {
+      throw new IllegalArgumentException("Buffer size must be at least 2");
+    }
+    if(mapSize < 16L) {
+      throw new IllegalArgumentException("Map size must be at least 16");
+    }
+
+    this.channel = FileChannel.open(path,StandardOpenOption.READ);
+    this.chars = CharBuffer.allocate(bufferSize);
+    this.decoder = charset.newDecoder(); // Reports malformed input, like Files.newBufferedReader(...)
+    this.mapSize = mapSize;
+    this.size = channel.size();
+
+    chars.flip(); // Empty, ready for reading
+  }
+
+  @Override
+  public void close() throws IOException {
+    // For Garbage Collection (GC)
+    bytes = null;
+    chars = null;
+    decoder = null;
+    line.chars = null;
+
+    if(channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  protected void checkIfClosed() throws IOException {
+    if(channel == null) {
+      throw new IOException("Reader has been closed");
+    }
+  }
+
+  /**
+   * <pre>
+   * Decodes more chars into the buffer, after the unread chars.
+   * The unread chars are moved to the front of the buffer.
+   * </pre>
+   *
+   * @return false if no more chars were decoded
+   */
+  protected boolean fill() throws IOException {
+    if(isEndOfInput) {
+      return false;
+    }
+
+    chars.compact();
+
+    // A line is longer than the buffer
+    if(!chars.hasRemaining()) {
+      grow();
+    }
+
+    final int oldPosition = chars.position();
+
+    while(chars.position() == oldPosition && !isEndOfInput) {
+      if((bytes == null || !bytes.hasRemaining()) && !map(mapPosition)) {
+        finish();
+
+        break;
+      }
+
+      CoderResult result = decoder.decode(bytes,chars,false);
+
+      if(result.isError()) {
+        result.throwException();
+      }
+
+      // Not enough room for the next char (e.g., a surrogate pair with room for only 1 char)
+      if(result.isOverflow() && chars.position() == oldPosition) {
+        grow();
+      }
+
+      // Not enough bytes for a char, so map again from the unread bytes (i.e., across the map boundary)
+      if(result.isUnderflow() && bytes.hasRemaining() && !map(mapPosition - bytes.remaining())) {
+        finish();
+      }
+    }
+
+    final boolean hasDecoded = (chars.position() != oldPosition);
+
+    chars.flip();
+
+    return hasDecoded;
+  }
+
+  protected void finish() throws IOException {
+    CoderResult result = decoder.decode((bytes != null) ? bytes : ByteBuffer.allocate(0),chars,true);
+
+    if(!result.isError()) {
+      result = decoder.flush(chars);
+    }
+    if(result.isError()) {
+      result.throwException(); // E.g., a truncated char at the end of the file
+    }
+
+    isEndOfInput = true;
+  }
+
+  /**
+   * <pre>
+   * Doubles the capacity of the buffer, keeping the decoded chars (in write mode).
+   * </pre>
+   */
+  protected void grow() {
+    CharBuffer newChars = CharBuffer.allocate(chars.capacity() << 1);
+
+    chars.flip();
+    newChars.put(chars);
+    chars = newChars;
+  }
+
+  /**
+   * @return false if no new bytes of the file could be mapped (i.e., at the end of the file)
+   */
+  protected boolean map(long position) throws IOException {
+    final long length = Math.min(mapSize,size - position);
+
+    if(length <= 0L || (bytes != null && (position + length) <= mapPosition)) {
+      return false;
+    }
+
+    bytes = channel.map(FileChannel.MapMode.READ_ONLY,position,length);
+    mapPosition = position + length;
+
+    return true;
+  }
+
+  /**
+   * <pre>
+   * The returned line is only valid until the next call to this method.
+   * </pre>
+   *
+   * @return the next line (without the line terminator), or null if at the end of input
+   */
+  public CharSequence readLine() throws IOException {
+    checkIfClosed();
+
+    int searchIndex = chars.position();
+
+    while(true) {
+      final char[] array = chars.array();
+      final int limit = chars.limit();
+
+      for(int i = searchIndex; i < limit; ++i) {
+        final char c = array[i];
+
+        if(c == '\n' || c == '\r') {
+          // Need the next char to check for "\r\n"
+          if(c == '\r' && (i + 1) >= limit && !isEndOfInput) {
+            break;
+          }
+
+          line.set(array,chars.position(),i);
+
+          if(c == '\r' && (i + 1) < limit && array[i + 1] == '\n') {
+            ++i;
+          }
+
+          chars.position(i + 1);
+
+          return line;
+        }
+      }
+
+      if(isEndOfInput) {
+        if(!chars.hasRemaining()) {
+          return null;
+        }
+
+        // Last line without a line terminator
+        line.set(array,chars.position(),limit);
+        chars.position(limit);
+
+        return line;
+      }
+
+      final int unread = chars.remaining();
+
+      fill();
+
+      // Don't search the unread chars again, except for a possible '\r'
+      searchIndex = Math.max(0,unread - 1);
+    }
+  }
+
+  public boolean isReady() throws IOException {
+    checkIfClosed();
+
+    return chars.hasRemaining() || !isEndOfInput;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * <pre>
+   * A reusable view of the chars of a line in the buffer.
+   * </pre>
+   *
+   * @author Jonathan Bradley Whited
+   */
+  public static class Line implements CharSequence {
+    protected char[] chars;
+    protected int end;
+    protected int start;
+
+    protected void set(char[] chars,int start,int end) {
+      this.chars = chars;
+      this.end = end;
+      this.start = start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if(index < 0 || index >= (end - start)) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + (end - start));
+      }
+
+      return chars[start + index];
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public CharSequence subSequence(int start,int end) {
+      return toString().subSequence(start,end);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars,start,end - start);
+    }
+  }
+}
@@ -7,16 +7,37 @@
 
 package com.esotericpig.jeso.botbuddy;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.esotericpig.jeso.code.LineOfCode;
 import com.esotericpig.jeso.code.ParseCodeException;
+import com.esotericpig.jeso.io.CSVReader;
 import java.awt.AWTException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -45,6 +66,439 @@ public class BotBuddyCodeTest {
   public void tearDownEach() {
   }
 
+  @Test
+  public void testCheckpoint() throws AWTException,IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    int[] stopAt = {-1};
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.addBase();
+    executors.put("say",(buddy,inst) -> {
+      if(ran.size() == stopAt[0]) {
+        stopAt[0] = -1;
+
+        throw new UserIsActiveException(); // In-flight, so not added
+      }
+
+      ran.add(String.join(",",Arrays.stream(inst.args).map(arg -> arg.value).toArray(String[]::new)));
+    });
+
+    // countdown is recursive, so it's not inlined
+    BotBuddyCode.Program program = BotBuddyCode.builder().executors(executors).input(
+        "set total 0\n"
+        + "repeat 2\n"
+        + "  repeat 2\n"
+        + "    add total 1\n"
+        + "    call countdown $total\n"
+        + "  end\n"
+        + "end\n"
+        + "say done $total\n"
+        + "def countdown n\n"
+        + "  if gt $n 0\n"
+        + "    say $n\n"
+        + "    set m $n\n"
+        + "    sub m 1\n"
+        + "    call countdown $m\n"
+        + "    say $n $total\n"
+        + "  end\n"
+        + "end\n").compile();
+
+    program.execute(null);
+
+    final List<String> expected = new ArrayList<>(ran);
+
+    for(int stop = 0; stop < expected.size(); ++stop) {
+      ran.clear();
+      stopAt[0] = stop;
+
+      BotBuddyCode.Checkpoint checkpoint = new BotBuddyCode.Checkpoint();
+
+      assertThrows(UserIsActiveException.class,() -> program.execute(null,checkpoint));
+      assertEquals(stop,ran.size());
+      assertTrue(Arrays.asList(8,11,15).contains(program.getLineOfCode(checkpoint.getIndex()).getNumber())
+          ,"stop=" + stop); // A "say"
+
+      // Through a file
+      Path file = Files.createTempFile("jeso_",".checkpoint");
+
+      try {
+        checkpoint.store(file);
+        program.execute(null,BotBuddyCode.Checkpoint.load(file));
+      }
+      finally {
+        Files.deleteIfExists(file);
+      }
+
+      assertEquals(expected,ran,"stop=" + stop);
+    }
+
+    // Not of this program
+    BotBuddyCode.Checkpoint checkpoint = new BotBuddyCode.Checkpoint();
+
+    stopAt[0] = 0;
+    ran.clear();
+
+    assertThrows(UserIsActiveException.class,() -> program.execute(null,checkpoint));
+    assertThrows(ParseCodeException.class,() -> BotBuddyCode.builder().executors(executors)
+        .input("say 1").compile().execute(null,checkpoint));
+
+    // Each row
+    final String csvText = "Name\nA\nB\nC\n";
+    BotBuddyCode.Program template = BotBuddyCode.builder().executors(executors).fields("Name").input(
+        "say $Name 1\n"
+        + "say $Name 2\n").compile();
+    BotBuddyCode.Checkpoint rowCheckpoint = new BotBuddyCode.Checkpoint();
+
+    ran.clear();
+    stopAt[0] = 3;
+
+    try(CSVReader csv = new CSVReader(new StringReader(csvText))) {
+      assertThrows(UserIsActiveException.class,() -> template.executeEachRow(null,csv,rowCheckpoint));
+    }
+
+    assertEquals(2L,rowCheckpoint.getRowNumber());
+
+    try(CSVReader csv = new CSVReader(new StringReader(csvText))) {
+      assertEquals(2L,template.executeEachRow(null,csv,rowCheckpoint));
+    }
+
+    assertEquals(Arrays.asList("A,1","A,2","B,1","B,2","C,1","C,2"),ran);
+    assertTrue(rowCheckpoint.isEmpty());
+
+    // The open batches of a frame, through bytes
+    BotBuddyCode.Checkpoint batchCheckpoint = new BotBuddyCode.Checkpoint();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    batchCheckpoint.capture(3,null,new BotBuddyCode.Arg[0],2);
+    batchCheckpoint.write(new DataOutputStream(bytes));
+    batchCheckpoint.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(2,batchCheckpoint.nextFrame().batchDepth);
+
+    if(BotBuddyTest.isHeadless()) {
+      return;
+    }
+
+    // Batches are ended if interrupted and are begun again when resumed
+    BotBuddy buddy = BotBuddy.builder().build();
+    BotBuddyCode.Executors batchExecutors = new BotBuddyCode.Executors();
+
+    batchExecutors.put("say",(b,inst) -> {
+      if(ran.size() == stopAt[0]) {
+        stopAt[0] = -1;
+
+        throw new UserIsActiveException();
+      }
+
+      ran.add(inst.getStr(0) + "," + b.isBatching());
+    });
+
+    BotBuddyCode.Program batchProgram = BotBuddyCode.builder().executors(batchExecutors).input(
+        "say 1\n"
+        + "batch\n"
+        + "  say 2\n"
+        + "  batch\n"
+        + "    say 3\n"
+        + "  end\n"
+        + "  say 4\n"
+        + "end\n"
+        + "say 5\n").compile();
+    final List<String> batchExpected = Arrays.asList("1,false","2,true","3,true","4,true","5,false");
+
+    for(int stop = 0; stop < batchExpected.size(); ++stop) {
+      BotBuddyCode.Checkpoint checkpoint2 = new BotBuddyCode.Checkpoint();
+
+      ran.clear();
+      stopAt[0] = stop;
+
+      assertThrows(UserIsActiveException.class,() -> batchProgram.execute(buddy,checkpoint2));
+      assertFalse(buddy.isBatching(),"stop=" + stop);
+
+      batchProgram.execute(buddy,checkpoint2);
+
+      assertEquals(batchExpected,ran,"stop=" + stop);
+      assertFalse(buddy.isBatching(),"stop=" + stop);
+    }
+  }
+
+  @Test
+  public void testCompile() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("say",(buddy,inst) -> ran.add(inst.getStr(0)));
+
+    BotBuddyCode.Program program = BotBuddyCode.builder()
+        .executors(executors)
+        .input("say 'a'\ncall my_method\n\ndef my_method\n  say 'b'\n  say 'c'\nend\nsay 'd'")
+        .compile();
+
+    // my_method is small, so it's inlined into the main code (and also kept for other calls)
+    assertEquals(6,program.getInstructionCount());
+    assertEquals(4,program.getMainLength());
+    assertEquals(1,program.getUserMethodCount());
+    assertEquals(8,program.getLineOfCode(3).getNumber());
+
+    // Can be executed more than once without parsing again
+    program.execute(null);
+    program.execute(null);
+
+    assertEquals("[a, b, c, d, a, b, c, d]",ran.toString());
+  }
+
+  /**
+   * <pre>
+   * Not a strict benchmark, but prints the lines per second of compiling a generated script,
+   *   in order to compare changes to the parser.
+   * </pre>
+   */
+  @Test
+  public void testCompileLarge() throws IOException,ParseCodeException {
+    final int lineCount = 100_000;
+    StringBuilder code = new StringBuilder(lineCount * 24);
+
+    for(int i = 0; i < lineCount; i += 4) {
+      code.append("paste 1187 492  \"Sakana ").append(i).append("\" # comment\n");
+      code.append("paste 1450 511  'Fish'\n");
+      code.append("click 1851 1021\n");
+      code.append("type %(Hello World)\n");
+    }
+
+    BotBuddyCode.Program program = BotBuddyCode.builder(code.toString()).compile();
+
+    assertEquals(lineCount,program.getInstructionCount());
+  }
+
+  @Test
+  public void testConditions() throws IOException,ParseCodeException {
+    List<Integer> rgbs = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.addBase();
+    executors.put("rgb",(buddy,inst) -> rgbs.add(inst.getRGB(0)));
+
+    BotBuddyCode.Builder builder = BotBuddyCode.builder().executors(executors);
+
+    // The colors of pixel
+    builder.input("rgb 0xFF8000\nrgb \"#FF8000\"\nrgb 16744448\nrgb 0x1FF8000").compile().execute(null);
+
+    assertEquals(Arrays.asList(0xFF8000,0xFF8000,0xFF8000,0xFF8000),rgbs);
+
+    // Checked when linking, before anything has been executed
+    assertEquals(3,executors.getConditionArgCount("pixel"));
+    assertEquals(-1,executors.getConditionArgCount("rgb"));
+
+    builder.input("if pixel 1839 894 0xFFFFFF\nend").compile();
+    builder.input("while not pixel 1839 894 \"#FFFFFF\"\nend").compile();
+
+    // '#' begins a comment, so the color is missing
+    ParseCodeException ex = assertThrows(ParseCodeException.class,() -> builder
+        .input("rgb 1\nif pixel 1839 894 #FFFFFF\nend").compile());
+
+    assertEquals(2,ex.getLineNumber());
+    assertThrows(ParseCodeException.class,() -> builder.input("if pixel 1 2 3 4\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("if not true 1\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("if eq 1\nend").compile());
+
+    // A condition without an arg count is not checked
+    executors.putCondition("any",(buddy,inst,index) -> true);
+    builder.input("if any 1 2 3\n  rgb 0\nend").compile().execute(null);
+
+    assertEquals(0,rgbs.get(rgbs.size() - 1).intValue());
+  }
+
+  @Test
+  public void testConstantPool() throws IOException,ParseCodeException {
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("click",(buddy,inst) -> { });
+
+    BotBuddyCode.Program program = BotBuddyCode.builder()
+        .executors(executors)
+        .input("click 1851 -1021 +7 on\nclick 1851 2147483648 'x'\nclick 'x'")
+        .compile();
+    BotBuddyCode.Instruction inst1 = program.getInstruction(0);
+    BotBuddyCode.Instruction inst2 = program.getInstruction(1);
+
+    assertArrayEquals(new int[]{1851,-1021,7},new int[]{inst1.getInt(0),inst1.getInt(1),inst1.getInt(2)});
+    assertEquals(true,inst1.getBool(3));
+    assertEquals(false,inst1.getBool(0));
+    assertThrows(ParseCodeException.class,() -> inst2.getInt(1));
+    assertThrows(ParseCodeException.class,() -> inst2.getInts());
+
+    // Duplicate strings are only stored once
+    assertSame(inst1.getStr(0),inst2.getStr(0));
+    assertSame(inst2.getStr(2),program.getInstruction(2).getStr(0));
+    assertEquals(6,program.getConstantPool().getSize());
+
+    // Quoted on construction (immutable), so never a variable
+    BotBuddyCode.Arg arg = new BotBuddyCode.Arg(new LineOfCode(1,1),"$7",true);
+
+    assertTrue(arg.isQuoted);
+    assertEquals(false,arg.isVariable());
+    assertEquals(false,arg.isInt);
+
+    // Bool on first use (and then cached)
+    arg = new BotBuddyCode.Arg(new LineOfCode(1,1)," Yes ",true);
+
+    assertEquals(true,arg.getBool());
+    assertEquals(true,arg.getBool());
+    assertEquals(false,new BotBuddyCode.Arg(new LineOfCode(1,1),"no").getBool());
+  }
+
+  @Test
+  public void testControlFlow() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    int[] count = new int[1];
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("inc",(buddy,inst) -> ++count[0]);
+    executors.put("say",(buddy,inst) -> ran.add(inst.getStr(0)));
+    executors.putCondition("below",(buddy,inst,index) -> count[0] < inst.getInt(index));
+    executors.putCondition("odd",(buddy,inst,index) -> (count[0] % 2) == 1);
+    executors.putCondition("true",(buddy,inst,index) -> true);
+
+    BotBuddyCode.Program program = BotBuddyCode.builder().executors(executors).input(
+        "repeat 3\n"
+        + "  inc\n"
+        + "  if odd\n"
+        + "    say o\n"
+        + "  else\n"
+        + "    say e\n"
+        + "  end\n"
+        + "end\n"
+        + "repeat 0\n"
+        + "  say never\n"
+        + "end\n"
+        + "while below 100\n"
+        + "  inc\n"
+        + "  if not below 6\n"
+        + "    break\n"
+        + "  end\n"
+        + "end\n"
+        + "say w\n"
+        + "repeat 2\n"
+        + "  call m\n"
+        + "end\n"
+        + "def m\n"
+        + "  repeat 2\n"
+        + "    repeat 2\n"
+        + "      say m\n"
+        + "    end\n"
+        + "  end\n"
+        + "end\n").compile();
+
+    // The loops are not unrolled (m is inlined though)
+    assertEquals(30,program.getInstructionCount());
+
+    program.execute(null);
+
+    assertEquals(6,count[0]);
+    assertEquals("[o, e, o, w, m, m, m, m, m, m, m, m]",ran.toString());
+
+    // Errors
+    BotBuddyCode.Builder builder = BotBuddyCode.builder().executors(executors);
+
+    assertThrows(ParseCodeException.class,() -> builder.input("break").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("if true\nend\nelse").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("while true\n  say x").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("repeat x\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("if nope\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("if\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("repeat 2\ndef m\nend\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("repeat 2\n  call m\nend\ndef m\n  break\nend")
+        .compile());
+
+    // Batches (a BotBuddy is needed to execute them)
+    assertEquals(6,builder.input("batch\n  say a\n  batch\n    say b\n  end\nend").compile()
+        .getInstructionCount());
+    assertEquals(5,builder.input("batch\n  repeat 2\n    break\n  end\nend").compile()
+        .getInstructionCount());
+
+    assertThrows(ParseCodeException.class,() -> builder.input("batch 1\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("batch\n  say x").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("repeat 2\n  batch\n    break\n  end\nend")
+        .compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("if true\n  batch\n  else\n  end\nend")
+        .compile());
+  }
+
+  @Test
+  public void testExecuteEachRow() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.addBase();
+    executors.put("say",(buddy,inst) -> ran.add(String.join(",",
+        Arrays.stream(inst.args).map(arg -> arg.value).toArray(String[]::new))));
+
+    final String csvText = "Hanzi,English,Count\n"
+        + "毛笔,(writing) brush,2\n"
+        + "鱼,\"$5.00, fish\",1\n"
+        + "肉,meat,x\n";
+
+    try(CSVReader csv = new CSVReader(new StringReader(csvText))) {
+      BotBuddyCode.Program program = BotBuddyCode.builder(
+          "repeat $Count\n"
+          + "  say $Hanzi $English\n"
+          + "end\n"
+          + "set seen 1\n").executors(executors).fields(csv.readHeader()).compile();
+
+      assertEquals(Arrays.asList("Hanzi","English","Count"),program.getFields());
+      assertEquals(0,program.getVariableSlot("Hanzi"));
+
+      // The 3rd row's count is not an int
+      ParseCodeException ex = assertThrows(ParseCodeException.class,() -> program.executeEachRow(null,csv));
+
+      assertTrue(ex.getMessage().startsWith("Row 3 (line 4 of CSV): "),ex.getMessage());
+      assertEquals(Arrays.asList("毛笔,(writing) brush","毛笔,(writing) brush","鱼,$5.00, fish"),ran);
+    }
+
+    // Any failure of a row has the row, including of an executor & of the user being active
+    executors.put("fail",(buddy,inst) -> {
+      switch(inst.getStr(0)) {
+        case "arg": throw new IllegalArgumentException("Bad arg");
+        case "user": throw new UserIsActiveException();
+      }
+    });
+
+    try(CSVReader csv = new CSVReader(new StringReader("\uFEFFName\nok\n\narg\n"))) {
+      BotBuddyCode.Program program = BotBuddyCode.builder("say 1\nfail $Name").executors(executors)
+          .fields(csv.readHeader()).compile();
+      ParseCodeException ex = assertThrows(ParseCodeException.class,() -> program.executeEachRow(null,csv));
+
+      assertEquals("Row 2 (line 4 of CSV): fail:(2:1): Failed to execute: "
+          + "java.lang.IllegalArgumentException: Bad arg",ex.getMessage());
+      assertEquals(2,ex.getLineOfCode().getNumber());
+      assertTrue(ex.getCause().getCause() instanceof IllegalArgumentException);
+    }
+    try(CSVReader csv = new CSVReader(new StringReader("Name\nuser\n"))) {
+      BotBuddyCode.Program program = BotBuddyCode.builder("fail $Name").executors(executors)
+          .fields(csv.readHeader()).compile();
+      UserIsActiveException ex = assertThrows(UserIsActiveException.class,() -> program.executeEachRow(null
+          ,csv));
+
+      assertTrue(ex.getMessage().startsWith("Row 1 (line 2 of CSV): User is active"),ex.getMessage());
+    }
+
+    // Not compiled with the field
+    assertThrows(ParseCodeException.class,() -> BotBuddyCode.builder("say $Hanzi").executors(executors)
+        .compile());
+
+    // Field not in the header
+    try(CSVReader csv = new CSVReader(new StringReader("English\nfish\n"))) {
+      BotBuddyCode.Program program = BotBuddyCode.builder("say $Hanzi").executors(executors).fields("Hanzi")
+          .compile();
+
+      assertThrows(ParseCodeException.class,() -> program.executeEachRow(null,csv));
+    }
+
+    // Empty
+    try(CSVReader csv = new CSVReader(new StringReader(""))) {
+      assertEquals(0L,BotBuddyCode.builder("say 1").executors(executors).compile().executeEachRow(null,csv));
+    }
+  }
+
   @Test
   public void testExecutors() {
     BotBuddyCode.Executors executors = BotBuddyCode.DefaultExecutors.defaultExecutors;
@@ -56,6 +510,374 @@ public class BotBuddyCodeTest {
     for(String id: executors.getEntries().keySet()) {
       // Possible if "delay_Auto" or something was typed in instead of "delayauto"
       assertEquals(BotBuddyCode.Instruction.toID(id),id);
+
+      // Must be found by array index too
+      assertEquals(executors.getWithID(id),executors.get(BotBuddyCode.Opcodes.get(id)));
+    }
+
+    BotBuddyCode.SymbolTable symbols = new BotBuddyCode.SymbolTable();
+    BotBuddyCode.Instruction inst = new BotBuddyCode.Instruction(1,1,"get_Coords");
+
+    assertSame(symbols.toID("get_coords"),symbols.toID("getCoords"));
+    assertEquals(executors.getWithID("getcoords"),executors.get(inst));
+  }
+
+  @Test
+  public void testLoadKeyLayout() throws IOException {
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+    Path file = Files.createTempFile("jeso_",".keys");
+
+    try {
+      Files.write(file,"name UK-Mac\nbase uk\n@ alt_graph 2\n".getBytes(StandardCharsets.UTF_8));
+
+      KeyLayout layout = executors.loadKeyLayout(file);
+
+      assertEquals("UK-Mac",layout.getName());
+
+      // Loaded only once, by its absolute path
+      Files.delete(file);
+
+      assertSame(layout,executors.loadKeyLayout(file));
+      assertSame(layout,executors.loadKeyLayout(file.getParent().resolve(".").resolve(file.getFileName())));
+    }
+    finally {
+      Files.deleteIfExists(file);
+    }
+
+    // Other executors load it themselves
+    assertThrows(IOException.class,() -> new BotBuddyCode.Executors().loadKeyLayout(file));
+  }
+
+  /**
+   * <pre>
+   * Unlike {@link #testInterpretDryRun()}, this doesn't need a BotBuddy, so it also runs headless.
+   * </pre>
+   */
+  @Test
+  public void testInterpretDryRunStream() throws IOException,ParseCodeException,URISyntaxException {
+    Path bbcTestOutPath = Paths.get(getClass().getResource("/BotBuddyCodeTestOutput.txt").toURI());
+    Path bbcTestPath = Paths.get(getClass().getResource("/BotBuddyCodeTest.bbc").toURI());
+
+    String bbcTestOut = cleanOutput(Files.lines(bbcTestOutPath).collect(Collectors.joining("\n")));
+    StringWriter out = new StringWriter();
+
+    try(BotBuddyCode bbc = new BotBuddyCode(BotBuddyCode.builder(bbcTestPath),null)) {
+      bbc.interpretDryRun(out);
+
+      assertEquals(0,bbc.output.length()); // Streamed, not kept
+    }
+
+    assertEquals(bbcTestOut,cleanOutput(out.toString()));
+  }
+
+  @Test
+  public void testLink() {
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("say",(buddy,inst) -> { });
+
+    // Unknown instruction at the end
+    ParseCodeException ex = assertThrows(ParseCodeException.class,() -> BotBuddyCode.builder()
+        .executors(executors)
+        .input("say 'a'\nsay 'b'\nsya 'c'")
+        .compile());
+
+    assertEquals(3,ex.getLineNumber());
+
+    // Unknown user method
+    ex = assertThrows(ParseCodeException.class,() -> BotBuddyCode.builder()
+        .executors(executors)
+        .input("def my_method\n  say 'a'\nend\nsay 'b'\ncall my_method my_methd")
+        .compile());
+
+    assertEquals(5,ex.getLineNumber());
+    assertEquals(16,ex.getLineColumn());
+  }
+
+  @Test
+  public void testMapped() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("say",(buddy,inst) -> ran.add(inst.getStr(0)));
+
+    Path path = Files.createTempFile("jeso_",".bbc");
+
+    try {
+      Files.write(path,"say 'a'\r\nsay <<EOS\r\nb\u00e9\r\nEOS\rsay \"\u4e16\"\nsay c".getBytes(StandardCharsets.UTF_8));
+
+      BotBuddyCode.Program program = BotBuddyCode.builder(path).executors(executors).mapped(true).compile();
+
+      assertEquals(4,program.getInstructionCount());
+      assertEquals(5,program.getLineOfCode(2).getNumber());
+
+      program.execute(null);
+
+      assertEquals("[a, b\u00e9, \u4e16, c]",ran.toString());
+    }
+    finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testOverloads() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("type",new BotBuddyCode.Overloads()
+        .on("int int str",(buddy,inst) -> ran.add("xy:" + inst.getStr(2)))
+        .on("int ...",(buddy,inst) -> ran.add("int:" + inst.getInt(0)))
+        .on("str ...",(buddy,inst) -> ran.add("str:" + inst.getStr(0))));
+
+    BotBuddyCode.builder()
+        .executors(executors)
+        .input("type 65\ntype 'hello'\ntype 10 20 'hi'\ntype 10 'x' 'hi'")
+        .compile()
+        .execute(null);
+
+    assertEquals("[int:65, str:hello, xy:hi, int:10]",ran.toString());
+
+    // No signature matches 0 args, so fails when linking
+    assertThrows(ParseCodeException.class,() -> BotBuddyCode.builder()
+        .executors(executors)
+        .input("type")
+        .compile());
+  }
+
+  @Test
+  public void testUserMethodParams() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.addBase();
+    executors.put("say",(buddy,inst) -> ran.add(String.join(",",
+        Arrays.stream(inst.args).map(arg -> arg.value).toArray(String[]::new))));
+
+    StringBuilder big = new StringBuilder("def big x\n");
+
+    for(int i = 0; i <= BotBuddyCode.Program.INLINE_MAX_LENGTH; ++i) {
+      big.append("  say $x\n");
+    }
+
+    big.append("end\n");
+
+    BotBuddyCode.Program program = BotBuddyCode.builder().executors(executors).input(
+        "set g 7\n"
+        + "call fill 10 20 'Fish' tab\n"
+        + "call countdown 3\n"
+        + "call inc_say $g\n"
+        + "call outer 99\n"
+        + "call big 1\n"
+        + "say $g\n"
+        + "def fill x y $text\n"
+        + "  say $x $y $text\n"
+        + "end\n"
+        + "def tab\n"
+        + "  say tab\n"
+        + "end\n"
+        + "def countdown n\n"
+        + "  if gt $n 0\n"
+        + "    say $n\n"
+        + "    set m $n\n"
+        + "    sub m 1\n"
+        + "    call countdown $m\n"
+        + "    say $n\n"
+        + "  end\n"
+        + "end\n"
+        + "def inc_say x\n"
+        + "  add x 1\n"
+        + "  say $x\n"
+        + "end\n"
+        + "def outer g\n"
+        + "  call inner\n"
+        + "  say $g\n"
+        + "end\n"
+        + "def inner\n"
+        + "  say $g\n"
+        + "end\n"
+        + big).compile();
+
+    // Inlined: fill, tab, outer (with inner); not inlined: countdown (recursive), inc_say (changes x), big
+    for(int i = 0; i < program.getMainLength(); ++i) {
+      BotBuddyCode.Instruction inst = program.getInstruction(i);
+
+      if(inst.id.equals("call")) {
+        assertTrue(inst.args[0].value.equals("countdown") || inst.args[0].value.equals("inc_say")
+            || inst.args[0].value.equals("big"),inst.args[0].value);
+      }
+    }
+
+    program.execute(null);
+
+    List<String> expected = new ArrayList<>(Arrays.asList("10,20,Fish","tab","3","2","1","1","2","3","8","7","99"));
+
+    for(int i = 0; i <= BotBuddyCode.Program.INLINE_MAX_LENGTH; ++i) {
+      expected.add("1");
+    }
+
+    expected.add("7");
+
+    assertEquals(expected,ran);
+
+    // By value, whether inlined or not (recursive): changing the variable of the arg doesn't change the param
+    String byValue = "set counter 1\ncall f $counter\n"
+        + "def f x\n  add counter 10\n  say $x\n%send\n";
+
+    ran.clear();
+    program = BotBuddyCode.builder().executors(executors).input(String.format(byValue,"")).compile();
+    assertEquals("set",program.getInstruction(1).id); // Inlined
+    program.execute(null);
+    BotBuddyCode.builder().executors(executors)
+        .input(String.format(byValue,"  if eq 0 1\n    call f 0\n  end\n")).compile().execute(null);
+    assertEquals(Arrays.asList("1","1"),ran);
+
+    // Errors
+    BotBuddyCode.Builder builder = BotBuddyCode.builder().executors(executors);
+
+    assertThrows(ParseCodeException.class,() -> builder.input("call m 1\ndef m x y\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("def m x x\nend").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("def m 'x y'\nend").compile());
+  }
+
+  @Test
+  public void testVariables() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.addBase();
+    executors.put("say",(buddy,inst) -> ran.add(String.join(",",
+        Arrays.stream(inst.args).map(arg -> arg.value).toArray(String[]::new))));
+    executors.put("sum",new BotBuddyCode.Overloads()
+        .on("int int",(buddy,inst) -> ran.add("" + (inst.getInt(0) + inst.getInt(1))))
+        .on("str ...",(buddy,inst) -> ran.add("str")));
+
+    BotBuddyCode.Program program = BotBuddyCode.builder().executors(executors).input(
+        "set x 100\n"
+        + "set name 'Fish'\n"
+        + "set i 0\n"
+        + "while lt $i 3\n"
+        + "  say $x $name '$x' $i\n"
+        + "  add x 10\n"
+        + "  add i 1\n"
+        + "end\n"
+        + "set y $x\n"
+        + "mul y 2\n"
+        + "sub y 1\n"
+        + "div y 2\n"
+        + "mod y 7\n"
+        + "sum $x $y\n"
+        + "sum $name 1\n"
+        + "repeat $i\n"
+        + "  call m\n"
+        + "end\n"
+        + "def m\n"
+        + "  if eq $name Fish\n"
+        + "    say m\n"
+        + "  end\n"
+        + "end\n").compile();
+
+    assertEquals(4,program.getVariableCount());
+    assertEquals(0,program.getVariableSlot("x"));
+    assertEquals(-1,program.getVariableSlot("nope"));
+
+    program.execute(null);
+
+    // y = ((130 * 2 - 1) / 2) % 7 = 129 % 7 = 3
+    assertEquals("[100,Fish,$x,0, 110,Fish,$x,1, 120,Fish,$x,2, 133, str, m, m, m]",ran.toString());
+
+    // Each execution has its own variables
+    ran.clear();
+    program.execute(null);
+    assertEquals("100,Fish,$x,0",ran.get(0));
+
+    // Errors
+    BotBuddyCode.Builder builder = BotBuddyCode.builder().executors(executors);
+
+    assertThrows(ParseCodeException.class,() -> builder.input("say $nope").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("set x").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("set x 1 2").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("set x 1\nadd x y").compile());
+    assertThrows(ParseCodeException.class,() -> builder.input("say $x\nset x 1").compile().execute(null));
+    assertThrows(ParseCodeException.class,() -> builder.input("set x 1\nset y 0\ndiv x $y").compile()
+        .execute(null));
+    assertThrows(ParseCodeException.class,() -> builder.input("set x a\nadd x 1").compile().execute(null));
+  }
+
+  @Test
+  public void testProgramCache() throws IOException,ParseCodeException {
+    List<String> ran = new ArrayList<>();
+    BotBuddyCode.Executors executors = new BotBuddyCode.Executors();
+
+    executors.put("say",(buddy,inst) -> ran.add(inst.getStr(0) + inst.args.length));
+
+    Path dir = Files.createTempDirectory("jeso_");
+    Path path = dir.resolve("test.bbc");
+
+    try {
+      Files.write(path,("say 'a' 1\ncall m\ndef m\n  say <<-EOS\n    b\n    EOS\nend\n").getBytes(
+          StandardCharsets.UTF_8));
+
+      BotBuddyCode.Builder builder = BotBuddyCode.builder().executors(executors).cacheDir(dir);
+      BotBuddyCode.ProgramCache cache = new BotBuddyCode.ProgramCache(dir);
+      String key = cache.buildKey(path,StandardCharsets.UTF_8,BotBuddyCode.DEFAULT_COMMENT_CHAR
+          ,BotBuddyCode.DEFAULT_ESCAPE_CHAR,executors);
+
+      // Cold, then warm
+      BotBuddyCode.Program program = builder.input().path(path).compile();
+
+      assertTrue(Files.isRegularFile(cache.toPath(key)));
+
+      BotBuddyCode.Program cached = builder.input().path(path).compile();
+
+      assertEquals(program.getInstructionCount(),cached.getInstructionCount());
+      assertEquals(program.getMainLength(),cached.getMainLength());
+      assertEquals(program.getUserMethodCount(),cached.getUserMethodCount());
+      assertEquals(program.getLineOfCode(1),cached.getLineOfCode(1));
+      assertEquals(program.getInstruction(2).args[0].loc,cached.getInstruction(2).args[0].loc);
+
+      program.execute(null);
+      cached.execute(null);
+
+      assertEquals("[a2, b1, a2, b1]",ran.toString());
+
+      // A corrupt file is a miss (and is deleted), instead of failing or allocating a huge array
+      final byte[] data = Files.readAllBytes(cache.toPath(key));
+      final List<byte[]> corrupts = new ArrayList<>();
+
+      corrupts.add(Arrays.copyOf(data,data.length / 2));
+
+      for(int length: new int[]{-1,Integer.MAX_VALUE,data.length + 1}) {
+        corrupts.add(ByteBuffer.wrap(data.clone()).putInt(8,length).array()); // The string count
+      }
+
+      // The string index of the last arg
+      corrupts.add(ByteBuffer.wrap(data.clone()).putInt(data.length - 5,Integer.MAX_VALUE).array());
+
+      for(byte[] corrupt: corrupts) {
+        Files.write(cache.toPath(key),corrupt);
+
+        assertNull(cache.load(key,executors,false));
+        assertFalse(Files.exists(cache.toPath(key)));
+
+        assertEquals(program.getInstructionCount(),builder.input().path(path).compile().getInstructionCount());
+        assertArrayEquals(data,Files.readAllBytes(cache.toPath(key)));
+      }
+
+      // A different set of executors is a different key
+      executors.put("yell",(buddy,inst) -> { });
+
+      assertNotEquals(key,cache.buildKey(path,StandardCharsets.UTF_8,BotBuddyCode.DEFAULT_COMMENT_CHAR
+          ,BotBuddyCode.DEFAULT_ESCAPE_CHAR,executors));
+    }
+    finally {
+      try(Stream<Path> files = Files.list(dir)) {
+        for(Path file: (Iterable<Path>)files::iterator) {
+          Files.delete(file);
+        }
+      }
+
+      Files.delete(dir);
     }
   }
 
@@ -8,6 +8,8 @@
 package com.esotericpig.jeso.botbuddy;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.esotericpig.jeso.OSFamily;
 import java.awt.AWTException;
@@ -21,7 +23,7 @@ import org.junit.jupiter.api.Test;
 
 /**
  * <pre>
- * On a headless server, all of these tests will not run.
+ * On a headless server, most of these tests will not run.
  * </pre>
  *
  * @author Jonathan Bradley Whited
@@ -72,11 +74,19 @@ public class BotBuddyTest {
     int fastDelay = rand.nextInt(MAX_MS);
     boolean isAutoDelay = rand.nextBoolean();
     boolean isAutoWaitForIdle = rand.nextBoolean();
+    boolean isEnterTextMode = rand.nextBoolean();
+    boolean isFastTypeMode = rand.nextBoolean();
+    boolean isPauseMode = rand.nextBoolean();
+    boolean isPreciseMode = rand.nextBoolean();
     boolean isReleaseMode = rand.nextBoolean();
+    KeyLayout keyLayout = rand.nextBoolean() ? KeyCodes.UK_LAYOUT : KeyCodes.DE_LAYOUT;
     int leftButton = rand.nextInt(MAX_BUTTONS);
     int longDelay = rand.nextInt(MAX_MS);
     int middleButton = rand.nextInt(MAX_BUTTONS);
+    int monitorRate = rand.nextInt(MAX_MS);
     OSFamily osFamily = OSFamily.getRandValue(rand);
+    int pasteChunkSize = rand.nextInt(MAX_MS);
+    int pauseDelay = rand.nextInt(MAX_MS);
     int rightButton = rand.nextInt(MAX_BUTTONS);
     int shortDelay = rand.nextInt(MAX_MS - 1) + 1; // Must be > 0 for isAutoDelay
     Toolkit tool = Toolkit.getDefaultToolkit();
@@ -92,11 +102,19 @@ public class BotBuddyTest {
     assertEquals(fastDelay,buddy.setFastDelay(fastDelay).getFastDelay());
     assertEquals(isAutoDelay,buddy.setAutoDelay(isAutoDelay).isAutoDelay());
     assertEquals(isAutoWaitForIdle,buddy.setAutoWaitForIdle(isAutoWaitForIdle).isAutoWaitForIdle());
+    assertEquals(isEnterTextMode,buddy.setEnterTextMode(isEnterTextMode).isEnterTextMode());
+    assertEquals(isFastTypeMode,buddy.setFastTypeMode(isFastTypeMode).isFastTypeMode());
+    assertEquals(isPauseMode,buddy.setPauseMode(isPauseMode).isPauseMode());
+    assertEquals(isPreciseMode,buddy.setPreciseMode(isPreciseMode).isPreciseMode());
     assertEquals(isReleaseMode,buddy.setReleaseMode(isReleaseMode).isReleaseMode());
+    assertEquals(keyLayout,buddy.setKeyLayout(keyLayout).getKeyLayout());
     assertEquals(leftButton,buddy.setLeftButton(leftButton).getLeftButton());
     assertEquals(longDelay,buddy.setLongDelay(longDelay).getLongDelay());
     assertEquals(middleButton,buddy.setMiddleButton(middleButton).getMiddleButton());
+    assertEquals(monitorRate,buddy.setMonitorRate(monitorRate).getMonitorRate());
     assertEquals(osFamily,buddy.setOSFamily(osFamily).getOSFamily());
+    assertEquals(pasteChunkSize,buddy.setPasteChunkSize(pasteChunkSize).getPasteChunkSize());
+    assertEquals(pauseDelay,buddy.setPauseDelay(pauseDelay).getPauseDelay());
     assertEquals(rightButton,buddy.setRightButton(rightButton).getRightButton());
     assertEquals(shortDelay,buddy.setShortDelay(shortDelay).getShortDelay());
     assertEquals(tool,buddy.setTool(tool).getTool());
@@ -120,11 +138,19 @@ public class BotBuddyTest {
     int fastDelay = rand.nextInt(MAX_MS);
     boolean isAutoDelay = true; // Always true because autoDelay > 0
     boolean isAutoWaitForIdle = rand.nextBoolean();
+    boolean isEnterTextMode = rand.nextBoolean();
+    boolean isFastTypeMode = rand.nextBoolean();
+    boolean isPauseMode = rand.nextBoolean();
+    boolean isPreciseMode = rand.nextBoolean();
     boolean isReleaseMode = rand.nextBoolean();
+    KeyLayout keyLayout = rand.nextBoolean() ? KeyCodes.UK_LAYOUT : KeyCodes.DE_LAYOUT;
     int leftButton = rand.nextInt(MAX_BUTTONS);
     int longDelay = rand.nextInt(MAX_MS);
     int middleButton = rand.nextInt(MAX_BUTTONS);
+    int monitorRate = rand.nextInt(MAX_MS);
     OSFamily osFamily = OSFamily.getRandValue(rand);
+    int pasteChunkSize = rand.nextInt(MAX_MS);
+    int pauseDelay = rand.nextInt(MAX_MS);
     int rightButton = rand.nextInt(MAX_BUTTONS);
     int shortDelay = rand.nextInt(MAX_MS);
     Toolkit tool = Toolkit.getDefaultToolkit();
@@ -135,11 +161,19 @@ public class BotBuddyTest {
                      .bot(bot)
                      .clip(clip)
                      .defaultButton(defaultButton)
+                     .enterTextMode(isEnterTextMode)
+                     .fastTypeMode(isFastTypeMode)
                      .fastDelay(fastDelay)
+                     .keyLayout(keyLayout)
                      .leftButton(leftButton)
                      .longDelay(longDelay)
                      .middleButton(middleButton)
+                     .monitorRate(monitorRate)
                      .osFamily(osFamily)
+                     .pasteChunkSize(pasteChunkSize)
+                     .pauseDelay(pauseDelay)
+                     .pauseMode(isPauseMode)
+                     .preciseMode(isPreciseMode)
                      .releaseMode(isReleaseMode)
                      .rightButton(rightButton)
                      .shortDelay(shortDelay)
@@ -152,11 +186,19 @@ public class BotBuddyTest {
     assertEquals(fastDelay,builder.fastDelay);
     assertEquals(isAutoDelay,builder.isAutoDelay);
     assertEquals(isAutoWaitForIdle,builder.isAutoWaitForIdle);
+    assertEquals(isEnterTextMode,builder.isEnterTextMode);
+    assertEquals(isFastTypeMode,builder.isFastTypeMode);
+    assertEquals(isPauseMode,builder.isPauseMode);
+    assertEquals(isPreciseMode,builder.isPreciseMode);
     assertEquals(isReleaseMode,builder.isReleaseMode);
+    assertEquals(keyLayout,builder.keyLayout);
     assertEquals(leftButton,builder.leftButton);
     assertEquals(longDelay,builder.longDelay);
     assertEquals(middleButton,builder.middleButton);
+    assertEquals(monitorRate,builder.monitorRate);
     assertEquals(osFamily,builder.osFamily);
+    assertEquals(pasteChunkSize,builder.pasteChunkSize);
+    assertEquals(pauseDelay,builder.pauseDelay);
     assertEquals(rightButton,builder.rightButton);
     assertEquals(shortDelay,builder.shortDelay);
     assertEquals(tool,builder.tool);
@@ -170,11 +212,19 @@ public class BotBuddyTest {
     assertEquals(fastDelay,buddy.getFastDelay());
     assertEquals(isAutoDelay,buddy.isAutoDelay());
     assertEquals(isAutoWaitForIdle,buddy.isAutoWaitForIdle());
+    assertEquals(isEnterTextMode,buddy.isEnterTextMode());
+    assertEquals(isFastTypeMode,buddy.isFastTypeMode());
+    assertEquals(isPauseMode,buddy.isPauseMode());
+    assertEquals(isPreciseMode,buddy.isPreciseMode());
     assertEquals(isReleaseMode,buddy.isReleaseMode());
+    assertEquals(keyLayout,buddy.getKeyLayout());
     assertEquals(leftButton,buddy.getLeftButton());
     assertEquals(longDelay,buddy.getLongDelay());
     assertEquals(middleButton,buddy.getMiddleButton());
+    assertEquals(monitorRate,buddy.getMonitorRate());
     assertEquals(osFamily,buddy.getOSFamily());
+    assertEquals(pasteChunkSize,buddy.getPasteChunkSize());
+    assertEquals(pauseDelay,buddy.getPauseDelay());
     assertEquals(rightButton,buddy.getRightButton());
     assertEquals(shortDelay,buddy.getShortDelay());
     assertEquals(tool,buddy.getTool());
@@ -193,6 +243,27 @@ public class BotBuddyTest {
 
     buddy.beginFastMode().endFastMode();
     buddy.beginSafeMode().endSafeMode();
+
+    buddy.setMonitorRate(BotBuddy.DEFAULT_MONITOR_RATE).beginSafeMode();
+    assertTrue(buddy.isMonitoring());
+    buddy.endSafeMode();
+    assertFalse(buddy.isMonitoring());
+
+    final int autoDelay = buddy.getAutoDelay();
+
+    buddy.batch((b) -> {
+      assertTrue(b.isBatching());
+      assertEquals(0,b.getAutoDelay());
+      assertFalse(b.isAutoWaitForIdle());
+
+      b.beginBatch().sync().endBatch(); // Nested
+      assertTrue(b.isBatching());
+    });
+    assertFalse(buddy.isBatching());
+    assertEquals(autoDelay,buddy.getAutoDelay());
+    assertTrue(buddy.isAutoWaitForIdle());
+    buddy.endBatch(); // Not in a batch; should not throw an error
+
     buddy.stash().stash().stash()
          .unstash().unstash().unstash().unstash(); // 4th unstash() should not throw an error
 
@@ -0,0 +1,200 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * Pastes into a fake target, which reads the (real, but private) clipboard for each paste after a lag,
+ *   on a fake clock.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class ChunkPasterTest {
+  public static final int FAST_DELAY = 44;
+  public static final int LONG_DELAY = 1100;
+  public static final int SHORT_DELAY = 100;
+
+  public static String buildText(int length) {
+    StringBuilder text = new StringBuilder(length);
+
+    for(int i = 0; text.length() < length; ++i) {
+      text.append(i % 10);
+    }
+
+    return text.toString();
+  }
+
+  @Test
+  public void testFindChunkEnd() {
+    assertEquals(3,ChunkPaster.findChunkEnd("abc",0,8));
+    assertEquals(4,ChunkPaster.findChunkEnd("abcdefgh",0,4));
+    assertEquals(8,ChunkPaster.findChunkEnd("abcdefgh",4,4));
+
+    // After a line break in the last half
+    assertEquals(6,ChunkPaster.findChunkEnd("abcde\nghij",0,8));
+    assertEquals(8,ChunkPaster.findChunkEnd("a\ncdefghij",0,8));
+
+    // Not in a surrogate pair
+    assertEquals(3,ChunkPaster.findChunkEnd("abc\uD83D\uDE00z",0,4));
+    assertEquals(2,ChunkPaster.findChunkEnd("\uD83D\uDE00z",0,1));
+  }
+
+  @Test
+  public void testAdapt() {
+    final String text = buildText(5000);
+    FakePaster paster = new FakePaster(1500L); // Stalls (more than the long delay) on the first chunk only
+
+    paster.pasteChunks(text,1024,null);
+
+    // Not lost or pasted twice, even though the first chunk timed out
+    assertEquals(text,paster.received.toString());
+
+    // Halved after the stall, then doubled while keeping up
+    assertEquals(Arrays.asList(1024,512,1024,1024,1024,392),paster.sizes);
+
+    // Still watches the clipboard after the stall
+    paster = new FakePaster(1500L,0L,1500L);
+    paster.pasteChunks(text,1024,null);
+
+    assertEquals(text,paster.received.toString());
+    assertEquals(Arrays.asList(1024,512,1024,512,1024,904),paster.sizes);
+  }
+
+  @Test
+  public void testReadWhenCopied() {
+    final String text = buildText(3000);
+    FakePaster paster = new FakePaster();
+
+    paster.isReadWhenCopied = true;
+    paster.pasteChunks(text,1024,null);
+
+    assertEquals(text,paster.received.toString());
+    assertEquals(Arrays.asList(1024,1024,952),paster.sizes);
+    assertEquals(3,paster.idleCount); // Can't watch the clipboard, so waits for idle instead
+  }
+
+  @Test
+  public void testStall() {
+    FakePaster paster = new FakePaster(-1L); // Never reads
+
+    assertThrows(IllegalStateException.class,() -> paster.pasteChunks(buildText(3000),1024,null));
+
+    // Never copied over
+    assertEquals(Arrays.asList(1024),paster.sizes);
+    assertEquals(0,paster.received.length());
+    assertTrue(paster.now >= TimeUnit.MILLISECONDS.toNanos((long)LONG_DELAY * ChunkPaster.MAX_STALL_COUNT));
+
+    assertThrows(IllegalArgumentException.class,() -> paster.pasteChunks("x",0,null));
+  }
+
+  /**
+   * @author Jonathan Bradley Whited
+   */
+  public static class FakePaster extends ChunkPaster {
+    public final Clipboard clip = new Clipboard("fake");
+    public int idleCount = 0;
+    public boolean isReadWhenCopied = false;
+    public final List<Long> lags; // Of each paste, in ms; -1 to never read; 0 after the last
+    public long now = 0L;
+    public int pasteCount = 0;
+    public final Deque<Long> readTimes = new ArrayDeque<>(); // Of the pastes not read yet
+    public final StringBuilder received = new StringBuilder();
+    public final List<Integer> sizes = new ArrayList<>();
+
+    public FakePaster(Long... lags) {
+      super(FAST_DELAY,SHORT_DELAY,LONG_DELAY);
+
+      this.lags = Arrays.asList(lags);
+    }
+
+    @Override
+    protected void copy(ChunkSelection chunk) {
+      clip.setContents(chunk,chunk);
+      sizes.add(read(false).length());
+
+      if(isReadWhenCopied) {
+        read(true); // Copied right away by the platform
+      }
+    }
+
+    @Override
+    protected void delay(int delay) {
+      now += TimeUnit.MILLISECONDS.toNanos(delay);
+
+      while(!readTimes.isEmpty() && readTimes.peekFirst() >= 0L && readTimes.peekFirst() <= now) {
+        readTimes.removeFirst();
+        received.append(read(true));
+      }
+    }
+
+    @Override
+    protected Color getPixel(Point coords) {
+      return Color.BLACK;
+    }
+
+    @Override
+    protected long nanoTime() {
+      return now;
+    }
+
+    @Override
+    protected void paste() {
+      final long lag = (pasteCount < lags.size()) ? lags.get(pasteCount) : 0L;
+
+      ++pasteCount;
+
+      if(isReadWhenCopied) {
+        received.append(read(false));
+      }
+      else {
+        readTimes.addLast((lag >= 0L) ? (now + TimeUnit.MILLISECONDS.toNanos(lag)) : -1L);
+      }
+    }
+
+    /**
+     * @param isCounted if false, reads the data without counting it as a request
+     */
+    public String read(boolean isCounted) {
+      try {
+        ChunkSelection chunk = (ChunkSelection)clip.getContents(null);
+        String data = (String)chunk.getTransferData(DataFlavor.stringFlavor);
+
+        if(!isCounted) {
+          chunk.readCount.decrementAndGet();
+        }
+
+        return data;
+      }
+      catch(Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    @Override
+    protected void waitForIdle() {
+      ++idleCount;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2020-2022 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.event.KeyEvent;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class KeyCodesTest {
+  @Test
+  public void testGetCharCodes() {
+    assertArrayEquals(new int[]{KeyEvent.VK_A},KeyCodes.getCharCodes('a'));
+    assertArrayEquals(new int[]{KeyEvent.VK_SHIFT,KeyEvent.VK_A},KeyCodes.getCharCodes('A'));
+    assertArrayEquals(new int[]{KeyEvent.VK_SHIFT,KeyEvent.VK_EURO_SIGN},KeyCodes.getCharCodes('€'));
+
+    assertNull(KeyCodes.getCharCodes('毛',false));
+    assertNull(KeyCodes.getCharCodes(-1));
+    assertNull(KeyCodes.getCharCodes(Character.MAX_CODE_POINT + 1));
+
+    // Cached
+    assertSame(KeyCodes.getCharCodes('毛'),KeyCodes.getCharCodes('毛'));
+  }
+
+  @Test
+  public void testPutCharCodes() {
+    final int keyChar = 0x1F41F; // Fish emoji (not in the BMP)
+    final int[] keyCodes = new int[]{KeyEvent.VK_F};
+
+    assertNull(KeyCodes.putCharCodes(keyChar,keyCodes));
+    assertSame(keyCodes,KeyCodes.getCharCodes(keyChar,false));
+    assertSame(keyCodes,KeyCodes.putCharCodes(keyChar,null));
+    assertNull(KeyCodes.getCharCodes(keyChar,false));
+
+    assertThrows(IllegalArgumentException.class,() -> KeyCodes.putCharCodes(-1,keyCodes));
+  }
+}
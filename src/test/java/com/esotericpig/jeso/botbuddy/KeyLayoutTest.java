@@ -0,0 +1,86 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2020-2022 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class KeyLayoutTest {
+  private static final int ALT_GRAPH = KeyEvent.VK_ALT_GRAPH;
+  private static final int SHIFT = KeyEvent.VK_SHIFT;
+
+  @Test
+  public void testBuiltIn() {
+    assertSame(KeyCodes.UK_LAYOUT,KeyCodes.getLayout("gb"));
+    assertSame(KeyCodes.JIS_LAYOUT,KeyCodes.getLayout("JP"));
+    assertNull(KeyCodes.getLayout("Klingon"));
+
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_QUOTEDBL},KeyCodes.US_LAYOUT.get('"'));
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_2},KeyCodes.UK_LAYOUT.get('"'));
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_3},KeyCodes.UK_LAYOUT.get('£'));
+    assertNull(KeyCodes.UK_LAYOUT.get('@')); // Pasted instead
+
+    assertArrayEquals(new int[]{ALT_GRAPH,KeyEvent.VK_Q},KeyCodes.DE_LAYOUT.get('@'));
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_0},KeyCodes.DE_LAYOUT.get('='));
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_7},KeyCodes.JIS_LAYOUT.get('\''));
+
+    // Copied from the US layout
+    assertArrayEquals(KeyCodes.US_LAYOUT.get('A'),KeyCodes.DE_LAYOUT.get('A'));
+
+    TypePlan plan = new TypePlan("\"@\"",true,KeyCodes.UK_LAYOUT);
+
+    assertEquals(3,plan.getStepCount());
+    assertEquals("@",plan.getPaste(1));
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    KeyLayout layout = KeyLayout.load(new BufferedReader(new StringReader(
+        "# UK on a Mac\n"
+        + "name UK-Mac\n"
+        + "base uk\n"
+        + "\n"
+        + "@      alt_graph 2\n"
+        + "U+0023 VK_ALT_GRAPH VK_3\n"
+        + "£      none\n")));
+
+    assertEquals("UK-Mac",layout.getName());
+    assertArrayEquals(new int[]{ALT_GRAPH,KeyEvent.VK_2},layout.get('@'));
+    assertArrayEquals(new int[]{ALT_GRAPH,KeyEvent.VK_3},layout.get('#'));
+    assertNull(layout.get('£'));
+    assertArrayEquals(KeyCodes.UK_LAYOUT.get('"'),layout.get('"'));
+
+    // The built-in layout is not changed
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_3},KeyCodes.UK_LAYOUT.get('£'));
+
+    assertThrows(IOException.class,() -> load("a nope"));
+    assertThrows(IOException.class,() -> load("ab shift a"));
+    assertThrows(IOException.class,() -> load("U+FFFFFF a"));
+    assertThrows(IOException.class,() -> load("base nope"));
+    assertThrows(IOException.class,() -> load("a"));
+  }
+
+  private static KeyLayout load(String text) throws IOException {
+    return KeyLayout.load(new BufferedReader(new StringReader(text)));
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class PacerTest {
+  @Test
+  public void testDelay() throws InterruptedException {
+    Pacer pacer = new Pacer();
+    final long interval = TimeUnit.MILLISECONDS.toNanos(20L);
+
+    pacer.pace(TimeUnit.MILLISECONDS.toNanos(1L)); // An event
+    Thread.sleep(15L); // A gap, which pace(interval) would take off of the delay
+
+    final long start = System.nanoTime();
+
+    pacer.delay(interval);
+
+    assertTrue((System.nanoTime() - start) >= interval);
+    assertTrue(pacer.deadline >= (start + interval)); // The next event is paced from the end of the delay
+    assertThrows(IllegalArgumentException.class,() -> pacer.delay(-1L));
+  }
+
+  @Test
+  public void testNextDeadline() {
+    Pacer pacer = new Pacer();
+
+    // From now, if none
+    assertEquals(1_100L,pacer.nextDeadline(1_000L,100L));
+
+    pacer.deadline = 1_100L;
+    pacer.hasDeadline = true;
+
+    // From the previous deadline, even if late (no drift)
+    assertEquals(1_200L,pacer.nextDeadline(1_150L,100L));
+    assertEquals(1_200L,pacer.nextDeadline(1_300L,100L));
+
+    // From now, if more than an interval behind (no burst)
+    assertEquals(1_401L,pacer.nextDeadline(1_301L,100L));
+
+    pacer.reset();
+
+    assertEquals(1_250L,pacer.nextDeadline(1_150L,100L));
+    assertThrows(IllegalArgumentException.class,() -> pacer.pace(-1L));
+  }
+
+  @Test
+  public void testPace() {
+    Pacer pacer = new Pacer();
+    final long interval = TimeUnit.MILLISECONDS.toNanos(2L);
+    final long start = System.nanoTime();
+
+    for(int i = 0; i < 10; ++i) {
+      pacer.pace(interval);
+    }
+
+    assertTrue((System.nanoTime() - start) >= (10L * interval));
+    assertTrue(pacer.getSpinNanos() >= Pacer.MIN_SPIN_NANOS);
+    assertTrue(pacer.getSpinNanos() <= Pacer.MAX_SPIN_NANOS);
+  }
+}
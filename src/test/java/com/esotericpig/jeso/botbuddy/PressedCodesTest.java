@@ -0,0 +1,99 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class PressedCodesTest {
+  @Test
+  public void testLIFO() {
+    PressedCodes pressed = new PressedCodes(1); // Force growing
+
+    pressed.push(KeyEvent.VK_CONTROL);
+    pressed.push(KeyEvent.VK_SHIFT);
+    pressed.push(KeyEvent.VK_A);
+    pressed.push(KeyEvent.VK_SHIFT); // Duplicate
+
+    assertEquals(4,pressed.size());
+    assertArrayEquals(new int[]{KeyEvent.VK_CONTROL,KeyEvent.VK_SHIFT,KeyEvent.VK_A,KeyEvent.VK_SHIFT},
+        pressed.toArray());
+
+    // Removes the newest Shift only
+    assertTrue(pressed.remove(KeyEvent.VK_SHIFT));
+    assertTrue(pressed.contains(KeyEvent.VK_SHIFT));
+    assertFalse(pressed.remove(KeyEvent.VK_B));
+
+    assertEquals(KeyEvent.VK_A,pressed.peek());
+    assertEquals(KeyEvent.VK_A,pressed.pop());
+    assertEquals(KeyEvent.VK_SHIFT,pressed.pop());
+    assertEquals(KeyEvent.VK_CONTROL,pressed.pop());
+
+    assertTrue(pressed.isEmpty());
+    assertFalse(pressed.contains(KeyEvent.VK_SHIFT));
+    assertThrows(IllegalStateException.class,pressed::pop);
+
+    pressed.push(InputEvent.BUTTON1_DOWN_MASK);
+    pressed.clear();
+
+    assertEquals(0,pressed.size());
+    assertFalse(pressed.contains(InputEvent.BUTTON1_DOWN_MASK));
+  }
+
+  @Test
+  public void testRandom() {
+    PressedCodes pressed = new PressedCodes(2);
+    List<Integer> expected = new ArrayList<>(); // Newest first
+    Random rand = new Random(42L);
+
+    for(int i = 0; i < 10_000; ++i) {
+      // Button masks and key codes, with collisions
+      final int code = rand.nextBoolean() ? (1 << (10 + rand.nextInt(8))) : rand.nextInt(40);
+
+      switch(rand.nextInt(3)) {
+        case 0:
+          assertEquals(expected.remove((Integer)code),pressed.remove(code));
+          break;
+
+        case 1:
+          if(!expected.isEmpty()) {
+            assertEquals((int)expected.remove(0),pressed.pop());
+          }
+          break;
+
+        default:
+          expected.add(0,code);
+          pressed.push(code);
+          break;
+      }
+
+      assertEquals(expected.size(),pressed.size());
+      assertEquals(expected.contains(code),pressed.contains(code));
+    }
+
+    while(!expected.isEmpty()) {
+      assertEquals((int)expected.remove(0),pressed.pop());
+    }
+  }
+}
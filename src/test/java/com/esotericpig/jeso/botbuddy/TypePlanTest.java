@@ -0,0 +1,107 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.event.KeyEvent;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class TypePlanTest {
+  private static final int SHIFT = KeyEvent.VK_SHIFT;
+
+  @Test
+  public void testCosts() {
+    // Each char costs 10, so a paste (30) is cheaper for 3+ chars
+    TypePlan.Costs costs = new TypePlan.Costs(10L,0L,30L);
+    TypePlan plan = new TypePlan("ab",true,KeyCodes.US_LAYOUT,costs);
+
+    assertEquals(2,plan.getStepCount());
+    assertNull(plan.getPaste(0));
+
+    plan = new TypePlan("abcd",true,KeyCodes.US_LAYOUT,costs);
+
+    assertEquals(1,plan.getStepCount());
+    assertEquals(0,plan.getEventCount());
+    assertEquals("abcd",plan.getPaste(0));
+
+    // The runs next to a paste (that must be) join it, instead of being typed
+    plan = new TypePlan("毛ab笔c",true,KeyCodes.US_LAYOUT,costs);
+
+    assertEquals(1,plan.getStepCount());
+    assertEquals("毛ab笔c",plan.getPaste(0));
+
+    // Without costs, only pastes what must be
+    assertEquals(5,new TypePlan("毛ab笔c").getStepCount());
+
+    // Unsurely, never pastes
+    plan = new TypePlan("abcd",false,KeyCodes.US_LAYOUT,costs);
+
+    assertEquals(4,plan.getStepCount());
+
+    // Free steps (e.g., in a batch), but the events of the held Shift still count
+    costs = new TypePlan.Costs(0L,1L,10L);
+
+    assertEquals(2,new TypePlan("Ab",true,KeyCodes.US_LAYOUT,costs).getStepCount()); // 6 events
+    assertEquals("ABCDEF",new TypePlan("ABCDEF",true,KeyCodes.US_LAYOUT,costs).getPaste(0)); // 14 events
+  }
+
+  @Test
+  public void testHeldModifiers() {
+    TypePlan plan = new TypePlan("HeLLo!");
+
+    assertArrayEquals(new int[]{
+        SHIFT,KeyEvent.VK_H,~KeyEvent.VK_H,
+        ~SHIFT,KeyEvent.VK_E,~KeyEvent.VK_E,
+        SHIFT,KeyEvent.VK_L,~KeyEvent.VK_L,KeyEvent.VK_L,~KeyEvent.VK_L,
+        ~SHIFT,KeyEvent.VK_O,~KeyEvent.VK_O,
+        SHIFT,KeyEvent.VK_EXCLAMATION_MARK,~KeyEvent.VK_EXCLAMATION_MARK,~SHIFT
+      },plan.getEvents());
+
+    // One step per char; the last Shift is released in the last step
+    assertEquals(6,plan.getStepCount());
+    assertEquals(3,plan.getStepEnd(0));
+    assertEquals(plan.getEventCount(),plan.getStepEnd(5));
+
+    // Rolling the keys of each char would be 20 events
+    assertEquals(18,plan.getEventCount());
+    assertEquals(SHIFT,TypePlan.toKeyCode(~SHIFT));
+  }
+
+  @Test
+  public void testPaste() {
+    TypePlan plan = new TypePlan("A毛笔b");
+
+    assertArrayEquals(new int[]{
+        SHIFT,KeyEvent.VK_A,~KeyEvent.VK_A,
+        ~SHIFT, // Released before pasting
+        KeyEvent.VK_B,~KeyEvent.VK_B
+      },plan.getEvents());
+
+    assertEquals(3,plan.getStepCount());
+    assertNull(plan.getPaste(0));
+    assertEquals("毛笔",plan.getPaste(1)); // Grouped
+    assertEquals(4,plan.getStepEnd(1));
+    assertNull(plan.getPaste(2));
+
+    plan = new TypePlan("A毛");
+
+    assertArrayEquals(new int[]{SHIFT,KeyEvent.VK_A,~KeyEvent.VK_A,~SHIFT},plan.getEvents());
+    assertEquals("毛",plan.getPaste(1));
+
+    assertEquals(0,new TypePlan("").getStepCount());
+  }
+}
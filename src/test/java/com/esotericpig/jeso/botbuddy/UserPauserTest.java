@@ -0,0 +1,166 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.botbuddy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Point;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * Pauses with a fake mouse, which the user moves at set times, on a fake clock.
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class UserPauserTest {
+  public static final int PAUSE_DELAY = 1000;
+
+  @Test
+  public void testPause() {
+    PressedCodes buttons = new PressedCodes();
+    PressedCodes keys = new PressedCodes();
+
+    buttons.push(InputEvent.BUTTON1_DOWN_MASK);
+    keys.push(KeyEvent.VK_SHIFT);
+    keys.push(KeyEvent.VK_CONTROL);
+
+    FakePauser pauser = new FakePauser(300L,700L); // The user moves the mouse twice
+
+    pauser.pause(buttons,keys);
+
+    // Released (keys first, newest first), then pressed again in the same order once restored
+    assertEquals(Arrays.asList(
+        "releaseKey " + KeyEvent.VK_CONTROL,
+        "releaseKey " + KeyEvent.VK_SHIFT,
+        "releaseButton " + InputEvent.BUTTON1_DOWN_MASK,
+        "restoreCoords",
+        "pressButton " + InputEvent.BUTTON1_DOWN_MASK,
+        "pressKey " + KeyEvent.VK_SHIFT,
+        "pressKey " + KeyEvent.VK_CONTROL),pauser.events);
+
+    assertArrayEquals(new int[]{InputEvent.BUTTON1_DOWN_MASK},buttons.toArray());
+    assertArrayEquals(new int[]{KeyEvent.VK_SHIFT,KeyEvent.VK_CONTROL},keys.toArray());
+
+    // Idle for the pause delay after the last move
+    assertTrue(pauser.restoreTime >= TimeUnit.MILLISECONDS.toNanos(700L + PAUSE_DELAY));
+    assertTrue(pauser.restoreTime < TimeUnit.MILLISECONDS.toNanos(700L + PAUSE_DELAY
+        + BotBuddy.PAUSE_CHECK_DELAY * 2));
+  }
+
+  @Test
+  public void testNothingPressed() {
+    FakePauser pauser = new FakePauser();
+
+    pauser.pause(new PressedCodes(),new PressedCodes());
+
+    assertEquals(Arrays.asList("restoreCoords"),pauser.events);
+    assertTrue(pauser.restoreTime >= TimeUnit.MILLISECONDS.toNanos(PAUSE_DELAY));
+  }
+
+  @Test
+  public void testInterrupted() {
+    PressedCodes keys = new PressedCodes();
+    FakePauser pauser = new FakePauser();
+
+    keys.push(KeyEvent.VK_SHIFT);
+    pauser.isInterrupted = true;
+
+    try {
+      assertThrows(UserIsActiveException.class,() -> pauser.pause(new PressedCodes(),keys));
+      assertTrue(Thread.currentThread().isInterrupted());
+    }
+    finally {
+      Thread.interrupted(); // Clear it
+    }
+
+    // Left released
+    assertEquals(Arrays.asList("releaseKey " + KeyEvent.VK_SHIFT),pauser.events);
+    assertTrue(keys.isEmpty());
+  }
+
+  /**
+   * @author Jonathan Bradley Whited
+   */
+  public static class FakePauser extends UserPauser {
+    public final List<String> events = new ArrayList<>();
+    public boolean isInterrupted = false;
+    public final long[] moveTimes; // In ms
+    public long now = 0L;
+    public long restoreTime = -1L;
+
+    public FakePauser(long... moveTimes) {
+      super(PAUSE_DELAY);
+
+      this.moveTimes = moveTimes;
+    }
+
+    @Override
+    protected Point getCoords() {
+      int moveCount = 0;
+
+      for(long moveTime: moveTimes) {
+        if(now >= TimeUnit.MILLISECONDS.toNanos(moveTime)) {
+          ++moveCount;
+        }
+      }
+
+      return new Point(moveCount,moveCount);
+    }
+
+    @Override
+    protected long nanoTime() {
+      return now;
+    }
+
+    @Override
+    protected void pressButton(int button) {
+      events.add("pressButton " + button);
+    }
+
+    @Override
+    protected void pressKey(int keyCode) {
+      events.add("pressKey " + keyCode);
+    }
+
+    @Override
+    protected void releaseButton(int button) {
+      events.add("releaseButton " + button);
+    }
+
+    @Override
+    protected void releaseKey(int keyCode) {
+      events.add("releaseKey " + keyCode);
+    }
+
+    @Override
+    protected void restoreCoords() {
+      events.add("restoreCoords");
+      restoreTime = now;
+    }
+
+    @Override
+    protected void sleep(int delay) throws InterruptedException {
+      if(isInterrupted) {
+        throw new InterruptedException();
+      }
+
+      now += TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+  }
+}
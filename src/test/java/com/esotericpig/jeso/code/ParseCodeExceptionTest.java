@@ -0,0 +1,43 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.code;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class ParseCodeExceptionTest {
+  @Test
+  public void testLight() {
+    final LineOfCode loc = new LineOfCode(3,14);
+
+    final ParseCodeException full = ParseCodeException.build(loc,"Bad arg","type");
+    final ParseCodeException light = ParseCodeException.buildLight(loc,"Bad arg","type");
+
+    assertFalse(full.isLight());
+    assertTrue(light.isLight());
+
+    assertEquals("type:(3:14): Bad arg",light.getMessage());
+    assertEquals(ParseCodeException.buildMessage(loc,"Bad arg","type"),light.getMessage());
+    assertEquals(full.getMessage(),light.getMessage());
+    assertSame(light.getMessage(),light.getMessage());
+    assertSame(loc,light.getLineOfCode());
+
+    assertTrue(full.getStackTrace().length > 0);
+    assertEquals(0,light.getStackTrace().length);
+  }
+}
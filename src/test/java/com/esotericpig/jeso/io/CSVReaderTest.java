@@ -0,0 +1,82 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class CSVReaderTest {
+  @Test
+  public void testBOM() throws IOException {
+    try(CSVReader csv = new CSVReader(new StringReader("\uFEFFName,Age\n\uFEFFA,1\n"))) {
+      assertEquals(Arrays.asList("Name","Age"),csv.readHeader());
+      assertEquals(Arrays.asList("\uFEFFA","1"),csv.readRow()); // Only at the start
+      assertNull(csv.readRow());
+    }
+    try(CSVReader csv = new CSVReader(new StringReader("\uFEFF"))) {
+      assertNull(csv.readHeader());
+    }
+  }
+
+  @Test
+  public void testReadRow() throws IOException {
+    final String text = "Hanzi, English ,Pinyin\r\n"
+        + "毛笔,(writing) brush,máobǐ\n"
+        + "\n"
+        + " \"Hello, \"\"World\"\"\" , \" Fish \",\r"
+        + "\"Multi\r\nline\",,last";
+
+    try(CSVReader csv = new CSVReader(new StringReader(text))) {
+      assertEquals(Arrays.asList("Hanzi","English","Pinyin"),csv.readHeader());
+      assertEquals(Arrays.asList("Hanzi","English","Pinyin"),csv.getHeader());
+      assertEquals(0L,csv.getRowNumber());
+
+      assertEquals(Arrays.asList("毛笔","(writing) brush","máobǐ"),csv.readRow());
+      assertEquals(1L,csv.getRowNumber());
+      assertEquals(2,csv.getLineNumber());
+
+      // Blank line skipped
+      assertEquals(Arrays.asList("Hello, \"World\""," Fish ",""),csv.readRow());
+      assertEquals(2L,csv.getRowNumber());
+      assertEquals(4,csv.getLineNumber());
+
+      assertEquals(Arrays.asList("Multi\nline","","last"),csv.readRow());
+      assertEquals(3L,csv.getRowNumber());
+      assertEquals(5,csv.getLineNumber());
+
+      assertNull(csv.readRow());
+    }
+  }
+
+  @Test
+  public void testSeparator() throws IOException {
+    try(CSVReader csv = new CSVReader(new StringReader("a\tb c\t\"d\te\"\n"),'\t')) {
+      assertEquals(Arrays.asList("a","b c","d\te"),csv.readRow());
+      assertNull(csv.readRow());
+    }
+  }
+
+  @Test
+  public void testUnclosedQuote() throws IOException {
+    try(CSVReader csv = new CSVReader(new StringReader("a,\"b\nc"))) {
+      assertThrows(IOException.class,csv::readRow);
+    }
+  }
+}
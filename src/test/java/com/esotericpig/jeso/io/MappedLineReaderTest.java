@@ -0,0 +1,147 @@
+/*
+ * This file is part of Jeso.
+ * Copyright (c) 2019-2021 Jonathan Bradley Whited
+ *
+ * SPDX-License-Identifier: LGPL-3.0-or-later
+ */
+
+package com.esotericpig.jeso.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <pre>
+ * </pre>
+ *
+ * @author Jonathan Bradley Whited
+ */
+public class MappedLineReaderTest {
+  protected Path path = null;
+
+  @BeforeEach
+  public void setUpEach() throws IOException {
+    path = Files.createTempFile("jeso_",".txt");
+  }
+
+  @AfterEach
+  public void tearDownEach() throws IOException {
+    if(path != null) {
+      Files.deleteIfExists(path);
+      path = null;
+    }
+  }
+
+  /**
+   * <pre>
+   * Compares to {@link BufferedReader#readLine()}, with tiny buffer &amp; map sizes
+   *   so that lines, "\r\n", and multi-byte chars cross the boundaries.
+   * </pre>
+   */
+  @Test
+  public void testReadLine() throws IOException {
+    final String text = "Hello World\r\n\r\n \u00e9\u00e8 \u4e16\u754c \ud83d\udc1f\rfish\n\nlong line of some fish: "
+        + "\ud83d\udc1f\ud83d\udc1f\ud83d\udc1f\ud83d\udc1f\ud83d\udc1f\ud83d\udc1f\ud83d\udc1f\ud83d\udc1f\r";
+
+    Files.write(path,text.getBytes(StandardCharsets.UTF_8));
+
+    List<String> expected = new ArrayList<>();
+
+    try(BufferedReader in = new BufferedReader(new StringReader(text))) {
+      String line;
+
+      while((line = in.readLine()) != null) {
+        expected.add(line);
+      }
+    }
+
+    for(int bufferSize = 2; bufferSize <= 9; ++bufferSize) {
+      for(long mapSize = 16L; mapSize <= 23L; ++mapSize) {
+        try(MappedLineReader in = new MappedLineReader(path,StandardCharsets.UTF_8,bufferSize,mapSize)) {
+          List<String> actual = new ArrayList<>();
+          CharSequence line;
+
+          while((line = in.readLine()) != null) {
+            actual.add(line.toString());
+          }
+
+          assertEquals(expected,actual);
+          assertNull(in.readLine());
+        }
+      }
+    }
+
+    try(MappedLineReader in = new MappedLineReader(path)) {
+      assertEquals("Hello World",in.readLine().toString());
+    }
+  }
+
+  /**
+   * <pre>
+   * A surrogate pair when there's only room left in the buffer for 1 char, which used to hang.
+   * </pre>
+   */
+  @Test
+  public void testSurrogatePairAtBufferEdge() throws IOException {
+    StringBuilder text = new StringBuilder();
+
+    for(int i = 1; i < MappedLineReader.DEFAULT_BUFFER_SIZE; ++i) {
+      text.append('a');
+    }
+
+    final String longLine = text.append("\ud83d\ude00").toString();
+
+    Files.write(path,(longLine + "\nxyz").getBytes(StandardCharsets.UTF_8));
+
+    assertTimeoutPreemptively(Duration.ofSeconds(10L),() -> {
+      try(MappedLineReader in = new MappedLineReader(path)) {
+        assertEquals(longLine,in.readLine().toString());
+        assertEquals("xyz",in.readLine().toString());
+        assertNull(in.readLine());
+      }
+    });
+
+    Files.write(path,"abc\ud83d\ude00\nxyz".getBytes(StandardCharsets.UTF_8));
+
+    for(int bufferSize = 2; bufferSize <= 5; ++bufferSize) {
+      final int size = bufferSize;
+
+      assertTimeoutPreemptively(Duration.ofSeconds(10L),() -> {
+        try(MappedLineReader in = new MappedLineReader(path,StandardCharsets.UTF_8,size
+            ,MappedLineReader.DEFAULT_MAP_SIZE)) {
+          assertEquals("abc\ud83d\ude00",in.readLine().toString());
+          assertEquals("xyz",in.readLine().toString());
+          assertNull(in.readLine());
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    try(MappedLineReader in = new MappedLineReader(path)) {
+      assertNull(in.readLine());
+    }
+
+    Files.write(path,"\n".getBytes(StandardCharsets.UTF_8));
+
+    try(MappedLineReader in = new MappedLineReader(path)) {
+      assertEquals("",in.readLine().toString());
+      assertNull(in.readLine());
+    }
+  }
+}